@@ -0,0 +1,61 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * String concatenation, which builds ConsString ropes, and reading the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsStringBenchmark extends ScriptBenchmark{
+    Function append, prepend, appendAndRead, appendAndSearch, join;
+
+    @Override
+    protected String source(){
+        return "function append(){ var s = ''; for(var i = 0; i < 1000; i++) s += 'x' + i; return s.length; }\n" +
+        "function prepend(){ var s = ''; for(var i = 0; i < 1000; i++) s = i + s; return s.length; }\n" +
+        "function appendAndRead(){ var s = '', n = 0; for(var i = 0; i < 200; i++){ s += 'ab'; n += s.charCodeAt(i); } return n; }\n" +
+        "function appendAndSearch(){ var s = '', n = 0; for(var i = 0; i < 1000; i++){ s += 'line ' + i + '\\n'; if(s.indexOf('line 1 ') >= 0 && s.startsWith('line')) n++; } return n; }\n" +
+        "function join(){ var a = []; for(var i = 0; i < 1000; i++) a.push('x' + i); return a.join('').length; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        append = function("append");
+        prepend = function("prepend");
+        appendAndRead = function("appendAndRead");
+        appendAndSearch = function("appendAndSearch");
+        join = function("join");
+    }
+
+    @Benchmark
+    public Object append(){
+        return call(append);
+    }
+
+    @Benchmark
+    public Object prepend(){
+        return call(prepend);
+    }
+
+    @Benchmark
+    public Object appendAndRead(){
+        return call(appendAndRead);
+    }
+
+    @Benchmark
+    public Object appendAndSearch(){
+        return call(appendAndSearch);
+    }
+
+    @Benchmark
+    public Object join(){
+        return call(join);
+    }
+}
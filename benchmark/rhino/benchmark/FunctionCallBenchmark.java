@@ -0,0 +1,48 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Function calls in the interpreter and in compiled code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionCallBenchmark extends ScriptBenchmark{
+    Function fib, closures, callFromJava;
+
+    @Override
+    protected String source(){
+        return "function fib(n){ return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n" +
+        "function adder(a){ return function(b){ return a + b; }; }\n" +
+        "function closures(){ var add = adder(1), t = 0; for(var i = 0; i < 1000; i++) t = add(t); return t; }\n" +
+        "function callFromJava(a, b){ return a + b; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        fib = function("fib");
+        closures = function("closures");
+        callFromJava = function("callFromJava");
+    }
+
+    @Benchmark
+    public Object fib(){
+        return call(fib, 20);
+    }
+
+    @Benchmark
+    public Object closures(){
+        return call(closures);
+    }
+
+    @Benchmark
+    public Object callFromJava(){
+        return call(callFromJava, 1, 2);
+    }
+}
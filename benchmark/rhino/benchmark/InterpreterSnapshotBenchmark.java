@@ -0,0 +1,70 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Compares compiling a script for the interpreter from source with loading
+ * it from an {@link InterpreterSnapshot}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterSnapshotBenchmark{
+    @Param({"10", "100"})
+    int functions;
+
+    Context cx;
+    String source;
+    byte[] snapshot;
+
+    @Setup
+    public void setup() throws IOException{
+        cx = Context.enter();
+        cx.setOptimizationLevel(-1);
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        source = generateSource(functions);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InterpreterSnapshot.write(cx.compileString(source, "bench.js", 1, null), out);
+        snapshot = out.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown(){
+        Context.exit();
+    }
+
+    @Benchmark
+    public Script parse(){
+        return cx.compileString(source, "bench.js", 1, null);
+    }
+
+    @Benchmark
+    public Script loadSnapshot() throws IOException{
+        return InterpreterSnapshot.read(cx, new ByteArrayInputStream(snapshot), null);
+    }
+
+    /** Generates a script resembling a typical mod script. */
+    static String generateSource(int functions){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < functions; i++){
+            sb.append("function f").append(i).append("(items, name){\n")
+            .append("    var result = {name: name, count: 0, tags: ['a', 'b', 'c']};\n")
+            .append("    for(var j = 0; j < items.length; j++){\n")
+            .append("        if(/^item[0-9]+$/.test(items[j].id)) result.count += items[j].amount * ").append(i).append(".5;\n")
+            .append("        else result.tags.push(items[j].id + '-' + j);\n")
+            .append("    }\n")
+            .append("    try{ result.total = Math.max(result.count, 0); }catch(e){ print(e); }\n")
+            .append("    return function(x){ return x + result.count; };\n")
+            .append("}\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Calls from scripts into Java through NativeJavaMethod, including overload resolution,
+ * with and without generated member invokers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaInteropBenchmark extends ScriptBenchmark{
+    @Param({"true", "false"})
+    public boolean invokers;
+
+    Function instanceCalls, overloaded, staticCalls, fields;
+
+    @Override
+    protected String source(){
+        return "var list = new java.util.ArrayList();\n" +
+        "var point = new java.awt.Point(1, 2);\n" +
+        "function instanceCalls(){ list.clear(); for(var i = 0; i < 100; i++) list.add(i); var t = 0; for(var i = 0; i < list.size(); i++) t += list.get(i); return t; }\n" +
+        "function overloaded(){ var sb = new java.lang.StringBuilder(); for(var i = 0; i < 100; i++){ sb.append(i); sb.append('x'); sb.append(true); } return sb.length(); }\n" +
+        "function staticCalls(){ var t = 0; for(var i = 0; i < 100; i++) t += java.lang.Math.max(i, 50) + java.lang.Integer.parseInt('12'); return t; }\n" +
+        "function fields(){ var t = 0; for(var i = 0; i < 100; i++){ point.x = i; t += point.x + point.y; } return t; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        ClassCache.get(scope).setInvokerOptimizationEnabled(invokers);
+        instanceCalls = function("instanceCalls");
+        overloaded = function("overloaded");
+        staticCalls = function("staticCalls");
+        fields = function("fields");
+    }
+
+    @Benchmark
+    public Object instanceCalls(){
+        return call(instanceCalls);
+    }
+
+    @Benchmark
+    public Object overloaded(){
+        return call(overloaded);
+    }
+
+    @Benchmark
+    public Object staticCalls(){
+        return call(staticCalls);
+    }
+
+    @Benchmark
+    public Object fields(){
+        return call(fields);
+    }
+}
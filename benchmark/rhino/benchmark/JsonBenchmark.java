@@ -0,0 +1,50 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * JSON.parse, JSON.stringify and JSON.parseStream of a document shaped like typical save data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark extends ScriptBenchmark{
+    Function parse, stringify, parseStream;
+
+    @Override
+    protected String source(){
+        return "var doc = {name: 'save', version: 7, entries: []};\n" +
+        "for(var i = 0; i < 200; i++) doc.entries.push({id: i, name: 'entry ' + i, value: i * 1.5, flags: [true, false, null], nested: {x: i, y: -i, label: 'l\\u00e9\\n'}});\n" +
+        "var text = JSON.stringify(doc);\n" +
+        "function parse(){ return JSON.parse(text); }\n" +
+        "function stringify(){ return JSON.stringify(doc); }\n" +
+        "function parseStream(){ var n = 0; JSON.parseStream(text, {onValue: function(){ n++; }}); return n; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        parse = function("parse");
+        stringify = function("stringify");
+        parseStream = function("parseStream");
+    }
+
+    @Benchmark
+    public Object parse(){
+        return call(parse);
+    }
+
+    @Benchmark
+    public Object stringify(){
+        return call(stringify);
+    }
+
+    @Benchmark
+    public Object parseStream(){
+        return call(parseStream);
+    }
+}
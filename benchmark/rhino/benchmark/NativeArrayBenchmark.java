@@ -0,0 +1,79 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Array push, sort and iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeArrayBenchmark extends ScriptBenchmark{
+    Function push, sortNumbers, sortStrings, sortComparator, sortLarge, iterate, forEach;
+
+    @Override
+    protected String source(){
+        return "var numbers = []; for(var i = 0; i < 1000; i++) numbers.push((i * 7919) % 1009);\n" +
+        "var strings = numbers.map(function(n){ return 'item' + n; });\n" +
+        "var large = []; for(var i = 0; i < 200000; i++) large.push((i * 7919) % 100003);\n" +
+        "function push(){ var a = []; for(var i = 0; i < 1000; i++) a.push(i); return a; }\n" +
+        "function sortNumbers(){ return numbers.slice().sort(); }\n" +
+        "function sortStrings(){ return strings.slice().sort(); }\n" +
+        "function sortComparator(){ return numbers.slice().sort(function(a, b){ return a - b; }); }\n" +
+        "function sortLarge(){ return large.slice().sort(); }\n" +
+        "function iterate(){ var t = 0; for(var i = 0; i < numbers.length; i++) t += numbers[i]; return t; }\n" +
+        "function forEach(){ var t = 0; numbers.forEach(function(n){ t += n; }); return t; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        push = function("push");
+        sortNumbers = function("sortNumbers");
+        sortStrings = function("sortStrings");
+        sortComparator = function("sortComparator");
+        sortLarge = function("sortLarge");
+        iterate = function("iterate");
+        forEach = function("forEach");
+    }
+
+    @Benchmark
+    public Object push(){
+        return call(push);
+    }
+
+    @Benchmark
+    public Object sortNumbers(){
+        return call(sortNumbers);
+    }
+
+    @Benchmark
+    public Object sortStrings(){
+        return call(sortStrings);
+    }
+
+    @Benchmark
+    public Object sortComparator(){
+        return call(sortComparator);
+    }
+
+    /** Large enough to be sorted in parallel, see the rhino.sort.parallel system property. */
+    @Benchmark
+    public Object sortLarge(){
+        return call(sortLarge);
+    }
+
+    @Benchmark
+    public Object iterate(){
+        return call(iterate);
+    }
+
+    @Benchmark
+    public Object forEach(){
+        return call(forEach);
+    }
+}
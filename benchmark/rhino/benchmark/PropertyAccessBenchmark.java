@@ -0,0 +1,77 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Named property reads and writes, from scripts and through the ScriptableObject API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyAccessBenchmark extends ScriptBenchmark{
+    @Param({"false", "true"})
+    public boolean shaped;
+
+    Function monomorphic, polymorphic, create;
+    ScriptableObject object;
+
+    @Override
+    protected ContextFactory factory(){
+        return new ContextFactory(){
+            @Override
+            protected boolean hasFeature(Context cx, int featureIndex){
+                if(featureIndex == Context.FEATURE_SHAPED_OBJECTS) return shaped;
+                return super.hasFeature(cx, featureIndex);
+            }
+        };
+    }
+
+    @Override
+    protected String source(){
+        return "function Point(x, y){ this.x = x; this.y = y; }\n" +
+        "Point.prototype.length2 = function(){ return this.x * this.x + this.y * this.y; };\n" +
+        "var points = []; for(var i = 0; i < 100; i++) points.push(new Point(i, i + 1));\n" +
+        "var mixed = []; for(var i = 0; i < 100; i++) mixed.push(i % 3 == 0 ? {x: i, y: 1} : i % 3 == 1 ? {y: 1, x: i} : new Point(i, 1));\n" +
+        "function monomorphic(){ var t = 0; for(var i = 0; i < points.length; i++){ var p = points[i]; t += p.length2(); p.x = p.y; } return t; }\n" +
+        "function polymorphic(){ var t = 0; for(var i = 0; i < mixed.length; i++){ t += mixed[i].x + mixed[i].y; } return t; }\n" +
+        "function create(){ var last; for(var i = 0; i < 100; i++) last = {a: i, b: i, c: i, d: i}; return last; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        monomorphic = function("monomorphic");
+        polymorphic = function("polymorphic");
+        create = function("create");
+        object = (ScriptableObject)cx.newObject(scope);
+        for(int i = 0; i < 10; i++){
+            ScriptableObject.putProperty(object, "p" + i, i);
+        }
+    }
+
+    @Benchmark
+    public Object monomorphic(){
+        return call(monomorphic);
+    }
+
+    @Benchmark
+    public Object polymorphic(){
+        return call(polymorphic);
+    }
+
+    @Benchmark
+    public Object create(){
+        return call(create);
+    }
+
+    @Benchmark
+    public Object javaGetPut(){
+        Object value = ScriptableObject.getProperty(object, "p5");
+        ScriptableObject.putProperty(object, "p7", value);
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Regular expression test, exec and global matching.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegExpBenchmark extends ScriptBenchmark{
+    /** Executions before a pattern is compiled, 0 to only interpret. */
+    @Param({"0", "100"})
+    public int regExpCompileThreshold;
+
+    Function test, exec, matchAll, construct;
+
+    @Override
+    protected String source(){
+        return "var lines = []; for(var i = 0; i < 100; i++) lines.push('block-' + i + ' = copper * ' + (i % 13) + ' // comment');\n" +
+        "var text = lines.join('\\n');\n" +
+        "function test(){ var n = 0; for(var i = 0; i < lines.length; i++) if(/^block-\\d+ = \\w+/.test(lines[i])) n++; return n; }\n" +
+        "function exec(){ var re = /(\\w+)-(\\d+) = (\\w+) \\* (\\d+)/, t = 0; for(var i = 0; i < lines.length; i++){ var m = re.exec(lines[i]); t += m[4].length; } return t; }\n" +
+        "function matchAll(){ return text.match(/\\d+/g).length; }\n" +
+        "function construct(){ var n = 0; for(var i = 0; i < 100; i++) if(new RegExp('block-' + (i % 10)).test(lines[i])) n++; return n; }\n";
+    }
+
+    @Setup
+    public void setup(){
+        cx.setRegExpCompileThreshold(regExpCompileThreshold);
+        test = function("test");
+        exec = function("exec");
+        matchAll = function("matchAll");
+        construct = function("construct");
+    }
+
+    @Benchmark
+    public Object test(){
+        return call(test);
+    }
+
+    @Benchmark
+    public Object exec(){
+        return call(exec);
+    }
+
+    @Benchmark
+    public Object matchAll(){
+        return call(matchAll);
+    }
+
+    @Benchmark
+    public Object construct(){
+        return call(construct);
+    }
+}
@@ -0,0 +1,52 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+/**
+ * Base for benchmarks that run script functions. Subclasses provide the source
+ * defining the functions to benchmark, and call them through {@link #call(Function, Object...)}.
+ */
+@State(Scope.Thread)
+public abstract class ScriptBenchmark{
+    /** Interpreter, and the optimizer without and with optimizations. */
+    @Param({"-1", "0", "9"})
+    public int optLevel;
+
+    /** Calls before interpreted functions are compiled, run with -p tierUpThreshold=1000 to compare. */
+    @Param({"0"})
+    public int tierUpThreshold;
+
+    protected Context cx;
+    protected Scriptable scope;
+
+    /** Return the source evaluated once before benchmarking. */
+    protected abstract String source();
+
+    protected ContextFactory factory(){
+        return new ContextFactory();
+    }
+
+    @Setup
+    public void setupContext(){
+        cx = factory().enterContext();
+        cx.setOptimizationLevel(optLevel);
+        cx.setTierUpThreshold(tierUpThreshold);
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        scope = new ImporterTopLevel(cx);
+        cx.evaluateString(scope, source(), getClass().getSimpleName(), 1, null);
+    }
+
+    @TearDown
+    public void exitContext(){
+        Context.exit();
+    }
+
+    protected Function function(String name){
+        return (Function)ScriptableObject.getProperty(scope, name);
+    }
+
+    protected Object call(Function f, Object... args){
+        return f.call(cx, scope, scope, args);
+    }
+}
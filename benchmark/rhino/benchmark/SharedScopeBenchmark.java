@@ -0,0 +1,91 @@
+package rhino.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import rhino.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Looks up standard objects in a scope shared by several threads, as done by hosts
+ * that run scripts on worker threads. Each thread has its own top level scope whose
+ * prototype is the shared one. Compare the thread counts to see how reads scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedScopeBenchmark{
+    static final ContextFactory factory = new ContextFactory(){
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex){
+            return featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS || super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    @State(Scope.Benchmark)
+    public static class Shared{
+        @Param({"true", "false"})
+        public boolean sealed;
+
+        ScriptableObject scope;
+
+        @Setup
+        public void setup(){
+            Context cx = factory.enterContext();
+            try{
+                scope = cx.initStandardObjects(null, sealed);
+            }finally{
+                Context.exit();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker{
+        Context cx;
+        Scriptable scope;
+        Function lookups;
+
+        @Setup
+        public void setup(Shared shared){
+            cx = factory.enterContext();
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.newObject(shared.scope);
+            scope.setPrototype(shared.scope);
+            scope.setParentScope(null);
+            cx.evaluateString(scope,
+            "function lookups(){ var t = 0; for(var i = 0; i < 100; i++){" +
+            " t += Math.abs(-i) + parseInt('1') + (Array.isArray(arguments) ? 0 : 1) + String(i).length; }" +
+            " return t; }", "shared", 1, null);
+            lookups = (Function)scope.get("lookups", scope);
+        }
+
+        @TearDown
+        public void tearDown(){
+            Context.exit();
+        }
+
+        Object run(){
+            return lookups.call(cx, scope, scope, Context.emptyArgs);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object oneThread(Worker worker){
+        return worker.run();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object fourThreads(Worker worker){
+        return worker.run();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object eightThreads(Worker worker){
+        return worker.run();
+    }
+}
@@ -0,0 +1,135 @@
+package rhino;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Cache of {@link JavaAdapter} classes shared by all scopes of a {@link ContextFactory}.
+ * <p>
+ * {@link ClassCache} only keeps the adapter classes generated for one top-level scope, so
+ * without this cache every new scope generates and defines its adapter classes again. Classes
+ * are looked up by the adapter signature, that is the super class, the interfaces and the names
+ * and arities of the functions of the implementing object, and by the application class loader
+ * of the Context. If the factory has a {@link CompiledScriptCache}, generated adapter classes
+ * are stored in its directory as well, so later runs only have to define them.
+ * <p>
+ * Adapters are not shared while a {@link SecurityController} is installed, as their classes are
+ * defined in the security domain of the script that creates them, nor for scopes whose
+ * ClassCache has caching disabled. Classes and class loaders are only held weakly, so the classes
+ * of scopes that are gone, and the loaders they were created for, can be unloaded.
+ */
+public final class AdapterClassCache{
+    // adapter classes by application class loader and signature. Both the loaders and
+    // the classes are held weakly, as every adapter class reaches its loader
+    private final Map<ClassLoader, Map<String, WeakReference<Class<?>>>> classes = new WeakHashMap<>();
+    private final AtomicInteger serial = new AtomicInteger();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    AdapterClassCache(){
+    }
+
+    /** Return the number of adapter classes currently kept. */
+    public int size(){
+        int size = 0;
+        synchronized(classes){
+            for(Map<String, WeakReference<Class<?>>> map : classes.values()){
+                for(WeakReference<Class<?>> ref : map.values()){
+                    if(ref.get() != null){
+                        size++;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /** Return the number of adapter classes that were found in the cache. */
+    public long getHitCount(){
+        return hitCount.sum();
+    }
+
+    /** Return the number of adapter classes that had to be generated or read from disk. */
+    public long getMissCount(){
+        return missCount.sum();
+    }
+
+    /** Remove all entries and reset the counters. */
+    public void clear(){
+        synchronized(classes){
+            classes.clear();
+        }
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    Class<?> getAdapterClass(Context cx, JavaAdapter.JavaAdapterSignature sig){
+        Map<String, WeakReference<Class<?>>> map;
+        synchronized(classes){
+            map = classes.computeIfAbsent(cx.getApplicationClassLoader(), loader -> new ConcurrentHashMap<>());
+        }
+        String key = key(sig);
+        WeakReference<Class<?>> ref = map.get(key);
+        Class<?> adapterClass = ref == null ? null : ref.get();
+        if(adapterClass != null && adapts(adapterClass, sig)){
+            hitCount.increment();
+            return adapterClass;
+        }
+        missCount.increment();
+        // define outside of any lock, racing threads at worst define the same adapter twice
+        adapterClass = defineAdapterClass(cx, sig);
+        map.put(key, new WeakReference<>(adapterClass));
+        return adapterClass;
+    }
+
+    /** Return a key for the signature that does not reference its classes. */
+    private static String key(JavaAdapter.JavaAdapterSignature sig){
+        StringBuilder sb = new StringBuilder(sig.superClass.getName());
+        for(Class<?> iface : sig.interfaces){
+            sb.append(',').append(iface == null ? "" : iface.getName());
+        }
+        ObjToIntMap.Iterator iter = new ObjToIntMap.Iterator(sig.names);
+        Map<String, Integer> arities = new TreeMap<>();
+        for(iter.start(); !iter.done(); iter.next()){
+            arities.put((String)iter.getKey(), iter.getValue());
+        }
+        return sb.append(arities).toString();
+    }
+
+    /** Tell whether the cached class was generated for the very classes of the signature, not just their names. */
+    private static boolean adapts(Class<?> adapterClass, JavaAdapter.JavaAdapterSignature sig){
+        if(adapterClass.getSuperclass() != sig.superClass){
+            return false;
+        }
+        Class<?>[] implemented = adapterClass.getInterfaces();
+        int i = 0;
+        for(Class<?> iface : sig.interfaces){
+            if(iface != null && (i >= implemented.length || implemented[i++] != iface)){
+                return false;
+            }
+        }
+        return i == implemented.length;
+    }
+
+    private Class<?> defineAdapterClass(Context cx, JavaAdapter.JavaAdapterSignature sig){
+        CompiledScriptCache disk = cx.getFactory().getCompiledScriptCache();
+        String diskKey = null;
+        if(disk != null){
+            diskKey = disk.adapterKey(sig.superClass, sig.interfaces, sig.names);
+            Object entry = disk.load(diskKey);
+            if(entry != null){
+                Object[] nameBytesPair = (Object[])entry;
+                return JavaAdapter.loadAdapterClass((String)nameBytesPair[0], (byte[])nameBytesPair[1]);
+            }
+        }
+        String adapterName = "adapter" + serial.incrementAndGet();
+        byte[] code = JavaAdapter.createAdapterCode(sig.names, adapterName,
+        sig.superClass, sig.interfaces, null);
+        if(disk != null){
+            disk.store(diskKey, new Object[]{adapterName, code});
+        }
+        return JavaAdapter.loadAdapterClass(adapterName, code);
+    }
+}
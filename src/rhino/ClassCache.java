@@ -1,5 +1,6 @@
 package rhino;
 
+import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -11,10 +12,15 @@ import java.util.concurrent.*;
  */
 public class ClassCache{
     private static final Object AKEY = "ClassCache";
+    // cached for members that have no generated invoker
+    private static final MemberInvoker NO_INVOKER = new MemberInvoker(){};
     private volatile boolean cachingIsEnabled = true;
     private transient Map<Class<?>, JavaMembers> classTable;
     private transient Map<JavaAdapter.JavaAdapterSignature, Class<?>> classAdapterCache;
     private transient Map<Class<?>, Object> interfaceAdapterCache;
+    private volatile boolean invokerOptimization = true;
+    private transient Map<Member, MemberInvoker> invokerCache;
+    private transient Map<ClassLoader, InvokerLoader> invokerLoaders;
     private int generatedClassSerial;
     private Scriptable associatedScope;
 
@@ -67,6 +73,8 @@ public class ClassCache{
         classTable = null;
         classAdapterCache = null;
         interfaceAdapterCache = null;
+        invokerCache = null;
+        invokerLoaders = null;
     }
 
     /**
@@ -121,24 +129,113 @@ public class ClassCache{
     }
 
     /**
+     * Check if Java members are called through generated invoker classes.
      * @see #setInvokerOptimizationEnabled(boolean enabled)
-     * @deprecated The method always returns false.
      */
-    @Deprecated
     public boolean isInvokerOptimizationEnabled(){
-        return false;
+        return invokerOptimization;
     }
 
     /**
-     * @deprecated The method does nothing.
-     * Invoker optimization is no longer used by Rhino.
-     * On modern JDK like 1.4 or 1.5 the disadvantages of the optimization
-     * like increased memory usage or longer initialization time overweight
-     * small speed increase that can be gained using generated proxy class
-     * to replace reflection.
+     * Set whether to call frequently used Java methods and constructors
+     * through generated {@link MemberInvoker} classes instead of reflection.
+     * <p>
+     * Invokers are only generated for public members of public classes, and only
+     * when caching is enabled. Caller sensitive methods such as Class.forName are
+     * always called through reflection, so they see Rhino as their caller. The
+     * optimization turns itself off if the platform can not define classes at
+     * runtime.
+     * <p>
+     * Invoker optimization is enabled by default.
+     * @param enabled if true, invoker optimization is enabled
      */
-    @Deprecated
     public synchronized void setInvokerOptimizationEnabled(boolean enabled){
+        if(enabled == invokerOptimization)
+            return;
+        if(!enabled){
+            invokerCache = null;
+            invokerLoaders = null;
+        }
+        invokerOptimization = enabled;
+    }
+
+    /**
+     * Return the invoker for the member, generating it if necessary,
+     * or null if the member has to be accessed through reflection.
+     */
+    MemberInvoker getInvoker(Member member){
+        if(!invokerOptimization || !cachingIsEnabled){
+            return null;
+        }
+        Map<Member, MemberInvoker> cache = invokerCache;
+        MemberInvoker invoker = cache == null ? null : cache.get(member);
+        if(invoker == null){
+            invoker = createInvoker(member);
+        }
+        return invoker == NO_INVOKER ? null : invoker;
+    }
+
+    private synchronized MemberInvoker createInvoker(Member member){
+        if(!invokerOptimization){
+            return NO_INVOKER;
+        }
+        if(invokerCache == null){
+            invokerCache = new ConcurrentHashMap<>(16, 0.75f, 1);
+            invokerLoaders = new HashMap<>();
+        }
+        MemberInvoker invoker = invokerCache.get(member);
+        if(invoker != null){
+            return invoker;
+        }
+        invoker = NO_INVOKER;
+        if(MemberInvoker.canGenerate(member)){
+            String className = "rhino.gen.Invoker" + newClassSerialNumber();
+            ClassLoader target = member.getDeclaringClass().getClassLoader();
+            if(target == null){
+                // bootstrap classes are visible from Rhino's loader too
+                target = ClassCache.class.getClassLoader();
+            }
+            try{
+                InvokerLoader loader = invokerLoaders.get(target);
+                if(loader == null){
+                    loader = new InvokerLoader(target);
+                    invokerLoaders.put(target, loader);
+                }
+                byte[] code = MemberInvoker.generate(className, member);
+                invoker = (MemberInvoker)loader.define(className, code).getConstructor().newInstance();
+            }catch(ReflectiveOperationException | RuntimeException | LinkageError e){
+                // Most likely the platform does not support defining classes,
+                // don't try again for other members
+                invokerOptimization = false;
+                return NO_INVOKER;
+            }
+        }
+        invokerCache.put(member, invoker);
+        return invoker;
+    }
+
+    /**
+     * Defines invoker classes. They have to see both the classes of the member they
+     * call, which belong to its class loader, and MemberInvoker from Rhino's.
+     */
+    private static final class InvokerLoader extends ClassLoader{
+        InvokerLoader(ClassLoader parent){
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] code){
+            return defineClass(name, code, 0, code.length,
+            SecurityUtilities.getProtectionDomain(ClassCache.class));
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException{
+            if(name.equals(MemberInvoker.class.getName())){
+                return MemberInvoker.class;
+            }
+            return super.loadClass(name, resolve);
+        }
     }
 
     /**
@@ -162,6 +162,9 @@ class CodeGenerator extends Icode{
 
         itsData.encodedSourceStart = scriptOrFn.getEncodedSourceStart();
         itsData.encodedSourceEnd = scriptOrFn.getEncodedSourceEnd();
+        itsData.rawSourceStart = scriptOrFn.getAbsolutePosition();
+        itsData.rawSourceEnd = itsData.rawSourceStart + scriptOrFn.getLength();
+        itsData.rawSourceLineno = scriptOrFn.getLineno();
 
         if(literalIds.size() != 0){
             itsData.literalIds = literalIds.toArray();
@@ -201,12 +204,16 @@ class CodeGenerator extends Icode{
         Context cx = Context.getContext();
         RegExpProxy rep = ScriptRuntime.checkRegExpProxy(cx);
         Object[] array = new Object[N];
+        String[] sources = new String[N * 2];
         for(int i = 0; i != N; i++){
             String string = scriptOrFn.getRegexpString(i);
             String flags = scriptOrFn.getRegexpFlags(i);
             array[i] = rep.compileRegExp(cx, string, flags);
+            sources[i * 2] = string;
+            sources[i * 2 + 1] = flags;
         }
         itsData.itsRegExpLiterals = array;
+        itsData.itsRegExpSources = sources;
     }
 
     private void updateLineNumber(Node node){
@@ -627,6 +634,9 @@ class CodeGenerator extends Icode{
                 visitExpression(child, 0);
                 child = child.getNext();
                 addStringOp(type, child.getString());
+                if(type == Token.GETPROP){
+                    addPropertyCacheIndex();
+                }
                 break;
 
             case Token.DELPROP:
@@ -703,11 +713,13 @@ class CodeGenerator extends Icode{
                     addIcode(Icode_DUP);
                     stackChange(1);
                     addStringOp(Token.GETPROP, property);
+                    addPropertyCacheIndex();
                     // Compensate for the following USE_STACK
                     stackChange(-1);
                 }
                 visitExpression(child, 0);
                 addStringOp(Token.SETPROP, property);
+                addPropertyCacheIndex();
                 stackChange(-1);
             }
             break;
@@ -942,6 +954,7 @@ class CodeGenerator extends Icode{
                     String property = id.getString();
                     // stack: ... target -> ... function thisObj
                     addStringOp(Icode_PROP_AND_THIS, property);
+                    addPropertyCacheIndex();
                     stackChange(1);
                 }else{
                     visitExpression(id, 0);
@@ -1214,6 +1227,16 @@ class CodeGenerator extends Icode{
         iCodeTop = top + 2;
     }
 
+    private void addPropertyCacheIndex(){
+        int index = itsData.itsPropertyCacheCount;
+        if(index < NO_PROPERTY_CACHE){
+            itsData.itsPropertyCacheCount = index + 1;
+            addUint16(index);
+        }else{
+            addUint16(NO_PROPERTY_CACHE);
+        }
+    }
+
     private void addInt(int i){
         byte[] array = itsData.itsICode;
         int top = iCodeTop;
@@ -0,0 +1,268 @@
+package rhino;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Persistent cache of scripts compiled to Java classes by the optimizer.
+ * <p>
+ * When installed with {@link ContextFactory#initCompiledScriptCache(CompiledScriptCache)},
+ * {@link Context#compileString(String, String, int, Object)} and
+ * {@link Context#compileReader(Reader, String, int, Object)} look up the generated class
+ * in the cache directory before parsing, so a script that was compiled by an earlier run
+ * only has to be defined, not parsed and compiled again.
+ * <p>
+ * Entries are keyed on a SHA-256 hash of the source text, source name and line number,
+ * the compiler settings that affect the generated code and the Rhino build, so changing
+ * any of them just results in a new entry. Entries are written to a temporary file and
+ * then moved into place, so concurrent processes sharing a directory never see partial
+ * files. The cache never removes entries by itself, see {@link #clear()}.
+ * <p>
+ * Scripts run by the interpreter (optimization level -1), functions compiled with
+ * {@link Context#compileFunction(Scriptable, String, String, int, Object)} and scripts
+ * compiled while a debugger is attached are not cached.
+ * <p>
+ * {@link AdapterClassCache} also stores the classes it generates for {@link JavaAdapter}s here.
+ */
+public class CompiledScriptCache{
+    private static final int MAGIC = 0x52484343;
+    // bump whenever the entry layout or the generated code changes incompatibly
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".rcc";
+
+    private static String buildVersion;
+
+    private final File directory;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder storeCount = new LongAdder();
+
+    /**
+     * @param directory the directory to keep compiled classes in, created if missing
+     */
+    public CompiledScriptCache(File directory){
+        if(directory == null) throw new IllegalArgumentException("directory is null");
+        this.directory = directory;
+    }
+
+    public File getDirectory(){
+        return directory;
+    }
+
+    /** Return the number of scripts loaded from the cache. */
+    public long getHitCount(){
+        return hitCount.sum();
+    }
+
+    /** Return the number of cacheable scripts that had to be compiled. */
+    public long getMissCount(){
+        return missCount.sum();
+    }
+
+    /** Return the number of entries written by this instance. */
+    public long getStoreCount(){
+        return storeCount.sum();
+    }
+
+    /**
+     * Delete all entries in the cache directory.
+     */
+    public void clear(){
+        File[] files = directory.listFiles();
+        if(files == null) return;
+        for(File file : files){
+            if(file.getName().endsWith(SUFFIX)){
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Compute the cache key for a script compiled with the given settings.
+     * @param defaultStrict whether the script is compiled as if it started with "use strict"
+     */
+    String key(CompilerEnvirons env, boolean defaultStrict,
+               String source, String sourceName, int lineno){
+        MessageDigest digest;
+        try{
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new RuntimeException(e);
+        }
+        StringBuilder header = new StringBuilder();
+        header.append(FORMAT_VERSION).append('\n')
+        .append(getBuildVersion()).append('\n')
+        .append(env.getLanguageVersion()).append(' ')
+        .append(env.getOptimizationLevel()).append(' ')
+        .append(env.isGenerateDebugInfo()).append(' ')
+        .append(env.isReservedKeywordAsIdentifier()).append(' ')
+        .append(env.isAllowMemberExprAsFunctionName()).append(' ')
+        .append(env.isXmlAvailable()).append(' ')
+        .append(env.isGeneratingSource()).append(' ')
+        .append(env.isStrictMode()).append(' ')
+        .append(env.reportWarningAsError()).append(' ')
+        .append(env.isGenerateObserverCount()).append(' ')
+        .append(defaultStrict).append('\n');
+        Set<String> activationNames = env.getActivationNames();
+        if(activationNames != null){
+            header.append(new TreeSet<>(activationNames)).append('\n');
+        }
+        header.append(sourceName).append('\n')
+        .append(lineno).append('\n');
+        digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Compute the cache key for a {@link JavaAdapter} class. It covers the
+     * methods the adapter may override, so changes to the adapted classes
+     * result in a new entry.
+     */
+    String adapterKey(Class<?> superClass, Class<?>[] interfaces, ObjToIntMap names){
+        MessageDigest digest;
+        try{
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new RuntimeException(e);
+        }
+        StringBuilder header = new StringBuilder();
+        header.append(FORMAT_VERSION).append('\n')
+        .append(getBuildVersion()).append('\n')
+        .append("adapter ").append(superClass.getName()).append('\n');
+        for(Method method : JavaAdapter.getOverridableMethods(superClass)){
+            header.append(method).append('\n');
+        }
+        for(Class<?> iface : interfaces){
+            header.append(iface.getName()).append('\n');
+            for(Method method : iface.getMethods()){
+                header.append(method).append('\n');
+            }
+        }
+        Map<String, Integer> arities = new TreeMap<>();
+        ObjToIntMap.Iterator iter = new ObjToIntMap.Iterator(names);
+        for(iter.start(); !iter.done(); iter.next()){
+            arities.put((String)iter.getKey(), iter.getValue());
+        }
+        header.append(arities);
+        digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] hash){
+        char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++){
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Return the bytecode stored under the key in the form produced by
+     * the optimizer's compile method, or null if there is no valid entry.
+     */
+    Object load(String key){
+        File file = new File(directory, key + SUFFIX);
+        if(!file.isFile()){
+            missCount.increment();
+            return null;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())){
+                throw new IOException("invalid cache entry");
+            }
+            String className = in.readUTF();
+            byte[] classBytes = new byte[in.readInt()];
+            in.readFully(classBytes);
+            hitCount.increment();
+            return new Object[]{className, classBytes};
+        }catch(IOException e){
+            // Truncated or foreign file, compile again and let store() replace it
+            file.delete();
+            missCount.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Store the optimizer bytecode under the key. Failures are ignored, as
+     * the cache is only an optimization.
+     */
+    void store(String key, Object bytecode){
+        if(!(bytecode instanceof Object[])) return;
+        Object[] nameBytesPair = (Object[])bytecode;
+        if(nameBytesPair.length != 2 || !(nameBytesPair[0] instanceof String)
+        || !(nameBytesPair[1] instanceof byte[])){
+            return;
+        }
+        String className = (String)nameBytesPair[0];
+        byte[] classBytes = (byte[])nameBytesPair[1];
+
+        File tmp = null;
+        try{
+            if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+                return;
+            }
+            tmp = File.createTempFile(key, ".tmp", directory);
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))){
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                out.writeUTF(className);
+                out.writeInt(classBytes.length);
+                out.write(classBytes);
+            }
+            Path target = new File(directory, key + SUFFIX).toPath();
+            try{
+                Files.move(tmp.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(tmp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            storeCount.increment();
+        }catch(IOException | SecurityException e){
+            // ignore, the script was compiled fine
+        }finally{
+            if(tmp != null){
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Identify the Rhino build, so that classes generated by a different
+     * version of the optimizer are never loaded.
+     */
+    private static synchronized String getBuildVersion(){
+        if(buildVersion == null){
+            String version = null;
+            Context cx = Context.getCurrentContext();
+            if(cx != null){
+                version = cx.getImplementationVersion();
+            }
+            if(version == null){
+                // No manifest, fall back to the time the optimizer was built
+                version = "unknown";
+                try{
+                    URL url = CompiledScriptCache.class.getResource("optimizer/Codegen.class");
+                    if(url != null){
+                        URLConnection connection = url.openConnection();
+                        version = "built " + connection.getLastModified();
+                        connection.getInputStream().close();
+                    }
+                }catch(IOException | SecurityException e){
+                    // keep unknown
+                }
+            }
+            buildVersion = version;
+        }
+        return buildVersion;
+    }
+}
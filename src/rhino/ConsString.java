@@ -9,8 +9,13 @@ import java.util.*;
  * <p>This string representation is optimized for concatenation using the "+"
  * operator. Instead of immediately copying both components to a new character
  * array, ConsString keeps references to the original components and only
- * converts them to a String if either toString() is called or a certain depth
- * level is reached.</p>
+ * converts them to a String if toString() is called. Strings built with
+ * {@link #concat(CharSequence, CharSequence)} are kept balanced, so characters,
+ * substrings and searches can be served from the rope without flattening it.</p>
+ *
+ * <p>Flattening does not lock. Threads that flatten the same rope concurrently
+ * compute the same string and one of them wins, after which the components
+ * are released.</p>
  *
  * <p>Note that instances of this class are only immutable if both parts are
  * immutable, i.e. either Strings or ConsStrings that are ultimately composed
@@ -19,16 +24,57 @@ import java.util.*;
  * <p>Both the name and the concept are borrowed from V8.</p>
  */
 public class ConsString implements CharSequence{
+    /** Concatenations up to this length are copied instead of creating a rope. */
+    private static final int SHORT_LENGTH = 32;
+    /** Ropes deeper than this are rebalanced by {@link #concat(CharSequence, CharSequence)}. */
+    private static final int MAX_DEPTH = 64;
+    /** Adjacent leaves are merged up to this length when rebalancing. */
+    private static final int CHUNK_LENGTH = 1024;
 
+    // null once flat is set
     private CharSequence left, right;
     private final int length;
-    private boolean isFlat;
+    private final int depth;
+    private volatile String flat;
+    // characters walked by charAt, racy on purpose
+    private int reads;
 
     public ConsString(CharSequence str1, CharSequence str2){
         left = str1;
         right = str2;
         length = left.length() + right.length();
-        isFlat = false;
+        depth = Math.max(depth(str1), depth(str2)) + 1;
+    }
+
+    /**
+     * Concatenate two strings. Short results are copied, short leaves at the joined
+     * ends are merged and deep ropes are rebalanced, so that strings built by repeated
+     * appends stay cheap to read.
+     */
+    public static CharSequence concat(CharSequence str1, CharSequence str2){
+        int length1 = str1.length(), length2 = str2.length();
+        if(length1 == 0 && isImmutable(str2)) return str2;
+        if(length2 == 0 && isImmutable(str1)) return str1;
+        if(length1 + length2 <= SHORT_LENGTH){
+            return str1.toString().concat(str2.toString());
+        }
+
+        if(length2 < SHORT_LENGTH && str1 instanceof ConsString){
+            ConsString cons = (ConsString)str1;
+            CharSequence l = cons.left, r = cons.right;
+            if(cons.flat == null && l != null && r instanceof String && r.length() + length2 <= SHORT_LENGTH){
+                return new ConsString(l, ((String)r).concat(str2.toString()));
+            }
+        }else if(length1 < SHORT_LENGTH && str2 instanceof ConsString){
+            ConsString cons = (ConsString)str2;
+            CharSequence l = cons.left, r = cons.right;
+            if(cons.flat == null && r != null && l instanceof String && l.length() + length1 <= SHORT_LENGTH){
+                return new ConsString(str1.toString().concat((String)l), r);
+            }
+        }
+
+        ConsString result = new ConsString(str1, str2);
+        return result.depth > MAX_DEPTH ? result.rebalance() : result;
     }
 
     // Replace with string representation when serializing
@@ -38,41 +84,27 @@ public class ConsString implements CharSequence{
 
     @Override
     public String toString(){
-        return isFlat ? (String)left : flatten();
-    }
-
-    private synchronized String flatten(){
-        if(!isFlat){
-            final char[] chars = new char[length];
-            int charPos = length;
-
-            ArrayDeque<CharSequence> stack = new ArrayDeque<>();
-            stack.addFirst(left);
-
-            CharSequence next = right;
-            do{
-                if(next instanceof ConsString){
-                    ConsString casted = (ConsString)next;
-                    if(casted.isFlat){
-                        next = casted.left;
-                    }else{
-                        stack.addFirst(casted.left);
-                        next = casted.right;
-                        continue;
-                    }
-                }
+        String str = flat;
+        return str != null ? str : flatten();
+    }
 
-                final String str = (String)next;
-                charPos -= str.length();
-                str.getChars(0, str.length(), chars, charPos);
-                next = stack.isEmpty() ? null : stack.removeFirst();
-            }while(next != null);
+    private String flatten(){
+        char[] chars = new char[length];
+        getChars(0, length, chars, 0);
+        String str = new String(chars);
+        flat = str;
+        left = null;
+        right = null;
+        return str;
+    }
 
-            left = new String(chars);
-            right = "";
-            isFlat = true;
+    /** Wait for another thread that released the components to publish the flat string. */
+    private String awaitFlat(){
+        String str;
+        while((str = flat) == null){
+            Thread.yield();
         }
-        return (String)left;
+        return str;
     }
 
     @Override
@@ -82,13 +114,246 @@ public class ConsString implements CharSequence{
 
     @Override
     public char charAt(int index){
-        String str = isFlat ? (String)left : flatten();
-        return str.charAt(index);
+        String str = flat;
+        if(str != null){
+            return str.charAt(index);
+        }
+        if(index < 0 || index >= length){
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        // once walking the rope has cost as much as a copy, flatten it
+        reads += depth;
+        if(reads > length){
+            return toString().charAt(index);
+        }
+
+        CharSequence node = this;
+        while(node instanceof ConsString){
+            ConsString cons = (ConsString)node;
+            if((str = cons.flat) != null){
+                return str.charAt(index);
+            }
+            CharSequence l = cons.left, r = cons.right;
+            if(l == null || r == null){
+                return cons.awaitFlat().charAt(index);
+            }
+            int leftLength = l.length();
+            if(index < leftLength){
+                node = l;
+            }else{
+                node = r;
+                index -= leftLength;
+            }
+        }
+        return node.charAt(index);
     }
 
     @Override
     public CharSequence subSequence(int start, int end){
-        String str = isFlat ? (String)left : flatten();
-        return str.substring(start, end);
+        String str = flat;
+        if(str != null){
+            return str.substring(start, end);
+        }
+        if(start < 0 || end > length || start > end){
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        }
+        if(start == end){
+            return "";
+        }
+
+        Leaves leaves = new Leaves(this, start);
+        CharSequence leaf = leaves.next();
+        int offset = leaves.leafOffset;
+        if(end <= offset + leaf.length()){
+            return leaf.subSequence(start - offset, end - offset).toString();
+        }
+        if(end - start > length / 2){
+            // most of the string, the flat copy will be reused
+            return toString().substring(start, end);
+        }
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Copy characters to the array without flattening.
+     * @see String#getChars(int, int, char[], int)
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin){
+        String str = flat;
+        if(str != null){
+            str.getChars(srcBegin, srcEnd, dst, dstBegin);
+            return;
+        }
+        Leaves leaves = new Leaves(this, srcBegin);
+        CharSequence leaf;
+        while(srcBegin < srcEnd && (leaf = leaves.next()) != null){
+            int offset = leaves.leafOffset;
+            int from = srcBegin - offset, to = Math.min(srcEnd - offset, leaf.length());
+            if(leaf instanceof String){
+                ((String)leaf).getChars(from, to, dst, dstBegin);
+            }else{
+                for(int i = from; i < to; i++){
+                    dst[dstBegin + i - from] = leaf.charAt(i);
+                }
+            }
+            dstBegin += to - from;
+            srcBegin += to - from;
+        }
+    }
+
+    /** Append the string to the builder chunk by chunk, without flattening. */
+    public void appendTo(StringBuilder sb){
+        String str = flat;
+        if(str != null){
+            sb.append(str);
+            return;
+        }
+        sb.ensureCapacity(sb.length() + length);
+        Leaves leaves = new Leaves(this, 0);
+        CharSequence leaf;
+        while((leaf = leaves.next()) != null){
+            sb.append(leaf);
+        }
+    }
+
+    /**
+     * Find the first occurrence of the string at or after the index without flattening.
+     * @see String#indexOf(String, int)
+     */
+    public int indexOf(String str, int fromIndex){
+        String flatStr = flat;
+        if(flatStr != null){
+            return flatStr.indexOf(str, fromIndex);
+        }
+        int n = str.length();
+        if(fromIndex < 0) fromIndex = 0;
+        if(fromIndex >= length) return n == 0 ? length : -1;
+        if(n == 0) return fromIndex;
+
+        // the last n - 1 characters seen, for matches that span leaves
+        String carry = "";
+        int carryStart = 0;
+        Leaves leaves = new Leaves(this, fromIndex);
+        CharSequence leaf;
+        while((leaf = leaves.next()) != null){
+            String chunk = leaf.toString();
+            int offset = leaves.leafOffset;
+            if(carry.isEmpty()){
+                carryStart = offset;
+            }
+            if(chunk.length() < n - 1){
+                String window = carry.concat(chunk);
+                int i = window.indexOf(str, Math.max(0, fromIndex - carryStart));
+                if(i >= 0) return carryStart + i;
+                int keep = Math.min(n - 1, window.length());
+                carryStart += window.length() - keep;
+                carry = window.substring(window.length() - keep);
+                continue;
+            }
+            if(!carry.isEmpty()){
+                // every match starting in the carry ends in this window
+                String window = carry.concat(chunk.substring(0, n - 1));
+                int i = window.indexOf(str, Math.max(0, fromIndex - carryStart));
+                if(i >= 0) return carryStart + i;
+            }
+            int i = chunk.indexOf(str, Math.max(0, fromIndex - offset));
+            if(i >= 0) return offset + i;
+            carryStart = offset + chunk.length() - (n - 1);
+            carry = chunk.substring(chunk.length() - (n - 1));
+        }
+        return -1;
+    }
+
+    /** Rebuild the rope as a balanced tree, merging small leaves into chunks. */
+    private CharSequence rebalance(){
+        ArrayList<CharSequence> parts = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+        Leaves leaves = new Leaves(this, 0);
+        CharSequence leaf;
+        while((leaf = leaves.next()) != null){
+            if(leaf.length() >= CHUNK_LENGTH){
+                if(pending.length() > 0){
+                    parts.add(pending.toString());
+                    pending.setLength(0);
+                }
+                parts.add(leaf);
+            }else{
+                if(pending.length() + leaf.length() > CHUNK_LENGTH){
+                    parts.add(pending.toString());
+                    pending.setLength(0);
+                }
+                pending.append(leaf);
+            }
+        }
+        if(pending.length() > 0){
+            parts.add(pending.toString());
+        }
+        return build(parts, 0, parts.size());
+    }
+
+    private static CharSequence build(List<CharSequence> parts, int from, int to){
+        if(to - from == 1){
+            return parts.get(from);
+        }
+        int mid = (from + to) >>> 1;
+        return new ConsString(build(parts, from, mid), build(parts, mid, to));
+    }
+
+    private static int depth(CharSequence str){
+        if(str instanceof ConsString){
+            ConsString cons = (ConsString)str;
+            return cons.flat != null ? 0 : cons.depth;
+        }
+        return 0;
+    }
+
+    private static boolean isImmutable(CharSequence str){
+        return str instanceof String || str instanceof ConsString;
+    }
+
+    /** Walks the leaves of a rope in order, skipping those before a start index. */
+    private static final class Leaves{
+        private final ArrayDeque<CharSequence> stack = new ArrayDeque<>();
+        private final int start;
+        /** Index after the last leaf walked or skipped. */
+        private int offset;
+        /** Index of the leaf returned by the last {@link #next()}. */
+        int leafOffset;
+
+        Leaves(CharSequence root, int start){
+            this.start = start;
+            stack.push(root);
+        }
+
+        CharSequence next(){
+            while(!stack.isEmpty()){
+                CharSequence str = stack.pop();
+                int len = str.length();
+                if(offset + len <= start){
+                    offset += len;
+                    continue;
+                }
+                if(str instanceof ConsString){
+                    ConsString cons = (ConsString)str;
+                    String flat = cons.flat;
+                    if(flat == null){
+                        CharSequence l = cons.left, r = cons.right;
+                        if(l != null && r != null){
+                            stack.push(r);
+                            stack.push(l);
+                            continue;
+                        }
+                        flat = cons.awaitFlat();
+                    }
+                    str = flat;
+                }
+                leafOffset = offset;
+                offset += len;
+                return str;
+            }
+            return null;
+        }
     }
 }
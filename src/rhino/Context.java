@@ -329,6 +329,16 @@ public class Context{
      */
     public static final int FEATURE_ENABLE_XML_SECURE_PARSING = 20;
 
+    /**
+     * If set, small objects store their properties in a {@link ShapedSlotMap}, which shares
+     * the property layout between objects created the same way and lets the interpreter's
+     * property caches hit across objects. Objects created while the feature is off,
+     * or that grow large, use the regular hash based maps.
+     * Not used together with {@link #FEATURE_THREAD_SAFE_OBJECTS}.
+     * By default {@link #hasFeature(int)} returns false.
+     */
+    public static final int FEATURE_SHAPED_OBJECTS = 21;
+
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty = "error reporter";
 
@@ -999,6 +1009,35 @@ public class Context{
         return ScriptRuntime.initStandardObjects(this, scope, sealed);
     }
 
+    /**
+     * Initialize a top-level scope on top of the standard objects shared by all
+     * contexts of this Context's factory.
+     * <p>
+     * Unlike {@link #initStandardObjects(ScriptableObject)}, this creates no objects:
+     * the scope inherits the standard objects from
+     * {@link ContextFactory#getSharedStandardObjects()} through its prototype, which makes
+     * creating many isolated scopes cheap. Variables and functions defined by scripts end up
+     * in the scope itself, but the shared standard objects and their prototypes are sealed,
+     * so scripts can not add to or change them.
+     * <p>
+     * This method does not affect the Context it is called upon.
+     * @param scope the scope to initialize, or null, in which case a new
+     * {@link TopLevel} will be created to serve as the scope
+     * @return the initialized scope
+     */
+    public final ScriptableObject initSharedStandardObjects(ScriptableObject scope){
+        TopLevel shared = (TopLevel)factory.getSharedStandardObjects();
+        if(scope == null){
+            scope = new TopLevel();
+        }
+        scope.setParentScope(null);
+        scope.setPrototype(shared);
+        if(scope instanceof TopLevel){
+            ((TopLevel)scope).copyBuiltins(shared);
+        }
+        return scope;
+    }
+
     /**
      * Initialize the standard objects, leaving out those that offer access directly
      * to Java classes. This sets up "scope" to have access to all the standard
@@ -1809,6 +1848,85 @@ public class Context{
         maximumInterpreterStackDepth = max;
     }
 
+    /**
+     * Return the number of calls and loop iterations after which an
+     * interpreted function is compiled to bytecode, or 0 if tiered execution
+     * is disabled.
+     * @see #setTierUpThreshold(int)
+     */
+    public final int getTierUpThreshold(){
+        return tierUpThreshold;
+    }
+
+    /**
+     * Enable tiered execution of interpreted functions. Scripts still start in
+     * the interpreter, which keeps startup cheap, but a function that has been
+     * called or looped the given number of times is compiled by the optimizer and
+     * the compiled version is used for the following calls.
+     * <p>
+     * Only functions that do not need an activation object are compiled, that
+     * is functions without nested functions, <code>arguments</code>, <code>eval</code>
+     * or generators. Compiled functions can't capture continuations and are not
+     * seen by the debugger. Only scripts compiled while tiered execution is enabled
+     * keep the source needed to compile their functions. Defaults to 0, which
+     * disables tiered execution.
+     * @param threshold the number of calls and loop iterations, or 0
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public final void setTierUpThreshold(int threshold){
+        if(sealed) onSealedMutation();
+        if(threshold < 0){
+            throw new IllegalArgumentException("Cannot set tierUpThreshold to less than 0");
+        }
+        tierUpThreshold = threshold;
+    }
+
+    /**
+     * Return the number of executions after which a regular expression is
+     * compiled to bytecode, or 0 if regular expressions are only interpreted.
+     * @see #setRegExpCompileThreshold(int)
+     */
+    public final int getRegExpCompileThreshold(){
+        return regExpCompileThreshold;
+    }
+
+    /**
+     * Compile regular expressions that have been executed the given number of
+     * times to JVM classes. Patterns with lookahead or with quantifiers on
+     * anything but single characters keep being interpreted, as do all patterns
+     * on platforms that can not define classes at runtime. Defaults to 0, which
+     * disables compilation.
+     * @param threshold the number of executions, or 0
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public final void setRegExpCompileThreshold(int threshold){
+        if(sealed) onSealedMutation();
+        if(threshold < 0){
+            throw new IllegalArgumentException("Cannot set regExpCompileThreshold to less than 0");
+        }
+        regExpCompileThreshold = threshold;
+    }
+
+    /**
+     * Return whether regular expressions are matched in linear time where possible.
+     * @see #setLinearRegExpMatching(boolean)
+     */
+    public final boolean isLinearRegExpMatching(){
+        return linearRegExpMatching;
+    }
+
+    /**
+     * Match regular expressions with an automaton that takes time linear in the
+     * length of the input, instead of the backtracking interpreter, which can take
+     * exponential time on patterns like <code>(a+)+$</code>. Use this when running
+     * patterns from untrusted sources. Patterns with back references or lookahead
+     * are still interpreted. Defaults to false.
+     */
+    public final void setLinearRegExpMatching(boolean linear){
+        if(sealed) onSealedMutation();
+        linearRegExpMatching = linear;
+    }
+
     /**
      * Set the security controller for this context.
      * <p> SecurityController may only be set if it is currently null
@@ -2025,6 +2143,7 @@ public class Context{
      * @see #FEATURE_STRICT_MODE
      * @see #FEATURE_WARNING_AS_ERROR
      * @see #FEATURE_ENHANCED_JAVA_ACCESS
+     * @see #FEATURE_SHAPED_OBJECTS
      */
     public boolean hasFeature(int featureIndex){
         ContextFactory f = getFactory();
@@ -2193,8 +2312,22 @@ public class Context{
             compilationErrorReporter = compilerEnv.getErrorReporter();
         }
 
+        CompiledScriptCache cache = null;
+        String cacheKey = null;
+        if(!returnFunction && compiler == null && debugger == null
+        && optimizationLevel >= 0 && codegenClass != null){
+            cache = factory.getCompiledScriptCache();
+        }
+        if(cache != null){
+            cacheKey = cache.key(compilerEnv, isStrictMode(), sourceString, sourceName, lineno);
+            Object bytecode = cache.load(cacheKey);
+            if(bytecode != null){
+                return createCompiler().createScriptObject(bytecode, securityDomain);
+            }
+        }
+
         ScriptNode tree = parse(sourceString, sourceName, lineno,
-        compilerEnv, compilationErrorReporter, returnFunction);
+        compilerEnv, compilationErrorReporter, returnFunction, isStrictMode());
 
         Object bytecode;
         try{
@@ -2207,12 +2340,16 @@ public class Context{
             // we hit some class file limit, fall back to interpreter or report
 
             // we have to recreate the tree because the compile call might have changed the tree already
-            tree = parse(sourceString, sourceName, lineno, compilerEnv, compilationErrorReporter, returnFunction);
+            tree = parse(sourceString, sourceName, lineno, compilerEnv, compilationErrorReporter, returnFunction, isStrictMode());
 
             compiler = createInterpreter();
             bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), returnFunction);
         }
 
+        if(tierUpThreshold > 0 && bytecode instanceof InterpreterData){
+            ((InterpreterData)bytecode).setRawSource(sourceString);
+        }
+
         if(debugger != null){
             if(sourceString == null) Kit.codeBug();
             if(bytecode instanceof DebuggableScript){
@@ -2228,6 +2365,10 @@ public class Context{
             result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
         }else{
             result = compiler.createScriptObject(bytecode, securityDomain);
+            if(cache != null && compiler.getClass() == codegenClass){
+                // only store classes that were defined successfully
+                cache.store(cacheKey, bytecode);
+            }
         }
 
         return result;
@@ -2235,12 +2376,12 @@ public class Context{
 
     private ScriptNode parse(String sourceString, String sourceName, int lineno,
                              CompilerEnvirons compilerEnv, ErrorReporter compilationErrorReporter,
-                             boolean returnFunction) throws IOException{
+                             boolean returnFunction, boolean strict) throws IOException{
         Parser p = new Parser(compilerEnv, compilationErrorReporter);
         if(returnFunction){
             p.calledByCompileFunction = true;
         }
-        if(isStrictMode()){
+        if(strict){
             p.setDefaultUseStrictDirective(true);
         }
 
@@ -2262,6 +2403,45 @@ public class Context{
         return tree;
     }
 
+    /**
+     * Compile an interpreted function with the optimizer for tiered execution.
+     * The function is compiled again from its original source, so it must not
+     * use the activation of an enclosing function. The compiled copy only runs
+     * the body of the function: it is parsed as a declaration, so its name is
+     * looked up in the enclosing scope like in the interpreter and resolves to
+     * the original function rather than to the copy.
+     * @throws RuntimeException if the function can't be compiled
+     */
+    final NativeFunction compileTier(InterpretedFunction f, Object staticSecurityDomain){
+        InterpreterData idata = f.idata;
+        if(codegenClass == null || idata.rawSource == null){
+            throw new IllegalStateException("Function can't be compiled");
+        }
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(this);
+        compilerEnv.setOptimizationLevel(9);
+        compilerEnv.setLanguageVersion(idata.languageVersion);
+        compilerEnv.setGeneratingSource(false);
+
+        // anonymous functions can only be parsed as expressions, they have no name to bind
+        boolean anonymous = idata.itsName == null || idata.itsName.isEmpty();
+        try{
+            ScriptNode tree = parse(idata.rawSource.substring(idata.rawSourceStart, idata.rawSourceEnd),
+            idata.itsSourceFile, idata.rawSourceLineno,
+            compilerEnv, compilerEnv.getErrorReporter(), anonymous, idata.isStrict);
+            if(tree.getFunctionCount() != 1){
+                throw new IllegalStateException("Function can't be compiled");
+            }
+            Evaluator compiler = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+            Object bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), true);
+            return (NativeFunction)compiler.createFunctionObject(this, f.getParentScope(), bytecode, staticSecurityDomain);
+        }catch(IOException ioe){
+            // Should never happen because we just made the reader
+            // from a String
+            throw new RuntimeException(ioe);
+        }
+    }
+
     private static void notifyDebugger_r(Context cx, DebuggableScript dscript,
                                          String debugSource){
         cx.debugger.handleCompilationDone(cx, dscript, debugSource);
@@ -2439,6 +2619,13 @@ public class Context{
     int instructionCount;
     int instructionThreshold;
 
+    // For tiered execution (interpreter only)
+    int tierUpThreshold;
+
+    // For matching regular expressions, see setRegExpCompileThreshold and setLinearRegExpMatching
+    int regExpCompileThreshold;
+    boolean linearRegExpMatching;
+
     // It can be used to return the second uint32 result from function
     long scratchUint32;
 
@@ -2449,4 +2636,6 @@ public class Context{
     public boolean generateObserverCount = false;
 
     boolean isTopLevelStrict;
+    // set while building the standard objects shared between threads
+    boolean sharedObjects;
 }
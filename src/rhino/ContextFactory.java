@@ -2,6 +2,8 @@
 
 package rhino;
 
+import rhino.regexp.*;
+
 import java.security.*;
 
 /**
@@ -109,6 +111,9 @@ public class ContextFactory{
     private volatile Object listeners;
     private boolean disabledListening;
     private ClassLoader applicationClassLoader;
+    private volatile CompiledScriptCache compiledScriptCache;
+    private final AdapterClassCache adapterClassCache = new AdapterClassCache();
+    private volatile TopLevel sharedStandardObjects;
 
     /**
      * Listener of {@link Context} creation and release events.
@@ -235,6 +240,8 @@ public class ContextFactory{
 
             case Context.FEATURE_THREAD_SAFE_OBJECTS:
 
+            case Context.FEATURE_SHAPED_OBJECTS:
+
             case Context.FEATURE_ENHANCED_JAVA_ACCESS:
 
             case Context.FEATURE_WARNING_AS_ERROR:
@@ -333,6 +340,74 @@ public class ContextFactory{
         this.applicationClassLoader = loader;
     }
 
+    /**
+     * Return the cache of compiled regular expressions. It is shared by all
+     * factories and Contexts, so its size and counters cover all of them.
+     */
+    public final RegExpCache getRegExpCache(){
+        return RegExpImpl.getCache();
+    }
+
+    /**
+     * Return the standard objects shared by all scopes initialized with
+     * {@link Context#initSharedStandardObjects(ScriptableObject)} from contexts of this factory.
+     * <p>
+     * The scope is built on first use, with the settings of the current Context or a
+     * new one from this factory. It is sealed along with all standard objects and their
+     * prototypes, and all of its objects have thread-safe property maps, so it may be
+     * read by any number of threads.
+     */
+    public final ScriptableObject getSharedStandardObjects(){
+        TopLevel scope = sharedStandardObjects;
+        if(scope == null){
+            synchronized(this){
+                scope = sharedStandardObjects;
+                if(scope == null){
+                    scope = call(cx -> {
+                        boolean old = cx.sharedObjects;
+                        cx.sharedObjects = true;
+                        try{
+                            TopLevel s = new TopLevel();
+                            cx.initStandardObjects(s, true);
+                            // resolves the remaining lazily loaded constructors
+                            s.sealObject();
+                            return s;
+                        }finally{
+                            cx.sharedObjects = old;
+                        }
+                    });
+                    sharedStandardObjects = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Get the cache consulted when compiling scripts with the optimizer,
+     * or null if compiled classes are not cached.
+     */
+    public final CompiledScriptCache getCompiledScriptCache(){
+        return compiledScriptCache;
+    }
+
+    /**
+     * Set the cache to store classes generated for scripts in, so that later
+     * runs can skip parsing and compiling them.
+     * @see CompiledScriptCache
+     */
+    public final void initCompiledScriptCache(CompiledScriptCache cache){
+        checkNotSealed();
+        this.compiledScriptCache = cache;
+    }
+
+    /**
+     * Return the cache of JavaAdapter classes shared by all scopes of this factory.
+     */
+    public final AdapterClassCache getAdapterClassCache(){
+        return adapterClassCache;
+    }
+
     /**
      * Execute top call to script or function.
      * When the runtime is about to execute a script or function that will
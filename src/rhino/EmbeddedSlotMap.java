@@ -22,6 +22,9 @@ implements SlotMap{
 
     private int count;
 
+    // identity of the current layout, dropped whenever a slot is added, replaced or removed
+    private Object shape;
+
     // initial slot array size, must be a power of 2
     private static final int INITIAL_SLOT_SIZE = 4;
 
@@ -67,6 +70,22 @@ implements SlotMap{
         return new Iter(firstAdded);
     }
 
+    /**
+     * Return an object that identifies the current layout of this map. The same
+     * object is returned until a slot is added, replaced or removed, so callers
+     * may keep a Slot together with the shape it was found under and reuse it
+     * as long as the shape is unchanged.
+     * @param create if false, return null instead of allocating a shape for a
+     * layout that has not been asked for yet
+     */
+    public Object getShape(boolean create){
+        Object s = shape;
+        if(s == null && create){
+            shape = s = new Object();
+        }
+        return s;
+    }
+
     /**
      * Locate the slot with the given name or index.
      */
@@ -189,6 +208,7 @@ implements SlotMap{
 
                 newSlot.value = slot.value;
                 newSlot.next = slot.next;
+                shape = null;
 
                 // Replace new slot in linked list, keeping same order
                 if(slot == firstAdded){
@@ -246,6 +266,7 @@ implements SlotMap{
 
     private void insertNewSlot(ScriptableObject.Slot newSlot){
         ++count;
+        shape = null;
         // add new slot to linked list
         if(lastAdded != null){
             lastAdded.orderedNext = newSlot;
@@ -285,6 +306,7 @@ implements SlotMap{
                     return;
                 }
                 count--;
+                shape = null;
                 // remove slot from hash table
                 if(prev == slot){
                     slots[slotIndex] = slot.next;
@@ -135,6 +135,12 @@ abstract class Icode{
     // Last icode
     MIN_ICODE = -66;
 
+    /**
+     * Property cache operand meaning that the instruction has no cache, used once
+     * a function has more property access sites than fit in the uint16 operand.
+     */
+    static final int NO_PROPERTY_CACHE = 0xFFFF;
+
     static String bytecodeName(int bytecode){
         if(!validBytecode(bytecode)){
             throw new IllegalArgumentException(String.valueOf(bytecode));
@@ -2,6 +2,10 @@
 
 package rhino;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 /**
  * Class ImporterTopLevel
  * <p>
@@ -30,6 +34,8 @@ package rhino;
  * js&gt; v = new Vector()
  * []
  * </pre>
+ * Names looked up in the imported packages are cached per scope, including the
+ * names that are not found, until the next call to importPackage or importClass.
  * @author Norris Boyd
  */
 public class ImporterTopLevel extends TopLevel{
@@ -74,6 +80,18 @@ public class ImporterTopLevel extends TopLevel{
         delete("constructor");
     }
 
+    /**
+     * Initialize this scope on top of the standard objects shared by all contexts
+     * of the context's factory, see {@link Context#initSharedStandardObjects(ScriptableObject)}.
+     * Only the importer functions are created for this scope.
+     */
+    public void initSharedStandardObjects(Context cx){
+        cx.initSharedStandardObjects(this);
+        topScopeFlag = true;
+        exportAsJSClass(MAX_PROTOTYPE_ID, this, false);
+        delete("constructor");
+    }
+
     @Override
     public boolean has(String name, Scriptable start){
         return super.has(name, start)
@@ -89,14 +107,41 @@ public class ImporterTopLevel extends TopLevel{
         return result;
     }
 
+    /** Return the number of lookups in imported packages answered from the cache. */
+    public long getImportCacheHitCount(){
+        return hitCount.sum();
+    }
+
+    /** Return the number of lookups that had to search the imported packages. */
+    public long getImportCacheMissCount(){
+        return missCount.sum();
+    }
+
+    /** Return the number of package lookups, each a potential class loader probe, saved by the cache. */
+    public long getPackageLookupsAvoided(){
+        return lookupsAvoided.sum();
+    }
+
     private Object getPackageProperty(String name, Scriptable start){
-        Object result = NOT_FOUND;
-        Object[] elements;
-        synchronized(importedPackages){
-            elements = importedPackages.toArray();
+        ConcurrentHashMap<String, Object> cache = resolved;
+        if(cache == null){
+            // set before reading the packages, so that a concurrent import clears it
+            cache = new ConcurrentHashMap<>();
+            resolved = cache;
+        }
+        NativeJavaPackage[] packages = importedPackages;
+        if(packages.length == 0){
+            return NOT_FOUND;
+        }
+        Object result = cache.get(name);
+        if(result != null){
+            hitCount.increment();
+            lookupsAvoided.add(packages.length);
+            return result;
         }
-        for(int i = 0; i < elements.length; i++){
-            NativeJavaPackage p = (NativeJavaPackage)elements[i];
+        missCount.increment();
+        result = NOT_FOUND;
+        for(NativeJavaPackage p : packages){
             Object v = p.getPkgProperty(name, start, false);
             if(v != null && !(v instanceof NativeJavaPackage)){
                 if(result == NOT_FOUND){
@@ -107,6 +152,7 @@ public class ImporterTopLevel extends TopLevel{
                 }
             }
         }
+        cache.put(name, result);
         return result;
     }
 
@@ -170,13 +216,17 @@ public class ImporterTopLevel extends TopLevel{
         if(pkg == null){
             return;
         }
-        synchronized(importedPackages){
-            for(int j = 0; j != importedPackages.size(); j++){
-                if(pkg.equals(importedPackages.get(j))){
+        synchronized(this){
+            NativeJavaPackage[] packages = importedPackages;
+            for(NativeJavaPackage p : packages){
+                if(pkg.equals(p)){
                     return;
                 }
             }
-            importedPackages.add(pkg);
+            packages = Arrays.copyOf(packages, packages.length + 1);
+            packages[packages.length - 1] = pkg;
+            importedPackages = packages;
+            resolved = null;
         }
     }
 
@@ -189,6 +239,7 @@ public class ImporterTopLevel extends TopLevel{
         }
         //defineProperty(n, cl, DONTENUM);
         put(n, this, cl);
+        resolved = null;
     }
 
     @Override
@@ -284,6 +335,11 @@ public class ImporterTopLevel extends TopLevel{
 
 // #/string_id_map#
 
-    private final ObjArray importedPackages = new ObjArray();
+    private volatile NativeJavaPackage[] importedPackages = new NativeJavaPackage[0];
     private boolean topScopeFlag;
+    // name -> class found in the imported packages, or NOT_FOUND
+    private transient volatile ConcurrentHashMap<String, Object> resolved;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder lookupsAvoided = new LongAdder();
 }
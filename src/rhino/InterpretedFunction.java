@@ -1,11 +1,18 @@
 package rhino;
 
+import rhino.ast.*;
 import rhino.debug.*;
 
+import java.lang.reflect.*;
+
 final class InterpretedFunction extends NativeFunction implements Script{
     InterpreterData idata;
     SecurityController securityController;
     Object securityDomain;
+    // domain the script was compiled with, to compile the function for tiered execution
+    private final Object staticSecurityDomain;
+    // compiled version of the function once it got hot, see tierUp
+    private volatile NativeFunction tier;
 
     private InterpretedFunction(InterpreterData idata,
                                 Object staticSecurityDomain){
@@ -28,12 +35,14 @@ final class InterpretedFunction extends NativeFunction implements Script{
 
         this.securityController = sc;
         this.securityDomain = dynamicDomain;
+        this.staticSecurityDomain = staticSecurityDomain;
     }
 
     private InterpretedFunction(InterpretedFunction parent, int index){
         this.idata = parent.idata.itsNestedFunctions[index];
         this.securityController = parent.securityController;
         this.securityDomain = parent.securityDomain;
+        this.staticSecurityDomain = parent.staticSecurityDomain;
     }
 
     /**
@@ -87,12 +96,64 @@ final class InterpretedFunction extends NativeFunction implements Script{
     @Override
     public Object call(Context cx, Scriptable scope, Scriptable thisObj,
                        Object[] args){
+        NativeFunction compiled = tierUp(cx);
+        if(compiled != null){
+            return compiled.call(cx, scope, thisObj, args);
+        }
         if(!ScriptRuntime.hasTopCall(cx)){
             return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args, idata.isStrict);
         }
         return Interpreter.interpret(this, cx, scope, thisObj, args);
     }
 
+    /**
+     * Count a call for tiered execution. Return the compiled version of the function
+     * once it is hot, or null if it should still be interpreted.
+     * @see Context#setTierUpThreshold(int)
+     */
+    NativeFunction tierUp(Context cx){
+        NativeFunction compiled = tier;
+        if(compiled != null || cx.tierUpThreshold <= 0){
+            return compiled;
+        }
+        InterpreterData data = idata;
+        if(data.countTier(cx.tierUpThreshold)){
+            return null;
+        }
+        if(data.tierFailed || cx.debugger != null || securityController != cx.getSecurityController()){
+            return null;
+        }
+        if(!canTierUp()){
+            data.tierFailed = true;
+            return null;
+        }
+        try{
+            Constructor<?> ctor = data.tierConstructor;
+            if(ctor == null){
+                compiled = cx.compileTier(this, staticSecurityDomain);
+                data.tierConstructor = compiled.getClass().getConstructors()[0];
+            }else{
+                compiled = (NativeFunction)ctor.newInstance(getParentScope(), cx, 0);
+            }
+        }catch(RuntimeException | ReflectiveOperationException e){
+            // features the optimizer doesn't support, keep interpreting
+            data.tierFailed = true;
+            return null;
+        }
+        return tier = compiled;
+    }
+
+    /**
+     * Tell whether the function can be compiled on its own. It must not use the activation
+     * of enclosing functions, and the name of function expressions is only bound inside them.
+     */
+    private boolean canTierUp(){
+        int type = idata.itsFunctionType;
+        return type != 0 && type != FunctionNode.ARROW_FUNCTION
+        && !(type == FunctionNode.FUNCTION_EXPRESSION && idata.itsName != null && !idata.itsName.isEmpty())
+        && !idata.itsNeedsActivation && !idata.isES6Generator && idata.rawSource != null;
+    }
+
     @Override
     public Object exec(Context cx, Scriptable scope){
         if(!isScript()){
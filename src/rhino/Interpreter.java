@@ -484,6 +484,14 @@ public final class Interpreter extends Icode implements Evaluator{
                     pc += 2;
                     break;
                 }
+                case Token.GETPROP:
+                case Token.SETPROP:
+                case Icode_PROP_AND_THIS:{
+                    int cacheIndex = getIndex(iCode, pc);
+                    out.println(tname + " cache " + cacheIndex);
+                    pc += 2;
+                    break;
+                }
                 case Icode_VAR_INC_DEC:
                 case Icode_NAME_INC_DEC:
                 case Icode_PROP_INC_DEC:
@@ -665,6 +673,10 @@ public final class Interpreter extends Icode implements Evaluator{
 
             case Icode_SHORTNUMBER:
 
+            case Token.GETPROP:
+            case Token.SETPROP:
+            case Icode_PROP_AND_THIS:
+
             case Icode_GOSUB:
             case Token.GOTO:
             case Token.IFEQ:
@@ -673,6 +685,7 @@ public final class Interpreter extends Icode implements Evaluator{
             case Icode_LEAVEDQ:
                 // target pc offset
                 // short number
+                // ushort property cache index
                 // ushort index
                 // ushort string index
                 // line number
@@ -721,6 +734,28 @@ public final class Interpreter extends Icode implements Evaluator{
         return 1;
     }
 
+    /**
+     * Return the property cache for the instruction whose cache operand starts at pc,
+     * allocating it on first use, or null if the instruction has no cache.
+     */
+    private static PropertyCache getPropertyCache(InterpreterData idata, byte[] iCode, int pc){
+        int index = getIndex(iCode, pc);
+        if(index == NO_PROPERTY_CACHE){
+            return null;
+        }
+        PropertyCache[] caches = idata.itsPropertyCaches;
+        if(caches == null){
+            caches = new PropertyCache[idata.itsPropertyCacheCount];
+            idata.itsPropertyCaches = caches;
+        }
+        PropertyCache cache = caches[index];
+        if(cache == null){
+            cache = new PropertyCache();
+            caches[index] = cache;
+        }
+        return cache;
+    }
+
     static int[] getLineNumbers(InterpreterData data){
         UintMap presentLines = new UintMap();
 
@@ -1164,7 +1199,7 @@ public final class Interpreter extends Icode implements Evaluator{
                                 --stackTop;
 
                                 NativeIterator.StopIteration si = new NativeIterator.StopIteration(
-                                (frame.result == DOUBLE_MARK) ? frame.resultDbl : frame.result);
+                                (frame.result == DOUBLE_MARK) ? ScriptRuntime.wrapNumber(frame.resultDbl) : frame.result);
 
                                 int sourceLine = getIndex(iCode, frame.pc);
                                 generatorState.returnedException =
@@ -1399,7 +1434,9 @@ public final class Interpreter extends Icode implements Evaluator{
                             case Token.GETPROP:{
                                 Object lhs = stack[stackTop];
                                 if(lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-                                stack[stackTop] = ScriptRuntime.getObjectProp(lhs, stringReg,
+                                PropertyCache cache = getPropertyCache(frame.idata, iCode, frame.pc);
+                                frame.pc += 2;
+                                stack[stackTop] = PropertyCache.getObjectProp(cache, lhs, stringReg,
                                 cx, frame.scope);
                                 continue Loop;
                             }
@@ -1409,7 +1446,9 @@ public final class Interpreter extends Icode implements Evaluator{
                                 --stackTop;
                                 Object lhs = stack[stackTop];
                                 if(lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-                                stack[stackTop] = ScriptRuntime.setObjectProp(lhs, stringReg, rhs,
+                                PropertyCache cache = getPropertyCache(frame.idata, iCode, frame.pc);
+                                frame.pc += 2;
+                                stack[stackTop] = PropertyCache.setObjectProp(cache, lhs, stringReg, rhs,
                                 cx, frame.scope);
                                 continue Loop;
                             }
@@ -1481,7 +1520,9 @@ public final class Interpreter extends Icode implements Evaluator{
                                 Object obj = stack[stackTop];
                                 if(obj == DBL_MRK) obj = ScriptRuntime.wrapNumber(sDbl[stackTop]);
                                 // stringReg: property
-                                stack[stackTop] = ScriptRuntime.getPropFunctionAndThis(obj, stringReg,
+                                PropertyCache cache = getPropertyCache(frame.idata, iCode, frame.pc);
+                                frame.pc += 2;
+                                stack[stackTop] = PropertyCache.getPropFunctionAndThis(cache, obj, stringReg,
                                 cx, frame.scope);
                                 ++stackTop;
                                 stack[stackTop] = ScriptRuntime.lastStoredScriptable(cx);
@@ -1539,7 +1580,7 @@ public final class Interpreter extends Icode implements Evaluator{
                                 }
                                 if(fun instanceof InterpretedFunction){
                                     InterpretedFunction ifun = (InterpretedFunction)fun;
-                                    if(frame.fnOrScript.securityDomain == ifun.securityDomain){
+                                    if(frame.fnOrScript.securityDomain == ifun.securityDomain && ifun.tierUp(cx) == null){
                                         CallFrame callParentFrame = frame;
                                         if(op == Icode_TAIL_CALL){
                                             // In principle tail call can re-use the current
@@ -1605,7 +1646,8 @@ public final class Interpreter extends Icode implements Evaluator{
                                         Callable applyCallable = ScriptRuntime.getCallable(funThisObj);
                                         if(applyCallable instanceof InterpretedFunction){
                                             InterpretedFunction iApplyCallable = (InterpretedFunction)applyCallable;
-                                            if(frame.fnOrScript.securityDomain == iApplyCallable.securityDomain){
+                                            if(frame.fnOrScript.securityDomain == iApplyCallable.securityDomain
+                                            && iApplyCallable.tierUp(cx) == null){
                                                 frame = initFrameForApplyOrCall(cx, frame, indexReg,
                                                 stack, sDbl, stackTop, op, calleeScope, ifun,
                                                 iApplyCallable);
@@ -1624,7 +1666,7 @@ public final class Interpreter extends Icode implements Evaluator{
                                     // if the method is in fact an InterpretedFunction
                                     if(noSuchMethodMethod instanceof InterpretedFunction){
                                         InterpretedFunction ifun = (InterpretedFunction)noSuchMethodMethod;
-                                        if(frame.fnOrScript.securityDomain == ifun.securityDomain){
+                                        if(frame.fnOrScript.securityDomain == ifun.securityDomain && ifun.tierUp(cx) == null){
                                             frame = initFrameForNoSuchMethod(cx, frame, indexReg, stack, sDbl,
                                             stackTop, op, funThisObj, calleeScope,
                                             noSuchMethodShim, ifun);
@@ -1652,7 +1694,7 @@ public final class Interpreter extends Icode implements Evaluator{
                                 Object lhs = stack[stackTop];
                                 if(lhs instanceof InterpretedFunction){
                                     InterpretedFunction f = (InterpretedFunction)lhs;
-                                    if(frame.fnOrScript.securityDomain == f.securityDomain){
+                                    if(frame.fnOrScript.securityDomain == f.securityDomain && f.tierUp(cx) == null){
                                         Scriptable newInstance = f.createObject(cx, frame.scope);
                                         CallFrame calleeFrame = initFrame(cx, frame.scope, newInstance, stack, sDbl,
                                         stackTop + 1, indexReg, f, frame);
@@ -1721,19 +1763,21 @@ public final class Interpreter extends Icode implements Evaluator{
                                 ++frame.pc;
                                 continue Loop;
                             case Icode_SETCONSTVAR1:
-                            case Icode_GETVAR1:
-                            case Icode_SETVAR1:
                                 indexReg = iCode[frame.pc++];
                                 // fallthrough
                             case Token.SETCONSTVAR:
                                 stackTop = doSetConstVar(frame, stack, sDbl, stackTop, vars, varDbls,
                                 varAttributes, indexReg);
                                 continue Loop;
+                            case Icode_SETVAR1:
+                                indexReg = iCode[frame.pc++];
                                 // fallthrough
                             case Token.SETVAR:
                                 stackTop = doSetVar(frame, stack, sDbl, stackTop, vars, varDbls,
                                 varAttributes, indexReg);
                                 continue Loop;
+                            case Icode_GETVAR1:
+                                indexReg = iCode[frame.pc++];
                                 // fallthrough
                             case Token.GETVAR:
                                 stackTop = doGetVar(frame, stack, sDbl, stackTop, vars, varDbls, indexReg);
@@ -2014,6 +2058,10 @@ public final class Interpreter extends Icode implements Evaluator{
                         addInstructionCount(cx, frame, 2);
                     }
                     int offset = getShort(iCode, frame.pc);
+                    if(offset < 0 && cx.tierUpThreshold > 0){
+                        // loops make the function hot for tiered execution
+                        frame.idata.countTier(cx.tierUpThreshold);
+                    }
                     if(offset != 0){
                         // -1 accounts for pc pointing to jump opcode + 1
                         frame.pc += offset - 1;
@@ -3012,7 +3060,7 @@ public final class Interpreter extends Icode implements Evaluator{
             }else if(lhs instanceof CharSequence || rhs instanceof CharSequence){
                 CharSequence lstr = ScriptRuntime.toCharSequence(lhs);
                 CharSequence rstr = ScriptRuntime.toCharSequence(rhs);
-                stack[stackTop] = new ConsString(lstr, rstr);
+                stack[stackTop] = ConsString.concat(lstr, rstr);
             }else{
                 double lDbl = (lhs instanceof Number)
                 ? ((Number)lhs).doubleValue() : ScriptRuntime.toNumber(lhs);
@@ -3037,9 +3085,9 @@ public final class Interpreter extends Icode implements Evaluator{
             CharSequence lstr = (CharSequence)lhs;
             CharSequence rstr = ScriptRuntime.toCharSequence(d);
             if(leftRightOrder){
-                stack[stackTop] = new ConsString(lstr, rstr);
+                stack[stackTop] = ConsString.concat(lstr, rstr);
             }else{
-                stack[stackTop] = new ConsString(rstr, lstr);
+                stack[stackTop] = ConsString.concat(rstr, lstr);
             }
         }else{
             double lDbl = (lhs instanceof Number)
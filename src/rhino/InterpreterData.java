@@ -2,7 +2,9 @@ package rhino;
 
 import rhino.debug.*;
 
+import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 final class InterpreterData implements DebuggableScript{
     static final int INITIAL_MAX_ICODE_LENGTH = 1024;
@@ -41,9 +43,17 @@ final class InterpreterData implements DebuggableScript{
     double[] itsDoubleTable;
     InterpreterData[] itsNestedFunctions;
     Object[] itsRegExpLiterals;
+    // pattern and flags of each literal in itsRegExpLiterals, used by InterpreterSnapshot
+    String[] itsRegExpSources;
 
     byte[] itsICode;
 
+    // Number of property cache operands emitted into itsICode by GETPROP,
+    // SETPROP and PROP_AND_THIS. The caches themselves are allocated on
+    // first execution, see Interpreter.getPropertyCache.
+    int itsPropertyCacheCount;
+    PropertyCache[] itsPropertyCaches;
+
     int[] itsExceptionTable;
 
     int itsMaxVars;
@@ -62,6 +72,13 @@ final class InterpreterData implements DebuggableScript{
     int encodedSourceStart;
     int encodedSourceEnd;
 
+    // original source text, kept for tiered execution so the optimizer compiles
+    // the function as written and reports the same line numbers
+    String rawSource;
+    int rawSourceStart;
+    int rawSourceEnd;
+    int rawSourceLineno;
+
     int languageVersion;
 
     boolean isStrict;
@@ -80,6 +97,15 @@ final class InterpreterData implements DebuggableScript{
 
     private int icodeHashCode = 0;
 
+    // Calls and backward jumps counted for tiered execution, see InterpretedFunction.tierUp.
+    // Shared by all functions and threads running this code, so only updated through countTier
+    private volatile int tierCount;
+    private static final AtomicIntegerFieldUpdater<InterpreterData> TIER_COUNT
+    = AtomicIntegerFieldUpdater.newUpdater(InterpreterData.class, "tierCount");
+    // Constructor of the compiled class once the function was compiled
+    volatile Constructor<?> tierConstructor;
+    volatile boolean tierFailed;
+
     /** true if the function has been declared like "var foo = function() {...}" */
     boolean declaredAsVar;
 
@@ -157,4 +183,28 @@ final class InterpreterData implements DebuggableScript{
         }
         return h;
     }
+
+    /**
+     * Count a call or loop iteration for tiered execution.
+     * Return false once the count reached the threshold.
+     */
+    boolean countTier(int threshold){
+        int count;
+        do{
+            count = tierCount;
+            if(count >= threshold){
+                return false;
+            }
+        }while(!TIER_COUNT.compareAndSet(this, count, count + 1));
+        return true;
+    }
+
+    void setRawSource(String source){
+        rawSource = source;
+        if(itsNestedFunctions != null){
+            for(InterpreterData nested : itsNestedFunctions){
+                nested.setRawSource(source);
+            }
+        }
+    }
 }
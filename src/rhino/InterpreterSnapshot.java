@@ -0,0 +1,447 @@
+package rhino;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compact binary form of scripts compiled for the interpreter.
+ * <p>
+ * A snapshot holds the complete {@link InterpreterData} tree of a script: icode, string and
+ * number tables, exception and jump tables, literal ids, regular expression sources and all
+ * nested functions, as well as the encoded source used for decompilation and the original
+ * source kept for {@link Context#setTierUpThreshold(int) tiered execution}. Line numbers are
+ * part of the icode. Reading a snapshot rebuilds the script without going through the
+ * Parser, IRFactory or CodeGenerator, which makes it useful for starting up quickly at
+ * optimization level -1.
+ * <p>
+ * Snapshots are tied to the icode layout of the Rhino build that wrote them. Reading a
+ * snapshot from a different build fails with an IOException rather than running wrong code,
+ * but a snapshot is still executable code and must only be loaded from trusted sources.
+ * <pre>
+ * Script script = cx.compileString(source, "main.js", 1, null); // at optimization level -1
+ * InterpreterSnapshot.write(script, out);
+ * ...
+ * Script loaded = InterpreterSnapshot.read(cx, in, null);
+ * </pre>
+ */
+public final class InterpreterSnapshot{
+    private static final int MAGIC = 0x52484953;
+    // bump whenever the layout below changes
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int NULL = -1;
+    private static final int NEW_STRING = -2;
+
+    private static final byte LITERAL_OBJECT_IDS = 0;
+    private static final byte LITERAL_SKIP_INDEXES = 1;
+    private static final byte ID_STRING = 0;
+    private static final byte ID_INDEX = 1;
+
+    private InterpreterSnapshot(){
+    }
+
+    /**
+     * Return true if the script was compiled by the interpreter and can be written
+     * with {@link #write(Script, OutputStream)}.
+     */
+    public static boolean isSupported(Script script){
+        return script instanceof InterpretedFunction
+        && ((InterpretedFunction)script).idata.topLevel;
+    }
+
+    /**
+     * Write the compiled form of a script returned by one of the Context compile methods
+     * while the optimization level was -1.
+     * @throws IllegalArgumentException if the script was not compiled by the interpreter
+     */
+    public static void write(Script script, OutputStream out) throws IOException{
+        if(!isSupported(script)){
+            throw new IllegalArgumentException("Only scripts compiled in interpreted mode can be written");
+        }
+        InterpreterData idata = ((InterpretedFunction)script).idata;
+        SnapshotWriter writer = new SnapshotWriter(new DataOutputStream(new BufferedOutputStream(out)));
+        writer.out.writeInt(MAGIC);
+        writer.out.writeInt(FORMAT_VERSION);
+        writer.out.writeInt(Icode.MIN_ICODE);
+        writer.out.writeInt(Token.LAST_TOKEN);
+        writer.writeString(idata.itsSourceFile);
+        writer.writeLongString(idata.encodedSource);
+        writer.writeLongString(idata.rawSource);
+        writer.writeData(idata);
+        writer.out.flush();
+    }
+
+    /**
+     * Read a script written by {@link #write(Script, OutputStream)}.
+     * @param cx the current Context, used to compile regular expression literals
+     * @param securityDomain the same as for {@link Context#compileString(String, String, int, Object)}
+     * @throws IOException if the stream is not a snapshot written by this version of Rhino
+     */
+    public static Script read(Context cx, InputStream in, Object securityDomain) throws IOException{
+        if(securityDomain != null && cx.getSecurityController() == null){
+            throw new IllegalArgumentException(
+            "securityDomain should be null if setSecurityController() was never called");
+        }
+        SnapshotReader reader = new SnapshotReader(cx, new DataInputStream(new BufferedInputStream(in)));
+        if(reader.in.readInt() != MAGIC){
+            throw new IOException("Not an interpreter snapshot");
+        }
+        if(reader.in.readInt() != FORMAT_VERSION || reader.in.readInt() != Icode.MIN_ICODE
+        || reader.in.readInt() != Token.LAST_TOKEN){
+            throw new IOException("Interpreter snapshot was written by an incompatible version");
+        }
+        reader.sourceFile = reader.readString();
+        reader.encodedSource = reader.readLongString();
+        reader.rawSource = reader.readLongString();
+        InterpreterData idata = reader.readData(null);
+        return InterpretedFunction.createScript(idata, securityDomain);
+    }
+
+    private static final class SnapshotWriter{
+        final DataOutputStream out;
+        // strings already written, names repeat a lot across nested functions
+        final Map<String, Integer> strings = new HashMap<>();
+
+        SnapshotWriter(DataOutputStream out){
+            this.out = out;
+        }
+
+        void writeData(InterpreterData idata) throws IOException{
+            writeString(idata.itsName);
+            out.writeInt(idata.itsFunctionType);
+            out.writeInt(idata.languageVersion);
+            out.writeBoolean(idata.itsNeedsActivation);
+            out.writeBoolean(idata.isStrict);
+            out.writeBoolean(idata.topLevel);
+            out.writeBoolean(idata.isES6Generator);
+            out.writeBoolean(idata.evalScriptFlag);
+            out.writeBoolean(idata.declaredAsVar);
+            out.writeBoolean(idata.declaredAsFunctionExpression);
+
+            out.writeInt(idata.itsICode.length);
+            out.write(idata.itsICode);
+            writeStrings(idata.itsStringTable);
+            if(idata.itsDoubleTable == null){
+                out.writeInt(NULL);
+            }else{
+                out.writeInt(idata.itsDoubleTable.length);
+                for(double d : idata.itsDoubleTable){
+                    out.writeDouble(d);
+                }
+            }
+            writeInts(idata.itsExceptionTable);
+
+            out.writeInt(idata.itsPropertyCacheCount);
+            out.writeInt(idata.itsMaxVars);
+            out.writeInt(idata.itsMaxLocals);
+            out.writeInt(idata.itsMaxStack);
+            out.writeInt(idata.itsMaxFrameArray);
+            out.writeInt(idata.itsMaxCalleeArgs);
+            out.writeInt(idata.firstLinePC);
+
+            writeStrings(idata.argNames);
+            if(idata.argIsConst == null){
+                out.writeInt(NULL);
+            }else{
+                out.writeInt(idata.argIsConst.length);
+                for(boolean b : idata.argIsConst){
+                    out.writeBoolean(b);
+                }
+            }
+            out.writeInt(idata.argCount);
+            out.writeInt(idata.encodedSourceStart);
+            out.writeInt(idata.encodedSourceEnd);
+            out.writeInt(idata.rawSourceStart);
+            out.writeInt(idata.rawSourceEnd);
+            out.writeInt(idata.rawSourceLineno);
+
+            writeStrings(idata.itsRegExpSources);
+
+            if(idata.literalIds == null){
+                out.writeInt(NULL);
+            }else{
+                out.writeInt(idata.literalIds.length);
+                for(Object literal : idata.literalIds){
+                    if(literal instanceof int[]){
+                        out.writeByte(LITERAL_SKIP_INDEXES);
+                        writeInts((int[])literal);
+                    }else{
+                        Object[] ids = (Object[])literal;
+                        out.writeByte(LITERAL_OBJECT_IDS);
+                        out.writeInt(ids.length);
+                        for(Object id : ids){
+                            if(id instanceof Integer){
+                                out.writeByte(ID_INDEX);
+                                out.writeInt((Integer)id);
+                            }else{
+                                out.writeByte(ID_STRING);
+                                writeString((String)id);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if(idata.longJumps == null){
+                out.writeInt(NULL);
+            }else{
+                int[] keys = idata.longJumps.getKeys();
+                out.writeInt(keys.length);
+                for(int key : keys){
+                    out.writeInt(key);
+                    out.writeInt(idata.longJumps.getExistingInt(key));
+                }
+            }
+
+            int nested = idata.getFunctionCount();
+            out.writeInt(nested);
+            for(int i = 0; i != nested; i++){
+                writeData(idata.itsNestedFunctions[i]);
+            }
+        }
+
+        void writeInts(int[] array) throws IOException{
+            if(array == null){
+                out.writeInt(NULL);
+                return;
+            }
+            out.writeInt(array.length);
+            for(int i : array){
+                out.writeInt(i);
+            }
+        }
+
+        void writeStrings(String[] array) throws IOException{
+            if(array == null){
+                out.writeInt(NULL);
+                return;
+            }
+            out.writeInt(array.length);
+            for(String s : array){
+                writeString(s);
+            }
+        }
+
+        void writeString(String s) throws IOException{
+            if(s == null){
+                out.writeInt(NULL);
+                return;
+            }
+            Integer id = strings.get(s);
+            if(id != null){
+                out.writeInt(id);
+                return;
+            }
+            strings.put(s, strings.size());
+            out.writeInt(NEW_STRING);
+            writeLongString(s);
+        }
+
+        // Not pooled, and not limited to 64k like writeUTF. Written as UTF-16 since
+        // the encoded source and string literals may contain unpaired surrogates.
+        void writeLongString(String s) throws IOException{
+            if(s == null){
+                out.writeInt(NULL);
+                return;
+            }
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+    }
+
+    private static final class SnapshotReader{
+        final Context cx;
+        final DataInputStream in;
+        final ArrayList<String> strings = new ArrayList<>();
+        String sourceFile;
+        String encodedSource;
+        String rawSource;
+
+        SnapshotReader(Context cx, DataInputStream in){
+            this.cx = cx;
+            this.in = in;
+        }
+
+        InterpreterData readData(InterpreterData parent) throws IOException{
+            String name = readString();
+            int functionType = in.readInt();
+            int languageVersion = in.readInt();
+            boolean needsActivation = in.readBoolean();
+            boolean isStrict = in.readBoolean();
+
+            InterpreterData idata;
+            if(parent == null){
+                idata = new InterpreterData(languageVersion, sourceFile, encodedSource, isStrict);
+            }else{
+                idata = new InterpreterData(parent);
+                idata.languageVersion = languageVersion;
+                idata.isStrict = isStrict;
+            }
+            idata.itsName = name;
+            idata.itsFunctionType = functionType;
+            idata.itsNeedsActivation = needsActivation;
+            idata.topLevel = in.readBoolean();
+            idata.isES6Generator = in.readBoolean();
+            idata.evalScriptFlag = in.readBoolean();
+            idata.declaredAsVar = in.readBoolean();
+            idata.declaredAsFunctionExpression = in.readBoolean();
+
+            idata.itsICode = new byte[readLength()];
+            in.readFully(idata.itsICode);
+            idata.itsStringTable = readStrings();
+            int doubles = in.readInt();
+            if(doubles != NULL){
+                idata.itsDoubleTable = new double[checkLength(doubles)];
+                for(int i = 0; i != doubles; i++){
+                    idata.itsDoubleTable[i] = in.readDouble();
+                }
+            }else{
+                idata.itsDoubleTable = null;
+            }
+            idata.itsExceptionTable = readInts();
+
+            idata.itsPropertyCacheCount = in.readInt();
+            idata.itsMaxVars = in.readInt();
+            idata.itsMaxLocals = in.readInt();
+            idata.itsMaxStack = in.readInt();
+            idata.itsMaxFrameArray = in.readInt();
+            idata.itsMaxCalleeArgs = in.readInt();
+            idata.firstLinePC = in.readInt();
+
+            idata.argNames = readStrings();
+            int consts = in.readInt();
+            if(consts != NULL){
+                idata.argIsConst = new boolean[checkLength(consts)];
+                for(int i = 0; i != consts; i++){
+                    idata.argIsConst[i] = in.readBoolean();
+                }
+            }
+            idata.argCount = in.readInt();
+            idata.encodedSourceStart = in.readInt();
+            idata.encodedSourceEnd = in.readInt();
+            idata.rawSource = rawSource;
+            idata.rawSourceStart = in.readInt();
+            idata.rawSourceEnd = in.readInt();
+            idata.rawSourceLineno = in.readInt();
+
+            String[] regexps = readStrings();
+            if(regexps != null){
+                RegExpProxy rep = ScriptRuntime.checkRegExpProxy(cx);
+                Object[] literals = new Object[regexps.length / 2];
+                for(int i = 0; i != literals.length; i++){
+                    literals[i] = rep.compileRegExp(cx, regexps[i * 2], regexps[i * 2 + 1]);
+                }
+                idata.itsRegExpLiterals = literals;
+                idata.itsRegExpSources = regexps;
+            }
+
+            int literalCount = in.readInt();
+            if(literalCount != NULL){
+                Object[] literals = new Object[checkLength(literalCount)];
+                for(int i = 0; i != literalCount; i++){
+                    byte kind = in.readByte();
+                    if(kind == LITERAL_SKIP_INDEXES){
+                        literals[i] = readInts();
+                    }else if(kind == LITERAL_OBJECT_IDS){
+                        Object[] ids = new Object[readLength()];
+                        for(int j = 0; j != ids.length; j++){
+                            byte type = in.readByte();
+                            if(type == ID_INDEX){
+                                ids[j] = in.readInt();
+                            }else if(type == ID_STRING){
+                                ids[j] = readString();
+                            }else{
+                                throw new IOException("Corrupt interpreter snapshot");
+                            }
+                        }
+                        literals[i] = ids;
+                    }else{
+                        throw new IOException("Corrupt interpreter snapshot");
+                    }
+                }
+                idata.literalIds = literals;
+            }
+
+            int jumps = in.readInt();
+            if(jumps != NULL){
+                idata.longJumps = new UintMap(checkLength(jumps));
+                for(int i = 0; i != jumps; i++){
+                    int key = in.readInt();
+                    idata.longJumps.put(key, in.readInt());
+                }
+            }
+
+            int nested = in.readInt();
+            if(nested != 0){
+                idata.itsNestedFunctions = new InterpreterData[checkLength(nested)];
+                for(int i = 0; i != nested; i++){
+                    idata.itsNestedFunctions[i] = readData(idata);
+                }
+            }
+            return idata;
+        }
+
+        int readLength() throws IOException{
+            return checkLength(in.readInt());
+        }
+
+        int checkLength(int length) throws IOException{
+            if(length < 0){
+                throw new IOException("Corrupt interpreter snapshot");
+            }
+            return length;
+        }
+
+        int[] readInts() throws IOException{
+            int length = in.readInt();
+            if(length == NULL){
+                return null;
+            }
+            int[] array = new int[checkLength(length)];
+            for(int i = 0; i != length; i++){
+                array[i] = in.readInt();
+            }
+            return array;
+        }
+
+        String[] readStrings() throws IOException{
+            int length = in.readInt();
+            if(length == NULL){
+                return null;
+            }
+            String[] array = new String[checkLength(length)];
+            for(int i = 0; i != length; i++){
+                array[i] = readString();
+            }
+            return array;
+        }
+
+        String readString() throws IOException{
+            int id = in.readInt();
+            if(id == NULL){
+                return null;
+            }
+            if(id == NEW_STRING){
+                String s = readLongString();
+                strings.add(s);
+                return s;
+            }
+            if(id < 0 || id >= strings.size()){
+                throw new IOException("Corrupt interpreter snapshot");
+            }
+            return strings.get(id);
+        }
+
+        String readLongString() throws IOException{
+            int length = in.readInt();
+            if(length == NULL){
+                return null;
+            }
+            char[] chars = new char[checkLength(length)];
+            for(int i = 0; i != length; i++){
+                chars[i] = in.readChar();
+            }
+            return new String(chars);
+        }
+    }
+}
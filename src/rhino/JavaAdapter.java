@@ -307,11 +307,16 @@ public final class JavaAdapter implements IdFunctionCall{
         sig = new JavaAdapterSignature(superClass, interfaces, names);
         Class<?> adapterClass = generated.get(sig);
         if(adapterClass == null){
-            String adapterName = "adapter" + cache.newClassSerialNumber();
-            byte[] code = createAdapterCode(names, adapterName,
-            superClass, interfaces, null);
+            Context cx = Context.getContext();
+            if(cache.isCachingEnabled() && cx.getSecurityController() == null){
+                adapterClass = cx.getFactory().getAdapterClassCache().getAdapterClass(cx, sig);
+            }else{
+                String adapterName = "adapter" + cache.newClassSerialNumber();
+                byte[] code = createAdapterCode(names, adapterName,
+                superClass, interfaces, null);
 
-            adapterClass = loadAdapterClass(adapterName, code);
+                adapterClass = loadAdapterClass(adapterName, code);
+            }
             if(cache.isCachingEnabled()){
                 generated.put(sig, adapterClass);
             }
@@ -1095,7 +1100,7 @@ public final class JavaAdapter implements IdFunctionCall{
         return firstLocal;
     }
 
-    private static StringBuilder appendTypeString(StringBuilder sb, Class<?> type){
+    static StringBuilder appendTypeString(StringBuilder sb, Class<?> type){
         while(type.isArray()){
             sb.append('[');
             type = type.getComponentType();
@@ -17,6 +17,15 @@ class JavaMembers{
     }
 
     JavaMembers(Scriptable scope, Class<?> cl, boolean includeProtected){
+        this(null, scope, cl, includeProtected);
+    }
+
+    /**
+     * @param cache the cache to take generated member invokers from, or null
+     * to always use reflection
+     */
+    JavaMembers(ClassCache cache, Scriptable scope, Class<?> cl, boolean includeProtected){
+        this.cache = cache;
         try{
             Context cx = ContextFactory.getGlobal().enterContext();
             ClassShutter shutter = cx.getClassShutter();
@@ -429,7 +438,7 @@ class JavaMembers{
                 Object value = entry.getValue();
                 if(value instanceof Method){
                     methodBoxes = new MemberBox[1];
-                    methodBoxes[0] = new MemberBox((Method)value);
+                    methodBoxes[0] = box((Method)value);
                 }else{
                     ObjArray overloadedMethods = (ObjArray)value;
                     int N = overloadedMethods.size();
@@ -437,7 +446,7 @@ class JavaMembers{
                     methodBoxes = new MemberBox[N];
                     for(int i = 0; i != N; ++i){
                         Method method = (Method)overloadedMethods.get(i);
-                        methodBoxes[i] = new MemberBox(method);
+                        methodBoxes[i] = box(method);
                     }
                 }
                 NativeJavaMethod fun = new NativeJavaMethod(methodBoxes);
@@ -596,10 +605,17 @@ class JavaMembers{
         MemberBox[] ctorMembers = new MemberBox[constructors.length];
         for(int i = 0; i != constructors.length; ++i){
             ctorMembers[i] = new MemberBox(constructors[i]);
+            ctorMembers[i].cache = cache;
         }
         ctors = new NativeJavaMethod(ctorMembers, cl.getSimpleName());
     }
 
+    private MemberBox box(Method method){
+        MemberBox box = new MemberBox(method);
+        box.cache = cache;
+        return box;
+    }
+
     private Constructor<?>[] getAccessibleConstructors(boolean includePrivate){
         // The JVM currently doesn't allow changing access on java.lang.Class
         // constructors, so don't try
@@ -764,7 +780,7 @@ class JavaMembers{
                 return members;
             }
             try{
-                members = new JavaMembers(cache.getAssociatedScope(), cl,
+                members = new JavaMembers(cache, cache.getAssociatedScope(), cl,
                 includeProtected);
                 break;
             }catch(SecurityException e){
@@ -807,6 +823,7 @@ class JavaMembers{
     }
 
     private final Class<?> cl;
+    private final ClassCache cache;
     private final Map<String, Object> members;
     private Map<String, FieldAndMethods> fieldAndMethods;
     private final Map<String, Object> staticMembers;
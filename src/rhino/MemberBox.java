@@ -11,10 +11,17 @@ import java.lang.reflect.*;
  */
 
 final class MemberBox{
+    // calls through reflection before asking the ClassCache for an invoker
+    static final int INVOKER_THRESHOLD = 8;
+
     private transient Member memberObject;
     transient Class<?>[] argTypes;
     transient Object delegateTo;
     transient boolean vararg;
+    // source of generated invokers, null if they should not be used
+    transient ClassCache cache;
+    private transient MemberInvoker invoker;
+    private transient int invocations;
 
 
     MemberBox(Method method){
@@ -98,7 +105,29 @@ final class MemberBox{
         return memberObject.toString();
     }
 
+    /**
+     * Return the generated invoker once the member has been used often enough,
+     * so members called only once or twice do not pay for class generation.
+     */
+    private MemberInvoker invoker(){
+        MemberInvoker inv = invoker;
+        if(inv == null && cache != null && ++invocations == INVOKER_THRESHOLD){
+            inv = invoker = cache.getInvoker(memberObject);
+        }
+        return inv;
+    }
+
     Object invoke(Object target, Object[] args){
+        MemberInvoker inv = invoker();
+        if(inv != null){
+            try{
+                return inv.invoke(target, args);
+            }catch(ContinuationPending e){
+                throw e;
+            }catch(Throwable e){
+                throw Context.throwAsScriptRuntimeEx(e);
+            }
+        }
         Method method = method();
         try{
             try{
@@ -131,6 +160,14 @@ final class MemberBox{
     }
 
     Object newInstance(Object[] args){
+        MemberInvoker inv = invoker();
+        if(inv != null){
+            try{
+                return inv.newInstance(args);
+            }catch(Throwable e){
+                throw Context.throwAsScriptRuntimeEx(e);
+            }
+        }
         Constructor<?> ctor = ctor();
         try{
             try{
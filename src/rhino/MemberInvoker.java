@@ -0,0 +1,232 @@
+package rhino;
+
+import rhino.classfile.*;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+
+/**
+ * Direct accessor for a single Java method or constructor.
+ * <p>
+ * Subclasses are generated by {@link ClassCache} when invoker optimization is enabled.
+ * They call the member with plain invoke instructions, which avoids the access
+ * and argument checks of reflection and lets the JIT inline the target. Arguments must
+ * already be converted to the parameter types, as done by {@link NativeJavaMethod}.
+ * <p>
+ * This class is public only so that generated classes in other class loaders can
+ * extend it, it is not meant to be used outside of Rhino.
+ * @see ClassCache#setInvokerOptimizationEnabled(boolean)
+ */
+public abstract class MemberInvoker{
+    private static final String SUPER_CLASS = "rhino/MemberInvoker";
+
+    // Class.getModule and Module.isExported(String), null before Java 9
+    private static final Method getModule, isExported;
+
+    static{
+        Method module = null, exported = null;
+        try{
+            module = Class.class.getMethod("getModule");
+            exported = module.getReturnType().getMethod("isExported", String.class);
+        }catch(NoSuchMethodException | SecurityException e){
+            module = null;
+        }
+        getModule = module;
+        isExported = exported;
+    }
+
+    protected MemberInvoker(){
+    }
+
+    /** Call the method with the target as this. The target is ignored for static methods. */
+    public Object invoke(Object target, Object[] args){
+        throw new UnsupportedOperationException();
+    }
+
+    /** Call the constructor. */
+    public Object newInstance(Object[] args){
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Tell whether code outside of the declaring class' package and class loader
+     * can link against the member.
+     */
+    static boolean canGenerate(Member member){
+        Class<?> declaring = member.getDeclaringClass();
+        int mods = member.getModifiers();
+        if(!Modifier.isPublic(mods) || !Modifier.isPublic(declaring.getModifiers())){
+            return false;
+        }
+        Class<?>[] types;
+        if(member instanceof Method){
+            Method method = (Method)member;
+            if(Modifier.isStatic(mods) && declaring.isInterface()){
+                // needs an interface method reference for invokestatic
+                return false;
+            }
+            if(isCallerSensitive(method)){
+                // would see the invoker rather than Rhino as its caller
+                return false;
+            }
+            types = method.getParameterTypes();
+        }else if(member instanceof Constructor){
+            if(Modifier.isAbstract(declaring.getModifiers())){
+                return false;
+            }
+            types = ((Constructor<?>)member).getParameterTypes();
+        }else{
+            return false;
+        }
+        if(!isExported(declaring)){
+            return false;
+        }
+        // parameters are cast to their types, so they must be accessible too
+        for(Class<?> type : types){
+            while(type.isArray()){
+                type = type.getComponentType();
+            }
+            if(!type.isPrimitive() && (!Modifier.isPublic(type.getModifiers()) || !isExported(type))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell whether the method looks up its caller, like Class.forName does. Such
+     * methods are marked with the JDK's internal CallerSensitive annotation.
+     */
+    private static boolean isCallerSensitive(Method method){
+        try{
+            for(Annotation annotation : method.getDeclaredAnnotations()){
+                if(annotation.annotationType().getSimpleName().equals("CallerSensitive")){
+                    return true;
+                }
+            }
+        }catch(RuntimeException | LinkageError e){
+            return true;
+        }
+        return false;
+    }
+
+    /** Return the bytecode of an invoker class for the member. */
+    static byte[] generate(String className, Member member){
+        ClassFileWriter cfw = new ClassFileWriter(className, SUPER_CLASS, "<invoker>");
+        cfw.setFlags((short)(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL));
+
+        cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.addALoad(0);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS, "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)1);
+
+        String owner = member.getDeclaringClass().getName();
+        boolean isStatic = Modifier.isStatic(member.getModifiers());
+        if(member instanceof Method){
+            Method method = (Method)member;
+            Class<?>[] argTypes = method.getParameterTypes();
+            cfw.startMethod("invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;",
+            ClassFileWriter.ACC_PUBLIC);
+            if(!isStatic){
+                cfw.addALoad(1);
+                cfw.add(ByteCode.CHECKCAST, owner);
+            }
+            pushArgs(cfw, 2, argTypes);
+            StringBuilder sig = new StringBuilder();
+            JavaAdapter.appendMethodSignature(argTypes, method.getReturnType(), sig);
+            int op = isStatic ? ByteCode.INVOKESTATIC
+            : method.getDeclaringClass().isInterface() ? ByteCode.INVOKEINTERFACE
+            : ByteCode.INVOKEVIRTUAL;
+            cfw.addInvoke(op, owner, method.getName(), sig.toString());
+            box(cfw, method.getReturnType());
+            cfw.add(ByteCode.ARETURN);
+            cfw.stopMethod((short)3);
+        }else{
+            Class<?>[] argTypes = ((Constructor<?>)member).getParameterTypes();
+            cfw.startMethod("newInstance", "([Ljava/lang/Object;)Ljava/lang/Object;",
+            ClassFileWriter.ACC_PUBLIC);
+            cfw.add(ByteCode.NEW, owner);
+            cfw.add(ByteCode.DUP);
+            pushArgs(cfw, 1, argTypes);
+            StringBuilder sig = new StringBuilder();
+            JavaAdapter.appendMethodSignature(argTypes, Void.TYPE, sig);
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, owner, "<init>", sig.toString());
+            cfw.add(ByteCode.ARETURN);
+            cfw.stopMethod((short)2);
+        }
+        return cfw.toByteArray();
+    }
+
+    /** Push the elements of the argument array converted to the parameter types. */
+    private static void pushArgs(ClassFileWriter cfw, int argsLocal, Class<?>[] argTypes){
+        for(int i = 0; i < argTypes.length; i++){
+            cfw.addALoad(argsLocal);
+            cfw.addPush(i);
+            cfw.add(ByteCode.AALOAD);
+            unbox(cfw, argTypes[i]);
+        }
+    }
+
+    /** Convert the boxed value on the stack to the type. */
+    private static void unbox(ClassFileWriter cfw, Class<?> type){
+        if(!type.isPrimitive()){
+            if(type != ScriptRuntime.ObjectClass){
+                cfw.add(ByteCode.CHECKCAST, type.getName());
+            }
+        }else if(type == Boolean.TYPE){
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Boolean");
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+        }else if(type == Character.TYPE){
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Character");
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Character", "charValue", "()C");
+        }else{
+            String name = type.getName();
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Number");
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number", name + "Value",
+            "()" + primitiveDescriptor(type));
+        }
+    }
+
+    /** Box the value of the type on the stack, or push null for void. */
+    private static void box(ClassFileWriter cfw, Class<?> type){
+        if(!type.isPrimitive()){
+            return;
+        }
+        if(type == Void.TYPE){
+            cfw.add(ByteCode.ACONST_NULL);
+            return;
+        }
+        String wrapper;
+        if(type == Integer.TYPE){
+            wrapper = "java/lang/Integer";
+        }else if(type == Character.TYPE){
+            wrapper = "java/lang/Character";
+        }else{
+            String name = type.getName();
+            wrapper = "java/lang/" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+        cfw.addInvoke(ByteCode.INVOKESTATIC, wrapper, "valueOf",
+        "(" + primitiveDescriptor(type) + ")L" + wrapper + ";");
+    }
+
+    private static String primitiveDescriptor(Class<?> type){
+        return JavaAdapter.appendTypeString(new StringBuilder(), type).toString();
+    }
+
+    /** Tell whether the package of the class is exported to all modules. */
+    private static boolean isExported(Class<?> cl){
+        if(getModule == null){
+            // Java 8, no modules
+            return true;
+        }
+        String name = cl.getName();
+        int dot = name.lastIndexOf('.');
+        try{
+            Object module = getModule.invoke(cl);
+            return (Boolean)isExported.invoke(module, dot < 0 ? "" : name.substring(0, dot));
+        }catch(ReflectiveOperationException | RuntimeException e){
+            return false;
+        }
+    }
+}
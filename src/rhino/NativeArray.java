@@ -42,7 +42,9 @@ public class NativeArray extends IdScriptableObject implements List{
 
     public NativeArray(long lengthArg){
         denseOnly = lengthArg <= maximumInitialCapacity;
-        if(denseOnly){
+        if(denseOnly && lengthArg == 0){
+            denseInts = EMPTY_INTS;
+        }else if(denseOnly){
             int intLength = (int)lengthArg;
             if(intLength < DEFAULT_INITIAL_CAPACITY)
                 intLength = DEFAULT_INITIAL_CAPACITY;
@@ -54,8 +56,27 @@ public class NativeArray extends IdScriptableObject implements List{
 
     public NativeArray(Object[] array){
         denseOnly = true;
-        dense = array;
         length = array.length;
+        // pick the narrowest storage that holds all elements
+        boolean ints = true;
+        for(Object value : array){
+            if(!(value instanceof Double)){
+                dense = array;
+                return;
+            }
+            ints &= isInt((Double)value);
+        }
+        if(ints){
+            denseInts = array.length == 0 ? EMPTY_INTS : new int[array.length];
+            for(int i = 0; i < array.length; i++){
+                denseInts[i] = (int)(double)(Double)array[i];
+            }
+        }else{
+            denseDoubles = new double[array.length];
+            for(int i = 0; i < array.length; i++){
+                denseDoubles[i] = (Double)array[i];
+            }
+        }
     }
 
     @Override
@@ -462,6 +483,8 @@ public class NativeArray extends IdScriptableObject implements List{
             return super.get(index, start);
         if(dense != null && 0 <= index && index < dense.length)
             return dense[index];
+        if(isNumeric() && 0 <= index && index < length)
+            return getDense(index);
         return super.get(index, start);
     }
 
@@ -471,6 +494,8 @@ public class NativeArray extends IdScriptableObject implements List{
             return super.has(index, start);
         if(dense != null && 0 <= index && index < dense.length)
             return dense[index] != NOT_FOUND;
+        if(isNumeric() && 0 <= index && index < length)
+            return true;
         return super.has(index, start);
     }
 
@@ -517,6 +542,7 @@ public class NativeArray extends IdScriptableObject implements List{
             // If the object is sealed, super will throw exception
             long index = toArrayIndex(id);
             if(index >= length){
+                toObjectElements();
                 length = index + 1;
                 denseOnly = false;
             }
@@ -524,23 +550,112 @@ public class NativeArray extends IdScriptableObject implements List{
     }
 
     private boolean ensureCapacity(int capacity){
-        if(capacity > dense.length){
+        int current = capacity();
+        if(capacity > current){
             if(capacity > MAX_PRE_GROW_SIZE){
+                toObjectElements();
                 denseOnly = false;
                 return false;
             }
-            capacity = Math.max(capacity, (int)(dense.length * GROW_FACTOR));
-            Object[] newDense = new Object[capacity];
-            System.arraycopy(dense, 0, newDense, 0, dense.length);
-            Arrays.fill(newDense, dense.length, newDense.length,
-            Scriptable.NOT_FOUND);
-            dense = newDense;
+            capacity = Math.max(capacity, Math.max((int)(current * GROW_FACTOR), DEFAULT_INITIAL_CAPACITY));
+            if(denseInts != null){
+                denseInts = Arrays.copyOf(denseInts, capacity);
+            }else if(denseDoubles != null){
+                denseDoubles = Arrays.copyOf(denseDoubles, capacity);
+            }else{
+                Object[] newDense = new Object[capacity];
+                System.arraycopy(dense, 0, newDense, 0, dense.length);
+                Arrays.fill(newDense, dense.length, newDense.length,
+                Scriptable.NOT_FOUND);
+                dense = newDense;
+            }
         }
         return true;
     }
 
+    /** Return the size of the dense storage of any kind. */
+    private int capacity(){
+        return dense != null ? dense.length
+        : denseInts != null ? denseInts.length
+        : denseDoubles != null ? denseDoubles.length : 0;
+    }
+
+    /** Tell whether the elements are kept in int or double storage. */
+    private boolean isNumeric(){
+        return denseInts != null || denseDoubles != null;
+    }
+
+    /** Return the element of the dense storage of any kind, or NOT_FOUND for holes. */
+    private Object getDense(int index){
+        if(dense != null){
+            return dense[index];
+        }
+        if(index >= length){
+            return NOT_FOUND;
+        }
+        return denseInts != null ? ScriptRuntime.wrapNumber(denseInts[index]) : ScriptRuntime.wrapNumber(denseDoubles[index]);
+    }
+
+    /**
+     * Store the element in the numeric storage, switching from ints to doubles if needed.
+     * Return false if the value is not a number or would leave a hole.
+     */
+    private boolean putNumeric(int index, Object value){
+        if(index > length || !(value instanceof Double) || !ensureCapacity(index + 1)){
+            return false;
+        }
+        double d = (Double)value;
+        if(denseInts != null && isInt(d)){
+            denseInts[index] = (int)d;
+        }else{
+            toDoubleElements();
+            denseDoubles[index] = d;
+        }
+        if(index == length){
+            length++;
+        }
+        return true;
+    }
+
+    private void toDoubleElements(){
+        if(denseInts != null){
+            denseDoubles = new double[denseInts.length];
+            for(int i = 0; i < length; i++){
+                denseDoubles[i] = denseInts[i];
+            }
+            denseInts = null;
+        }
+    }
+
+    /** Move numeric elements to the generic storage, which can hold any value and holes. */
+    private void toObjectElements(){
+        if(!isNumeric()){
+            return;
+        }
+        Object[] values = new Object[Math.max(capacity(), DEFAULT_INITIAL_CAPACITY)];
+        int len = (int)length;
+        for(int i = 0; i < len; i++){
+            values[i] = getDense(i);
+        }
+        Arrays.fill(values, len, values.length, NOT_FOUND);
+        dense = values;
+        denseInts = null;
+        denseDoubles = null;
+    }
+
+    private static boolean isInt(double d){
+        // -0 is not an int
+        return d == (int)d && (d != 0 || 1 / d > 0);
+    }
+
     @Override
     public void put(int index, Scriptable start, Object value){
+        if(start == this && isNumeric() && !isSealed() && 0 <= index){
+            if((index < length || isExtensible()) && putNumeric(index, value)){
+                return;
+            }
+            toObjectElements();
+        }
         if(start == this && !isSealed() && dense != null && 0 <= index &&
         (denseOnly || !isGetterOrSetter(null, index, true))){
             if(!isExtensible() && this.length <= index){
@@ -571,6 +686,9 @@ public class NativeArray extends IdScriptableObject implements List{
 
     @Override
     public void delete(int index){
+        if(isNumeric() && !isSealed() && 0 <= index && index < length){
+            toObjectElements();
+        }
         if(dense != null && 0 <= index && index < dense.length &&
         !isSealed() && (denseOnly || !isGetterOrSetter(null, index, true))){
             dense[index] = NOT_FOUND;
@@ -582,6 +700,15 @@ public class NativeArray extends IdScriptableObject implements List{
     @Override
     public Object[] getIds(boolean nonEnumerable, boolean getSymbols){
         Object[] superIds = super.getIds(nonEnumerable, getSymbols);
+        if(isNumeric()){
+            int N = (int)length;
+            Object[] ids = new Object[N + superIds.length];
+            for(int i = 0; i != N; ++i){
+                ids[i] = i;
+            }
+            System.arraycopy(superIds, 0, ids, N, superIds.length);
+            return ids;
+        }
         if(dense == null){
             return superIds;
         }
@@ -654,16 +781,18 @@ public class NativeArray extends IdScriptableObject implements List{
         && dense[index] != NOT_FOUND){
             return EMPTY;
         }
+        if(isNumeric() && index >= 0 && index < length){
+            return EMPTY;
+        }
         return super.getAttributes(index);
     }
 
     @Override
     protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id){
-        if(dense != null){
+        if(dense != null || isNumeric()){
             int index = toDenseIndex(id);
-            if(0 <= index && index < dense.length && dense[index] != NOT_FOUND){
-                Object value = dense[index];
-                return defaultIndexPropertyDescriptor(value);
+            if(0 <= index && index < capacity() && getDense(index) != NOT_FOUND){
+                return defaultIndexPropertyDescriptor(getDense(index));
             }
         }
         return super.getOwnPropertyDescriptor(cx, id);
@@ -673,6 +802,7 @@ public class NativeArray extends IdScriptableObject implements List{
     protected void defineOwnProperty(Context cx, Object id,
                                      ScriptableObject desc,
                                      boolean checkValid){
+        toObjectElements();
         if(dense != null){
             Object[] values = dense;
             dense = null;
@@ -813,6 +943,16 @@ public class NativeArray extends IdScriptableObject implements List{
         return length;
     }
 
+    /** Return the storage of an array of int numbers, or null. Only the elements below the length are used. */
+    int[] getIntElements(){
+        return denseInts;
+    }
+
+    /** Return the storage of an array of double numbers, or null. Only the elements below the length are used. */
+    double[] getDoubleElements(){
+        return denseDoubles;
+    }
+
     /** @deprecated Use {@link #getLength()} instead. */
     @Deprecated
     public long jsGet_length(){
@@ -831,6 +971,9 @@ public class NativeArray extends IdScriptableObject implements List{
     void setDenseOnly(boolean denseOnly){
         if(denseOnly && !this.denseOnly)
             throw new IllegalArgumentException();
+        if(!denseOnly){
+            toObjectElements();
+        }
         this.denseOnly = denseOnly;
     }
 
@@ -852,6 +995,14 @@ public class NativeArray extends IdScriptableObject implements List{
             throw ScriptRuntime.constructError("RangeError", msg);
         }
 
+        if(isNumeric()){
+            if(longVal <= length){
+                length = longVal;
+                return;
+            }
+            // growing leaves holes
+            toObjectElements();
+        }
         if(denseOnly){
             if(longVal < length){
                 // downcast okay because denseOnly
@@ -959,6 +1110,12 @@ public class NativeArray extends IdScriptableObject implements List{
 
     // same as getElem, but without converting NOT_FOUND to undefined
     private static Object getRawElem(Scriptable target, long index){
+        if(target instanceof NativeArray){
+            NativeArray na = (NativeArray)target;
+            if(na.isNumeric() && 0 <= index && index < na.length){
+                return na.getDense((int)index);
+            }
+        }
         if(index > Integer.MAX_VALUE){
             return ScriptableObject.getProperty(target, Long.toString(index));
         }
@@ -1115,8 +1272,8 @@ public class NativeArray extends IdScriptableObject implements List{
                     if(i != 0){
                         sb.append(separator);
                     }
-                    if(i < na.dense.length){
-                        Object temp = na.dense[i];
+                    if(i < na.capacity()){
+                        Object temp = na.getDense(i);
                         if(temp != null && temp != Undefined.instance &&
                         temp != Scriptable.NOT_FOUND){
                             sb.append(ScriptRuntime.toString(temp));
@@ -1162,7 +1319,21 @@ public class NativeArray extends IdScriptableObject implements List{
 
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
-            if(na.denseOnly){
+            if(na.denseInts != null){
+                for(int i = 0, j = ((int)na.length) - 1; i < j; i++, j--){
+                    int temp = na.denseInts[i];
+                    na.denseInts[i] = na.denseInts[j];
+                    na.denseInts[j] = temp;
+                }
+                return o;
+            }else if(na.denseDoubles != null){
+                for(int i = 0, j = ((int)na.length) - 1; i < j; i++, j--){
+                    double temp = na.denseDoubles[i];
+                    na.denseDoubles[i] = na.denseDoubles[j];
+                    na.denseDoubles[j] = temp;
+                }
+                return o;
+            }else if(na.denseOnly){
                 for(int i = 0, j = ((int)na.length) - 1; i < j; i++, j--){
                     Object temp = na.dense[i];
                     na.dense[i] = na.dense[j];
@@ -1230,9 +1401,14 @@ public class NativeArray extends IdScriptableObject implements List{
             working[i] = getRawElem(o, i);
         }
 
-        Sorting.get().hybridSort(working, comparator);
+        if(comparator != DEFAULT_COMPARATOR || !sortByStrings(working)){
+            Sorting.get().hybridSort(working, comparator);
+        }
 
         // copy the working array back into thisObj
+        if(o instanceof NativeArray && ((NativeArray)o).setNumbers(working)){
+            return o;
+        }
         for(int i = 0; i < length; ++i){
             setRawElem(cx, o, i, working[i]);
         }
@@ -1240,13 +1416,91 @@ public class NativeArray extends IdScriptableObject implements List{
         return o;
     }
 
+    /**
+     * Sort numbers and strings in the order of the default comparator, converting
+     * each to a string once instead of in every comparison. Undefined and holes
+     * go last. Return false if there are other values, whose conversion could
+     * call scripts.
+     */
+    private static boolean sortByStrings(Object[] working){
+        int count = 0, undefinedCount = 0;
+        boolean strings = true;
+        for(Object value : working){
+            if(value == Undefined.instance){
+                undefinedCount++;
+            }else if(value == NOT_FOUND){
+                continue;
+            }else if(value instanceof Number){
+                strings = false;
+                count++;
+            }else if(value instanceof CharSequence){
+                count++;
+            }else{
+                return false;
+            }
+        }
+
+        if(strings){
+            String[] keys = new String[count];
+            for(int i = 0, j = 0; j < count; i++){
+                if(working[i] instanceof CharSequence){
+                    keys[j++] = working[i].toString();
+                }
+            }
+            Sorting.get().stableSort(keys, Comparator.naturalOrder());
+            System.arraycopy(keys, 0, working, 0, count);
+        }else{
+            // 0 and -0 have the same key, so equal keys keep their order
+            KeyedValue[] keyed = new KeyedValue[count];
+            for(int i = 0, j = 0; j < count; i++){
+                Object value = working[i];
+                if(value instanceof Number || value instanceof CharSequence){
+                    keyed[j++] = new KeyedValue(ScriptRuntime.toString(value), value);
+                }
+            }
+            Sorting.get().stableSort(keyed, KeyedValue.ORDER);
+            for(int i = 0; i < count; i++){
+                working[i] = keyed[i].value;
+            }
+        }
+        Arrays.fill(working, count, count + undefinedCount, Undefined.instance);
+        Arrays.fill(working, count + undefinedCount, working.length, NOT_FOUND);
+        return true;
+    }
+
+    private static final class KeyedValue{
+        static final Comparator<KeyedValue> ORDER = (a, b) -> a.key.compareTo(b.key);
+
+        final String key;
+        final Object value;
+
+        KeyedValue(String key, Object value){
+            this.key = key;
+            this.value = value;
+        }
+    }
+
     private static Object js_push(Context cx, Scriptable scope, Scriptable thisObj,
                                   Object[] args){
         Scriptable o = ScriptRuntime.toObject(cx, scope, thisObj);
 
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
-            if(na.denseOnly &&
+            if(na.isNumeric() && na.isExtensible() && !na.isSealed()){
+                int i = 0;
+                while(i < args.length && na.putNumeric((int)na.length, args[i])){
+                    i++;
+                }
+                if(i == args.length){
+                    return ScriptRuntime.wrapNumber(na.length);
+                }
+                // push the rest as objects
+                na.toObjectElements();
+                Object[] rest = new Object[args.length - i];
+                System.arraycopy(args, i, rest, 0, rest.length);
+                args = rest;
+            }
+            if(na.denseOnly && !na.isNumeric() &&
             na.ensureCapacity((int)na.length + args.length)){
                 for(int i = 0; i < args.length; i++){
                     na.dense[(int)na.length++] = args[i];
@@ -1282,7 +1536,11 @@ public class NativeArray extends IdScriptableObject implements List{
         Object result;
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
-            if(na.denseOnly && na.length > 0){
+            if(na.isNumeric() && na.length > 0){
+                result = na.getDense((int)na.length - 1);
+                na.length--;
+                return result;
+            }else if(na.denseOnly && na.length > 0){
                 na.length--;
                 result = na.dense[(int)na.length];
                 na.dense[(int)na.length] = NOT_FOUND;
@@ -1314,7 +1572,13 @@ public class NativeArray extends IdScriptableObject implements List{
 
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
-            if(na.denseOnly && na.length > 0){
+            if(na.isNumeric() && na.length > 0){
+                Object result = na.getDense(0);
+                na.length--;
+                Object elements = na.denseInts != null ? na.denseInts : na.denseDoubles;
+                System.arraycopy(elements, 1, elements, 0, (int)na.length);
+                return result;
+            }else if(na.denseOnly && na.length > 0){
                 na.length--;
                 Object result = na.dense[0];
                 System.arraycopy(na.dense, 1, na.dense, 0, (int)na.length);
@@ -1356,6 +1620,7 @@ public class NativeArray extends IdScriptableObject implements List{
 
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
+            na.toObjectElements();
             if(na.denseOnly &&
             na.ensureCapacity((int)na.length + args.length)){
                 System.arraycopy(na.dense, 0, na.dense, args.length,
@@ -1448,7 +1713,9 @@ public class NativeArray extends IdScriptableObject implements List{
                 if(denseMode){
                     int intLen = (int)(end - begin);
                     Object[] copy = new Object[intLen];
-                    System.arraycopy(na.dense, (int)begin, copy, 0, intLen);
+                    for(int i = 0; i < intLen; i++){
+                        copy[i] = na.getDense((int)begin + i);
+                    }
                     result = cx.newArray(scope, copy);
                 }else{
                     Scriptable resultArray = cx.newArray(scope, 0);
@@ -1474,6 +1741,16 @@ public class NativeArray extends IdScriptableObject implements List{
 
         /* Find the direction (up or down) to copy and make way for argv. */
         long delta = argc - count;
+        if(denseMode && na.isNumeric()){
+            if(argc == 0){
+                // only removes elements, the rest stays packed
+                Object elements = na.denseInts != null ? na.denseInts : na.denseDoubles;
+                System.arraycopy(elements, (int)end, elements, (int)begin, (int)(length - end));
+                na.length = length + delta;
+                return result;
+            }
+            na.toObjectElements();
+        }
         if(denseMode && length + delta < Integer.MAX_VALUE &&
         na.ensureCapacity((int)(length + delta))){
             System.arraycopy(na.dense, (int)end, na.dense,
@@ -1556,10 +1833,7 @@ public class NativeArray extends IdScriptableObject implements List{
             final NativeArray denseResult = (NativeArray)result;
             if(denseResult.denseOnly && (arg instanceof NativeArray)){
                 final NativeArray denseArg = (NativeArray)arg;
-                if(denseArg.denseOnly){
-                    // Now we can optimize
-                    denseResult.ensureCapacity((int)newlen);
-                    System.arraycopy(denseArg.dense, 0, denseResult.dense, (int)offset, (int)srclen);
+                if(denseArg.denseOnly && denseResult.copyDense(denseArg, (int)offset, (int)srclen)){
                     return newlen;
                 }
                 // We could also optimize here if we are copying to a dense target from a non-dense
@@ -1638,6 +1912,88 @@ public class NativeArray extends IdScriptableObject implements List{
         return result;
     }
 
+    /**
+     * Replace the first elements of the numeric storage with the numbers, which must
+     * fit the storage. Return false if they do not.
+     */
+    private boolean setNumbers(Object[] values){
+        if(!isNumeric() || values.length > length){
+            return false;
+        }
+        for(Object value : values){
+            if(!(value instanceof Double) || denseInts != null && !isInt((Double)value)){
+                return false;
+            }
+        }
+        for(int i = 0; i < values.length; i++){
+            if(denseInts != null){
+                denseInts[i] = (int)(double)(Double)values[i];
+            }else{
+                denseDoubles[i] = (Double)values[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the first count elements of a dense only array to this dense only array
+     * at the offset, keeping numeric storage when both arrays have it.
+     */
+    private boolean copyDense(NativeArray src, int offset, int count){
+        if(isNumeric() && (!src.isNumeric() || offset != length)){
+            toObjectElements();
+        }
+        if(!ensureCapacity(offset + count)){
+            return false;
+        }
+        if(src.denseInts != null && denseInts != null){
+            System.arraycopy(src.denseInts, 0, denseInts, offset, count);
+        }else if(src.denseDoubles != null && denseDoubles != null){
+            System.arraycopy(src.denseDoubles, 0, denseDoubles, offset, count);
+        }else if(isNumeric()){
+            toDoubleElements();
+            for(int i = 0; i < count; i++){
+                denseDoubles[offset + i] = src.denseInts != null ? src.denseInts[i] : src.denseDoubles[i];
+            }
+        }else if(src.dense != null){
+            System.arraycopy(src.dense, 0, dense, offset, count);
+        }else{
+            for(int i = 0; i < count; i++){
+                dense[offset + i] = src.getDense(i);
+            }
+        }
+        if(isNumeric()){
+            length = offset + count;
+        }
+        return true;
+    }
+
+    /**
+     * Find the number in the numeric storage, searching backwards if step is negative.
+     * NaN is only found if sameZero is set.
+     */
+    private long indexOfNumber(double d, int start, int step, boolean sameZero){
+        int len = (int)length;
+        if(d != d){
+            if(sameZero && denseDoubles != null){
+                for(int i = start; i >= 0 && i < len; i += step){
+                    if(denseDoubles[i] != denseDoubles[i]) return i;
+                }
+            }
+            return -1;
+        }
+        if(denseInts != null){
+            for(int i = start; i >= 0 && i < len; i += step){
+                if(denseInts[i] == d) return i;
+            }
+        }else{
+            for(int i = start; i >= 0 && i < len; i += step){
+                if(denseDoubles[i] == d) return i;
+            }
+        }
+        return -1;
+    }
+
     private static long toSliceIndex(double value, long length){
         long result;
         if(value < 0.0){
@@ -1684,6 +2040,11 @@ public class NativeArray extends IdScriptableObject implements List{
         }
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
+            if(na.isNumeric()){
+                long index = compareTo instanceof Number
+                ? na.indexOfNumber(((Number)compareTo).doubleValue(), (int)start, 1, false) : -1;
+                return index == -1 ? NEGATIVE_ONE : index;
+            }
             if(na.denseOnly){
                 Scriptable proto = na.getPrototype();
                 for(int i = (int)start; i < length; i++){
@@ -1738,6 +2099,11 @@ public class NativeArray extends IdScriptableObject implements List{
         }
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
+            if(na.isNumeric()){
+                long index = compareTo instanceof Number
+                ? na.indexOfNumber(((Number)compareTo).doubleValue(), (int)start, -1, false) : -1;
+                return index == -1 ? NEGATIVE_ONE : index;
+            }
             if(na.denseOnly){
                 Scriptable proto = na.getPrototype();
                 for(int i = (int)start; i >= 0; i--){
@@ -1786,6 +2152,10 @@ public class NativeArray extends IdScriptableObject implements List{
         }
         if(o instanceof NativeArray){
             NativeArray na = (NativeArray)o;
+            if(na.isNumeric() && len == na.length){
+                return compareTo instanceof Number
+                && na.indexOfNumber(((Number)compareTo).doubleValue(), (int)k, 1, true) != -1;
+            }
             if(na.denseOnly){
                 Scriptable proto = na.getPrototype();
                 for(int i = (int)k; i < len; i++){
@@ -1894,6 +2264,15 @@ public class NativeArray extends IdScriptableObject implements List{
         // and other non-default options then we won't get here.
         if((o instanceof NativeArray) && (count <= Integer.MAX_VALUE)){
             NativeArray na = (NativeArray)o;
+            if(na.isNumeric() && count > 0){
+                if(direction == -1){
+                    from -= count - 1;
+                    to -= count - 1;
+                }
+                Object elements = na.denseInts != null ? na.denseInts : na.denseDoubles;
+                System.arraycopy(elements, (int)from, elements, (int)to, (int)count);
+                return thisObj;
+            }
             if(na.denseOnly){
                 for(; count > 0; count--){
                     na.dense[(int)to] = na.dense[(int)from];
@@ -1959,8 +2338,8 @@ public class NativeArray extends IdScriptableObject implements List{
 
         Scriptable array = null;
         if(id == Id_filter || id == Id_map){
-            int resultLength = id == Id_map ? (int)length : 0;
-            array = cx.newArray(scope, resultLength);
+            // map fills the result in order, so it can keep numeric storage
+            array = cx.newArray(scope, 0);
         }
         long j = 0;
         for(long i = 0; i < length; i++){
@@ -1974,7 +2353,7 @@ public class NativeArray extends IdScriptableObject implements List{
                 }
             }
             innerArgs[0] = elem;
-            innerArgs[1] = i;
+            innerArgs[1] = ScriptRuntime.wrapNumber(i);
             innerArgs[2] = o;
             Object result = f.call(cx, parent, thisArg, innerArgs);
             switch(id){
@@ -2009,7 +2388,9 @@ public class NativeArray extends IdScriptableObject implements List{
             case Id_every:
                 return Boolean.TRUE;
             case Id_filter:
+                return array;
             case Id_map:
+                setLengthProperty(cx, array, length);
                 return array;
             case Id_some:
                 return Boolean.FALSE;
@@ -2048,7 +2429,7 @@ public class NativeArray extends IdScriptableObject implements List{
                 // no initial value passed, use first element found as inital value
                 value = elem;
             }else{
-                Object[] innerArgs = {value, elem, index, o};
+                Object[] innerArgs = {value, elem, ScriptRuntime.wrapNumber(index), o};
                 value = f.call(cx, parent, parent, innerArgs);
             }
         }
@@ -2625,7 +3006,18 @@ public class NativeArray extends IdScriptableObject implements List{
     private Object[] dense;
 
     /**
-     * True if all numeric properties are stored in <code>dense</code>.
+     * Storage for dense arrays of numbers, used instead of <code>dense</code>.
+     * At most one of the three is set. The numeric storage holds every element
+     * below the length and nothing above, an array with holes or other values
+     * moves to <code>dense</code> and never back.
+     */
+    private int[] denseInts;
+    private double[] denseDoubles;
+
+    private static final int[] EMPTY_INTS = new int[0];
+
+    /**
+     * True if all numeric properties are stored in the dense storage.
      */
     private boolean denseOnly;
 
@@ -8,6 +8,9 @@ package rhino;
 
 import rhino.json.*;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 /**
@@ -19,6 +22,9 @@ public final class NativeJSON extends IdScriptableObject{
     private static final Object JSON_TAG = "JSON";
 
     private static final int MAX_STRINGIFY_GAP_LENGTH = 10;
+    /** Characters buffered before they are passed to a writer. */
+    private static final int FLUSH_SIZE = 8192;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     static void init(Scriptable scope, boolean sealed){
         NativeJSON obj = new NativeJSON();
@@ -58,6 +64,10 @@ public final class NativeJSON extends IdScriptableObject{
                     arity = 3;
                     name = "stringify";
                     break;
+                case Id_parseStream:
+                    arity = 2;
+                    name = "parseStream";
+                    break;
                 default:
                     throw new IllegalStateException(String.valueOf(id));
             }
@@ -109,6 +119,10 @@ public final class NativeJSON extends IdScriptableObject{
                 return stringify(cx, scope, value, replacer, space);
             }
 
+            case Id_parseStream:
+                return parseStream(cx, scope, args.length > 0 ? args[0] : Undefined.instance,
+                args.length > 1 ? args[1] : Undefined.instance);
+
             default:
                 throw new IllegalStateException(String.valueOf(methodId));
         }
@@ -122,6 +136,47 @@ public final class NativeJSON extends IdScriptableObject{
         }
     }
 
+    /**
+     * Parse JSON text from a string, {@link Reader}, {@link InputStream} or
+     * {@link ByteBuffer}, the last two as UTF-8, without reading it into a string
+     * first. Without a handler the value is returned, otherwise its structure is
+     * reported to the functions onObjectStart, onObjectEnd, onArrayStart,
+     * onArrayEnd, onKey and onValue of the handler, any of which can be left out.
+     */
+    private static Object parseStream(Context cx, Scriptable scope, Object input, Object handler){
+        if(input instanceof Wrapper){
+            input = ((Wrapper)input).unwrap();
+        }
+        JsonParser parser = new JsonParser(cx, scope);
+        JsonParser.Handler adapter = handler instanceof Scriptable ? new ScriptHandler(cx, scope, (Scriptable)handler) : null;
+        try{
+            if(input instanceof ByteBuffer){
+                if(adapter == null) return parser.parseValue((ByteBuffer)input);
+                parser.parse((ByteBuffer)input, adapter);
+                return Undefined.instance;
+            }
+            Reader reader;
+            if(input instanceof Reader){
+                reader = (Reader)input;
+            }else if(input instanceof InputStream){
+                reader = new InputStreamReader((InputStream)input, StandardCharsets.UTF_8);
+            }else{
+                String text = ScriptRuntime.toString(input);
+                if(adapter == null) return parser.parseValue(text);
+                parser.parse(text, adapter);
+                return Undefined.instance;
+            }
+            if(adapter == null) return parser.parseValue(reader);
+            parser.parse(reader, adapter);
+            return Undefined.instance;
+        }catch(JsonParser.ParseException ex){
+            if(ex.getCause() instanceof IOException){
+                throw Context.throwAsScriptRuntimeEx(ex.getCause());
+            }
+            throw ScriptRuntime.constructError("SyntaxError", ex.getMessage());
+        }
+    }
+
     public static Object parse(Context cx, Scriptable scope, String jtext,
                                Callable reviver){
         Object unfiltered = parse(cx, scope, jtext);
@@ -191,9 +246,58 @@ public final class NativeJSON extends IdScriptableObject{
         return new String(chars);
     }
 
+    /** Calls the functions of a script object for the events of the parser. */
+    private static class ScriptHandler implements JsonParser.Handler{
+        private final Context cx;
+        private final Scriptable scope, handler;
+
+        ScriptHandler(Context cx, Scriptable scope, Scriptable handler){
+            this.cx = cx;
+            this.scope = scope;
+            this.handler = handler;
+        }
+
+        private void call(String name, Object[] args){
+            Object fun = ScriptableObject.getProperty(handler, name);
+            if(fun instanceof Callable){
+                ((Callable)fun).call(cx, scope, handler, args);
+            }
+        }
+
+        @Override
+        public void onObjectStart(){
+            call("onObjectStart", ScriptRuntime.emptyArgs);
+        }
+
+        @Override
+        public void onObjectEnd(){
+            call("onObjectEnd", ScriptRuntime.emptyArgs);
+        }
+
+        @Override
+        public void onArrayStart(){
+            call("onArrayStart", ScriptRuntime.emptyArgs);
+        }
+
+        @Override
+        public void onArrayEnd(){
+            call("onArrayEnd", ScriptRuntime.emptyArgs);
+        }
+
+        @Override
+        public void onKey(String key){
+            call("onKey", new Object[]{key});
+        }
+
+        @Override
+        public void onValue(Object value){
+            call("onValue", new Object[]{value});
+        }
+    }
+
     private static class StringifyState{
         StringifyState(Context cx, Scriptable scope, String indent, String gap,
-                       Callable replacer, List<Object> propertyList,
+                       Callable replacer, Object[] propertyList,
                        Object space){
             this.cx = cx;
             this.scope = scope;
@@ -205,19 +309,67 @@ public final class NativeJSON extends IdScriptableObject{
             this.space = space;
         }
 
-        Stack<Scriptable> stack = new Stack<>();
+        ArrayList<Scriptable> stack = new ArrayList<>();
         String indent;
         String gap;
         Callable replacer;
-        List<Object> propertyList;
+        Object[] propertyList;
         Object space;
 
         Context cx;
         Scriptable scope;
+
+        StringBuilder out = new StringBuilder();
+        // when set, out is written to it whenever FLUSH_SIZE is reached
+        Writer writer;
+        char[] chunk;
+    }
+
+    /** Thrown through the serializer when the writer fails. */
+    private static class WriteException extends RuntimeException{
+        private static final long serialVersionUID = 1L;
+
+        WriteException(IOException cause){
+            super(cause);
+        }
     }
 
     public static Object stringify(Context cx, Scriptable scope, Object value,
                                    Object replacer, Object space){
+        StringifyState state = createState(cx, scope, replacer, space);
+        if(!write(value, state)){
+            return Undefined.instance;
+        }
+        return state.out.toString();
+    }
+
+    /**
+     * Write the text that {@link #stringify(Context, Scriptable, Object, Object, Object)}
+     * would return to the writer, in chunks as it is produced. Nothing is written for
+     * values without a JSON representation, such as undefined or functions. The writer
+     * is not flushed or closed.
+     */
+    public static void stringify(Context cx, Scriptable scope, Object value,
+                                 Object replacer, Object space, Writer writer) throws IOException{
+        StringifyState state = createState(cx, scope, replacer, space);
+        state.writer = writer;
+        try{
+            write(value, state);
+            flush(state);
+        }catch(WriteException e){
+            throw (IOException)e.getCause();
+        }
+    }
+
+    /** Write the JSON text of the value to the stream as UTF-8. The stream is flushed but not closed. */
+    public static void stringify(Context cx, Scriptable scope, Object value,
+                                 Object replacer, Object space, OutputStream out) throws IOException{
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        stringify(cx, scope, value, replacer, space, writer);
+        writer.flush();
+    }
+
+    private static StringifyState createState(Context cx, Scriptable scope, Object replacer, Object space){
         String indent = "";
         String gap = "";
 
@@ -227,7 +379,7 @@ public final class NativeJSON extends IdScriptableObject{
         if(replacer instanceof Callable){
             replacerFunction = (Callable)replacer;
         }else if(replacer instanceof NativeArray){
-            propertyList = new LinkedList<>();
+            propertyList = new ArrayList<>();
             NativeArray replacerArray = (NativeArray)replacer;
             for(int i : replacerArray.getIndexIds()){
                 Object v = replacerArray.get(i, replacerArray);
@@ -257,29 +409,43 @@ public final class NativeJSON extends IdScriptableObject{
             }
         }
 
-        StringifyState state = new StringifyState(cx, scope,
+        return new StringifyState(cx, scope,
         indent,
         gap,
         replacerFunction,
-        propertyList,
+        propertyList == null ? null : propertyList.toArray(),
         space);
+    }
 
-        ScriptableObject wrapper = new NativeObject();
-        wrapper.setParentScope(scope);
-        wrapper.setPrototype(ScriptableObject.getObjectPrototype(scope));
-        wrapper.defineProperty("", value, 0);
-        return str("", wrapper, state);
+    /** Write the value as the root of the text, return false if it has no JSON representation. */
+    private static boolean write(Object value, StringifyState state){
+        Scriptable holder = null;
+        if(state.replacer != null){
+            // only visible to the replacer, as this
+            ScriptableObject wrapper = new NativeObject();
+            wrapper.setParentScope(state.scope);
+            wrapper.setPrototype(ScriptableObject.getObjectPrototype(state.scope));
+            wrapper.defineProperty("", value, 0);
+            holder = wrapper;
+        }
+        value = resolve("", holder, value, state);
+        if(!isSerializable(value)){
+            return false;
+        }
+        writeValue(value, state);
+        return true;
     }
 
-    private static Object str(Object key, Scriptable holder,
-                              StringifyState state){
-        Object value;
+    private static Object property(Scriptable holder, Object key){
         if(key instanceof String){
-            value = getProperty(holder, (String)key);
-        }else{
-            value = getProperty(holder, ((Number)key).intValue());
+            return getProperty(holder, (String)key);
         }
+        return getProperty(holder, ((Number)key).intValue());
+    }
 
+    /** Apply toJSON and the replacer to the value of the key and unwrap primitive objects. */
+    private static Object resolve(Object key, Scriptable holder, Object value,
+                                  StringifyState state){
         if(value instanceof Scriptable && hasProperty((Scriptable)value, "toJSON")){
             Object toJSON = getProperty((Scriptable)value, "toJSON");
             if(toJSON instanceof Callable){
@@ -301,181 +467,206 @@ public final class NativeJSON extends IdScriptableObject{
         }else if(value instanceof NativeBoolean){
             value = ((NativeBoolean)value).getDefaultValue(ScriptRuntime.BooleanClass);
         }
+        return value;
+    }
 
-        if(value == null) return "null";
-        if(value.equals(Boolean.TRUE)) return "true";
-        if(value.equals(Boolean.FALSE)) return "false";
+    private static boolean isSerializable(Object value){
+        return value == null || value instanceof Boolean || value instanceof CharSequence
+        || value instanceof Number || (value instanceof Scriptable && !(value instanceof Callable));
+    }
 
-        if(value instanceof CharSequence){
-            return quote(value.toString());
+    private static void writeValue(Object value, StringifyState state){
+        StringBuilder out = state.out;
+        if(value == null){
+            out.append("null");
+        }else if(value instanceof Boolean){
+            out.append(((Boolean)value).booleanValue() ? "true" : "false");
+        }else if(value instanceof CharSequence){
+            quote(value.toString(), out);
+        }else if(value instanceof Integer){
+            out.append(((Integer)value).intValue());
+        }else if(value instanceof Number){
+            writeNumber(((Number)value).doubleValue(), out);
+        }else if(value instanceof NativeArray){
+            ja((NativeArray)value, state);
+        }else{
+            jo((Scriptable)value, state);
         }
+    }
 
-        if(value instanceof Number){
-            double d = ((Number)value).doubleValue();
-            if(!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
-            d != Double.NEGATIVE_INFINITY){
-                return ScriptRuntime.toString(value);
-            }
-            return "null";
+    private static void writeNumber(double d, StringBuilder out){
+        if(!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
+        d != Double.NEGATIVE_INFINITY){
+            out.append(ScriptRuntime.numberToString(d, 10));
+        }else{
+            out.append("null");
         }
+    }
 
-        if(value instanceof Scriptable && !(value instanceof Callable)){
-            if(value instanceof NativeArray){
-                return ja((NativeArray)value, state);
-            }
-            return jo((Scriptable)value, state);
+    private static void enter(Scriptable value, StringifyState state){
+        if(state.stack.contains(value)){
+            throw ScriptRuntime.typeError0("msg.cyclic.value");
         }
+        state.stack.add(value);
+    }
 
-        return Undefined.instance;
+    private static void exit(StringifyState state){
+        state.stack.remove(state.stack.size() - 1);
     }
 
-    private static String join(Collection<Object> objs, String delimiter){
-        if(objs == null || objs.isEmpty()){
-            return "";
+    /** Start the next member of an object or array, after the opening bracket when first. */
+    private static void separate(boolean first, StringifyState state){
+        if(state.writer != null && state.out.length() >= FLUSH_SIZE){
+            flush(state);
+        }
+        if(!first){
+            state.out.append(',');
         }
-        Iterator<Object> iter = objs.iterator();
-        if(!iter.hasNext()) return "";
-        StringBuilder builder = new StringBuilder(iter.next().toString());
-        while(iter.hasNext()){
-            builder.append(delimiter).append(iter.next().toString());
+        if(state.gap.length() > 0){
+            state.out.append('\n').append(state.indent);
         }
-        return builder.toString();
     }
 
-    private static String jo(Scriptable value, StringifyState state){
-        if(state.stack.search(value) != -1){
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
+    /** Write the closing bracket, on its own line when indenting. */
+    private static void close(boolean empty, String stepback, char bracket, StringifyState state){
+        if(!empty && state.gap.length() > 0){
+            state.out.append('\n').append(stepback);
         }
-        state.stack.push(value);
+        state.out.append(bracket);
+    }
+
+    private static void flush(StringifyState state){
+        StringBuilder out = state.out;
+        int length = out.length();
+        if(state.chunk == null || state.chunk.length < length){
+            state.chunk = new char[Math.max(length, FLUSH_SIZE * 2)];
+        }
+        out.getChars(0, length, state.chunk, 0);
+        out.setLength(0);
+        try{
+            state.writer.write(state.chunk, 0, length);
+        }catch(IOException e){
+            throw new WriteException(e);
+        }
+    }
+
+    private static void jo(Scriptable value, StringifyState state){
+        enter(value, state);
 
         String stepback = state.indent;
         state.indent = state.indent + state.gap;
         Object[] k;
         if(state.propertyList != null){
-            k = state.propertyList.toArray();
+            k = state.propertyList;
         }else{
             k = value.getIds();
         }
 
-        List<Object> partial = new LinkedList<>();
-
+        StringBuilder out = state.out;
+        out.append('{');
+        boolean empty = true;
         for(Object p : k){
-            Object strP = str(p, value, state);
-            if(strP != Undefined.instance){
-                String member = quote(p.toString()) + ":";
+            Object v = resolve(p, value, property(value, p), state);
+            if(isSerializable(v)){
+                separate(empty, state);
+                empty = false;
+                quote(p.toString(), out);
+                out.append(':');
                 if(state.gap.length() > 0){
-                    member = member + " ";
+                    out.append(' ');
                 }
-                member = member + strP;
-                partial.add(member);
-            }
-        }
-
-        final String finalValue;
-
-        if(partial.isEmpty()){
-            finalValue = "{}";
-        }else{
-            if(state.gap.length() == 0){
-                finalValue = '{' + join(partial, ",") + '}';
-            }else{
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "{\n" + state.indent + properties + '\n' +
-                stepback + '}';
+                writeValue(v, state);
             }
         }
+        close(empty, stepback, '}', state);
 
-        state.stack.pop();
         state.indent = stepback;
-        return finalValue;
+        exit(state);
     }
 
-    private static String ja(NativeArray value, StringifyState state){
-        if(state.stack.search(value) != -1){
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
-        }
-        state.stack.push(value);
+    private static void ja(NativeArray value, StringifyState state){
+        enter(value, state);
 
         String stepback = state.indent;
         state.indent = state.indent + state.gap;
-        List<Object> partial = new LinkedList<>();
 
+        StringBuilder out = state.out;
+        out.append('[');
         long len = value.getLength();
-        for(long index = 0; index < len; index++){
-            Object strP;
-            if(index > Integer.MAX_VALUE){
-                strP = str(Long.toString(index), value, state);
-            }else{
-                strP = str((int)index, value, state);
-            }
-            if(strP == Undefined.instance){
-                partial.add("null");
-            }else{
-                partial.add(strP);
+        int[] ints = value.getIntElements();
+        double[] doubles = value.getDoubleElements();
+        if(state.replacer == null && (ints != null || doubles != null) && value.getClass() == NativeArray.class){
+            // numbers have no toJSON and the storage can not change while writing them
+            for(int index = 0; index < len; index++){
+                separate(index == 0, state);
+                if(ints != null){
+                    out.append(ints[index]);
+                }else{
+                    writeNumber(doubles[index], out);
+                }
             }
-        }
-
-        final String finalValue;
-
-        if(partial.isEmpty()){
-            finalValue = "[]";
         }else{
-            if(state.gap.length() == 0){
-                finalValue = '[' + join(partial, ",") + ']';
-            }else{
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "[\n" + state.indent + properties + '\n' + stepback + ']';
+            for(long index = 0; index < len; index++){
+                separate(index == 0, state);
+                Object v;
+                if(index > Integer.MAX_VALUE){
+                    String key = Long.toString(index);
+                    v = resolve(key, value, getProperty(value, key), state);
+                }else{
+                    v = resolve((int)index, value, getProperty(value, (int)index), state);
+                }
+                if(isSerializable(v)){
+                    writeValue(v, state);
+                }else{
+                    out.append("null");
+                }
             }
         }
+        close(len == 0, stepback, ']', state);
 
-        state.stack.pop();
         state.indent = stepback;
-        return finalValue;
+        exit(state);
     }
 
-    private static String quote(String string){
-        StringBuilder product = new StringBuilder(string.length() + 2); // two extra chars for " on either side
-        product.append('"');
-        int length = string.length();
+    private static void quote(String string, StringBuilder out){
+        out.append('"');
+        int length = string.length(), start = 0;
         for(int i = 0; i < length; i++){
             char c = string.charAt(i);
+            if(c >= ' ' && c != '"' && c != '\\'){
+                continue;
+            }
+            out.append(string, start, i);
+            start = i + 1;
             switch(c){
                 case '"':
-                    product.append("\\\"");
+                    out.append("\\\"");
                     break;
                 case '\\':
-                    product.append("\\\\");
+                    out.append("\\\\");
                     break;
                 case '\b':
-                    product.append("\\b");
+                    out.append("\\b");
                     break;
                 case '\f':
-                    product.append("\\f");
+                    out.append("\\f");
                     break;
                 case '\n':
-                    product.append("\\n");
+                    out.append("\\n");
                     break;
                 case '\r':
-                    product.append("\\r");
+                    out.append("\\r");
                     break;
                 case '\t':
-                    product.append("\\t");
+                    out.append("\\t");
                     break;
                 default:
-                    if(c < ' '){
-                        product.append("\\u");
-                        String hex = String.format("%04x", (int)c);
-                        product.append(hex);
-                    }else{
-                        product.append(c);
-                    }
+                    out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
                     break;
             }
         }
-        product.append('"');
-        return product.toString();
+        out.append(string, start, length);
+        out.append('"');
     }
 
 // #string_id_map#
@@ -501,6 +692,10 @@ public final class NativeJSON extends IdScriptableObject{
                     X = "stringify";
                     id = Id_stringify;
                     break;
+                case 11:
+                    X = "parseStream";
+                    id = Id_parseStream;
+                    break;
             }
             if(X != null && X != s && !X.equals(s)) id = 0;
         }
@@ -512,8 +707,9 @@ public final class NativeJSON extends IdScriptableObject{
     Id_toSource = 1,
     Id_parse = 2,
     Id_stringify = 3,
-    LAST_METHOD_ID = 3,
-    MAX_ID = 3;
+    Id_parseStream = 4,
+    LAST_METHOD_ID = 4,
+    MAX_ID = 4;
 
 // #/string_id_map#
 }
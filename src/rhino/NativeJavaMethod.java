@@ -2,7 +2,6 @@ package rhino;
 
 import java.lang.reflect.*;
 import java.util.*;
-import java.util.concurrent.*;
 
 /**
  * This class reflects Java methods into the JavaScript environment and
@@ -230,18 +229,42 @@ public class NativeJavaMethod extends BaseFunction{
 
     int findCachedFunction(Context cx, Object[] args){
         if(methods.length > 1){
-            for(ResolvedOverload ovl : overloadCache){
-                if(ovl.matches(args)){
+            // Most call sites keep passing the same argument types
+            ResolvedOverload last = lastResolved;
+            if(last != null && last.matches(args)){
+                return last.index;
+            }
+            ResolvedOverload[] cache = overloadCache;
+            if(cache == null){
+                // As a sanity measure, keep the cache small compared to the number of overloads
+                int size = Integer.highestOneBit(Math.min(methods.length * 4, MAX_OVERLOAD_CACHE_SIZE) - 1) << 1;
+                overloadCache = cache = new ResolvedOverload[size];
+            }
+            int hash = ResolvedOverload.hash(args);
+            int mask = cache.length - 1;
+            for(int i = 0; i < OVERLOAD_CACHE_PROBES; i++){
+                ResolvedOverload ovl = cache[(hash + i) & mask];
+                if(ovl == null){
+                    break;
+                }
+                if(ovl.hash == hash && ovl.matches(args)){
+                    lastResolved = ovl;
                     return ovl.index;
                 }
             }
             int index = findFunction(cx, methods, args);
-            // As a sanity measure, don't let the lookup cache grow longer
-            // than twice the number of overloaded methods
-            if(overloadCache.size() < methods.length * 2){
-                ResolvedOverload ovl = new ResolvedOverload(args, index);
-                overloadCache.addIfAbsent(ovl);
+            ResolvedOverload ovl = new ResolvedOverload(args, hash, index);
+            // Take a free slot near the home position, or evict the entry at the home position.
+            // Entries are immutable, so racing writers at worst lose an entry.
+            int slot = hash & mask;
+            for(int i = 0; i < OVERLOAD_CACHE_PROBES; i++){
+                if(cache[(hash + i) & mask] == null){
+                    slot = (hash + i) & mask;
+                    break;
+                }
             }
+            cache[slot] = ovl;
+            lastResolved = ovl;
             return index;
         }
         return findFunction(cx, methods, args);
@@ -522,15 +545,28 @@ public class NativeJavaMethod extends BaseFunction{
 
     MemberBox[] methods;
     private final String functionName;
-    private transient final CopyOnWriteArrayList<ResolvedOverload> overloadCache = new CopyOnWriteArrayList<>();
+
+    // Upper bound for the overload cache of a single method
+    private static final int MAX_OVERLOAD_CACHE_SIZE = 64;
+    private static final int OVERLOAD_CACHE_PROBES = 4;
+
+    // Open addressing table of resolved argument type signatures, created on first use
+    private transient ResolvedOverload[] overloadCache;
+    private transient volatile ResolvedOverload lastResolved;
 }
 
 class ResolvedOverload{
     final Class<?>[] types;
+    final int hash;
     final int index;
 
     ResolvedOverload(Object[] args, int index){
+        this(args, hash(args), index);
+    }
+
+    ResolvedOverload(Object[] args, int hash, int index){
         this.index = index;
+        this.hash = hash;
         types = new Class<?>[args.length];
         for(int i = 0, l = args.length; i < l; i++){
             Object arg = args[i];
@@ -557,6 +593,20 @@ class ResolvedOverload{
         return true;
     }
 
+    /**
+     * Hash the runtime types of the arguments the same way as for a resolved overload,
+     * without allocating.
+     */
+    static int hash(Object[] args){
+        int h = args.length;
+        for(Object arg : args){
+            if(arg instanceof Wrapper)
+                arg = ((Wrapper)arg).unwrap();
+            h = h * 31 + (arg == null ? 0 : arg.getClass().hashCode());
+        }
+        return h ^ (h >>> 16);
+    }
+
     @Override
     public boolean equals(Object other){
         if(!(other instanceof ResolvedOverload)){
@@ -568,6 +618,6 @@ class ResolvedOverload{
 
     @Override
     public int hashCode(){
-        return Arrays.hashCode(types);
+        return hash;
     }
 }
@@ -2,6 +2,7 @@ package rhino;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class reflects Java packages into the JavaScript environment.  We
@@ -92,13 +93,23 @@ public class NativeJavaPackage extends ScriptableObject{
         return pkg;
     }
 
-    synchronized Object getPkgProperty(String name, Scriptable start,
-                                       boolean createPkg){
+    Object getPkgProperty(String name, Scriptable start, boolean createPkg){
+        // names that are not classes are never cached as properties, so this
+        // can be checked without locking
+        Set<String> negative = negativeCache;
+        if(negative != null && negative.contains(name)){
+            // Performance optimization: see bug 421071
+            return null;
+        }
+        return resolvePkgProperty(name, start, createPkg);
+    }
+
+    private synchronized Object resolvePkgProperty(String name, Scriptable start,
+                                                   boolean createPkg){
         Object cached = super.get(name, start);
         if(cached != NOT_FOUND)
             return cached;
         if(negativeCache != null && negativeCache.contains(name)){
-            // Performance optimization: see bug 421071
             return null;
         }
 
@@ -129,7 +140,7 @@ public class NativeJavaPackage extends ScriptableObject{
             }else{
                 // add to negative cache
                 if(negativeCache == null)
-                    negativeCache = new HashSet<>();
+                    negativeCache = ConcurrentHashMap.newKeySet();
                 negativeCache.add(name);
             }
         }
@@ -174,5 +185,5 @@ public class NativeJavaPackage extends ScriptableObject{
 
     private final String packageName;
     private transient ClassLoader classLoader;
-    private Set<String> negativeCache = null;
+    private volatile Set<String> negativeCache = null;
 }
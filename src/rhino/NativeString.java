@@ -411,14 +411,14 @@ final class NativeString extends IdScriptableObject{
                 }
 
                 case Id_indexOf:{
-                    String thisString = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence thisString = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     return ScriptRuntime.wrapInt(js_indexOf(Id_indexOf, thisString, args));
                 }
 
                 case Id_includes:
                 case Id_startsWith:
                 case Id_endsWith:
-                    String thisString = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence thisString = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     if(args.length > 0 && args[0] instanceof NativeRegExp){
                         throw ScriptRuntime.typeError2("msg.first.arg.not.regexp", String.class.getSimpleName(), f.getFunctionName());
                     }
@@ -473,7 +473,7 @@ final class NativeString extends IdScriptableObject{
                 }
 
                 case Id_concat:{
-                    String thisStr = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence thisStr = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     return js_concat(thisStr, args);
                 }
 
@@ -771,7 +771,7 @@ final class NativeString extends IdScriptableObject{
      * See ECMA 15.5.4.6.  Uses Java String.indexOf()
      * OPT to add - BMH searching from jsstr.c.
      */
-    private static int js_indexOf(int methodId, String target, Object[] args){
+    private static int js_indexOf(int methodId, CharSequence target, Object[] args){
         String searchStr = ScriptRuntime.toString(args, 0);
         double position = ScriptRuntime.toInteger(args, 1);
 
@@ -785,11 +785,26 @@ final class NativeString extends IdScriptableObject{
 
         if(Id_endsWith == methodId){
             if(args.length == 0 || args.length == 1 || (args.length == 2 && args[1] == Undefined.instance)) position = target.length();
-            return target.substring(0, (int)position).endsWith(searchStr) ? 0 : -1;
+            return regionMatches(target, (int)position - searchStr.length(), searchStr) ? 0 : -1;
+        }
+        if(methodId == Id_startsWith){
+            return regionMatches(target, (int)position, searchStr) ? 0 : -1;
+        }
+        // ropes are searched leaf by leaf instead of being flattened
+        return target instanceof ConsString
+        ? ((ConsString)target).indexOf(searchStr, (int)position)
+        : target.toString().indexOf(searchStr, (int)position);
+    }
+
+    /** Tell whether the target contains the string at the index. */
+    private static boolean regionMatches(CharSequence target, int index, String str){
+        if(index < 0 || index + str.length() > target.length()){
+            return false;
+        }
+        if(target instanceof String){
+            return ((String)target).startsWith(str, index);
         }
-        return methodId == Id_startsWith
-        ? target.startsWith(searchStr, (int)position) ? 0 : -1
-        : target.indexOf(searchStr, (int)position);
+        return target.subSequence(index, index + str.length()).toString().equals(str);
     }
 
     /*
@@ -894,31 +909,12 @@ final class NativeString extends IdScriptableObject{
     /*
      * Python-esque sequence operations.
      */
-    private static String js_concat(String target, Object[] args){
-        int N = args.length;
-        if(N == 0){
-            return target;
-        }else if(N == 1){
-            String arg = ScriptRuntime.toString(args[0]);
-            return target.concat(arg);
-        }
-
-        // Find total capacity for the final string to avoid unnecessary
-        // re-allocations in StringBuilder
-        int size = target.length();
-        String[] argsAsStrings = new String[N];
-        for(int i = 0; i != N; ++i){
-            String s = ScriptRuntime.toString(args[i]);
-            argsAsStrings[i] = s;
-            size += s.length();
+    private static CharSequence js_concat(CharSequence target, Object[] args){
+        // appends to the rope, so repeated concat calls stay linear
+        for(Object arg : args){
+            target = ConsString.concat(target, ScriptRuntime.toCharSequence(arg));
         }
-
-        StringBuilder result = new StringBuilder(size);
-        result.append(target);
-        for(int i = 0; i != N; ++i){
-            result.append(argsAsStrings[i]);
-        }
-        return result.toString();
+        return target;
     }
 
     private static CharSequence js_slice(CharSequence target, Object[] args){
@@ -1,6 +1,7 @@
 package rhino;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This is an implementation of the standard "Symbol" type that implements
@@ -243,14 +244,7 @@ implements Symbol{
     private Object js_for(Context cx, Scriptable scope, Object[] args){
         String name = (args.length > 0 ? ScriptRuntime.toString(args[0]) : ScriptRuntime.toString(Undefined.instance));
 
-        Map<String, NativeSymbol> table = getGlobalMap();
-        NativeSymbol ret = table.get(name);
-
-        if(ret == null){
-            ret = construct(cx, scope, new Object[]{name});
-            table.put(name, ret);
-        }
-        return ret;
+        return getGlobalMap(scope).computeIfAbsent(name, n -> construct(cx, scope, new Object[]{n}));
     }
 
     private Object js_keyFor(Context cx, Scriptable scope, Object[] args){
@@ -260,7 +254,7 @@ implements Symbol{
         }
         NativeSymbol sym = (NativeSymbol)s;
 
-        Map<String, NativeSymbol> table = getGlobalMap();
+        Map<String, NativeSymbol> table = getGlobalMap(scope);
         for(Map.Entry<String, NativeSymbol> e : table.entrySet()){
             if(e.getValue().key == sym.key){
                 return e.getKey();
@@ -336,12 +330,17 @@ implements Symbol{
         return key;
     }
 
-    private Map<String, NativeSymbol> getGlobalMap(){
-        ScriptableObject top = (ScriptableObject)getTopLevelScope(this);
+    /**
+     * Return the symbol registry of the calling top-level scope. Scopes sharing
+     * standard objects still have their own registries.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, NativeSymbol> getGlobalMap(Scriptable scope){
+        ScriptableObject top = (ScriptableObject)getTopLevelScope(scope);
         Map<String, NativeSymbol> map = (Map<String, NativeSymbol>)top.getAssociatedValue(GLOBAL_TABLE_KEY);
         if(map == null){
-            map = new HashMap<>();
-            top.associateValue(GLOBAL_TABLE_KEY, map);
+            // associateValue keeps the map of a racing thread
+            map = (Map<String, NativeSymbol>)top.associateValue(GLOBAL_TABLE_KEY, new ConcurrentHashMap<String, NativeSymbol>());
         }
         return map;
     }
@@ -23,6 +23,8 @@ public class Node implements Iterable<Node>{
     //  VARIABLE_PROP - the variable referenced by a BIND or NAME node
     //  ISNUMBER_PROP - this node generates code on Number children and
     //                  delivers a Number result (as opposed to Objects)
+    //  NUMBER_OPERANDS_PROP - this comparison node generates code on
+    //                  Number children, its result is still a boolean
     //  DIRECTCALL_PROP - this call node should emit code to test the function
     //                    object against the known class and call direct if it
     //                    matches.
@@ -49,9 +51,10 @@ public class Node implements Iterable<Node>{
     EXPRESSION_CLOSURE_PROP = 25, // JS 1.8 expression closure pseudo-return
     DESTRUCTURING_SHORTHAND = 26, // JS 1.8 destructuring shorthand
     ARROW_FUNCTION_PROP = 27,
-    LAST_PROP = 27;
+    NUMBER_OPERANDS_PROP = 28,
+    LAST_PROP = 28;
 
-    // values of ISNUMBER_PROP to specify
+    // values of ISNUMBER_PROP and NUMBER_OPERANDS_PROP to specify
     // which of the children are Number types
     public static final int
     BOTH = 0,
@@ -406,6 +409,8 @@ public class Node implements Iterable<Node>{
                     return "variable";
                 case ISNUMBER_PROP:
                     return "isnumber";
+                case NUMBER_OPERANDS_PROP:
+                    return "number_operands";
                 case DIRECTCALL_PROP:
                     return "directcall";
 
@@ -1149,6 +1154,7 @@ public class Node implements Iterable<Node>{
                         value = "last local block";
                         break;
                     case ISNUMBER_PROP:
+                    case NUMBER_OPERANDS_PROP:
                         switch(x.intValue){
                             case BOTH:
                                 value = "both";
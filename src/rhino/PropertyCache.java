@@ -0,0 +1,240 @@
+package rhino;
+
+import rhino.ScriptableObject.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Inline cache for a single named property access site in interpreted code.
+ * <p>
+ * Every GETPROP, SETPROP and PROP_AND_THIS instruction gets its own cache that remembers
+ * up to {@link #MAX_ENTRIES} object shapes it has seen together with the Slot that held
+ * the property. A shape is the layout identity exposed by the slot map, so a matching
+ * shape proves the Slot is still the one a full lookup would find and its value can be
+ * read or written directly. Shapes of a {@link ShapedSlotMap} are shared between objects
+ * with the same layout, in which case the entry records the position of the slot instead.
+ * Only plain {@link NativeObject} instances are cached, as all
+ * other classes may override property lookup. Properties found one level up the
+ * prototype chain are cached for reads when the prototype is a plain object as well.
+ * <p>
+ * Entries are immutable and published through a volatile array, so a cache shared by
+ * several threads running the same script at worst misses.
+ */
+public final class PropertyCache{
+    static final int MAX_ENTRIES = 4;
+
+    private static volatile boolean statisticsEnabled;
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+
+    private static final class Entry{
+        final Object shape;
+        final Slot slot;
+        // position of the slot if its owner has a shared shape, -1 otherwise
+        final int index;
+        // non-null if the slot was found in the prototype of the receiver
+        final ScriptableObject holder;
+        final Object holderShape;
+
+        Entry(Object shape, Slot slot, int index, ScriptableObject holder, Object holderShape){
+            this.shape = shape;
+            this.slot = slot;
+            this.index = index;
+            this.holder = holder;
+            this.holderShape = holderShape;
+        }
+
+        Slot slot(ScriptableObject owner){
+            // Shared shapes only describe the layout, the slot itself belongs to the object
+            return index < 0 ? slot : owner.slotAt(index);
+        }
+    }
+
+    private volatile Entry[] entries;
+
+    PropertyCache(){
+    }
+
+    /**
+     * Enable or disable counting of cache hits and misses across all caches.
+     * Counting is disabled by default since it adds a shared counter update
+     * to every property access.
+     */
+    public static void setStatisticsEnabled(boolean enabled){
+        statisticsEnabled = enabled;
+    }
+
+    public static boolean isStatisticsEnabled(){
+        return statisticsEnabled;
+    }
+
+    /**
+     * Return the number of property accesses served from a cache since the
+     * counters were last reset.
+     */
+    public static long getHitCount(){
+        return hitCount.sum();
+    }
+
+    /**
+     * Return the number of cacheable property accesses that had to do a full lookup
+     * since the counters were last reset.
+     */
+    public static long getMissCount(){
+        return missCount.sum();
+    }
+
+    /**
+     * Return the fraction of cacheable property accesses served from a cache,
+     * or 0 if there were none.
+     */
+    public static double getHitRate(){
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    public static void resetStatistics(){
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /**
+     * Cached version of {@link ScriptRuntime#getObjectProp(Object, String, Context, Scriptable)}.
+     */
+    static Object getObjectProp(PropertyCache cache, Object obj, String property,
+                                Context cx, Scriptable scope){
+        if(cache != null && obj != null && obj.getClass() == NativeObject.class){
+            NativeObject so = (NativeObject)obj;
+            Slot slot = cache.find(so, property, false);
+            if(slot != null){
+                return slot.getValue(so);
+            }
+        }
+        return ScriptRuntime.getObjectProp(obj, property, cx, scope);
+    }
+
+    /**
+     * Cached version of {@link ScriptRuntime#setObjectProp(Object, String, Object, Context, Scriptable)}.
+     */
+    static Object setObjectProp(PropertyCache cache, Object obj, String property,
+                                Object value, Context cx, Scriptable scope){
+        if(cache != null && obj != null && obj.getClass() == NativeObject.class){
+            NativeObject so = (NativeObject)obj;
+            if(!so.isSealed() && !so.hasPrototypeMap()){
+                Slot slot = cache.find(so, property, true);
+                if(slot != null && !(slot instanceof GetterSlot)
+                && (slot.getAttributes() & ScriptableObject.READONLY) == 0){
+                    slot.value = value;
+                    return value;
+                }
+            }
+        }
+        return ScriptRuntime.setObjectProp(obj, property, value, cx, scope);
+    }
+
+    /**
+     * Cached version of {@link ScriptRuntime#getPropFunctionAndThis(Object, String, Context, Scriptable)}.
+     * The caller must call {@link ScriptRuntime#lastStoredScriptable(Context)} afterwards as usual.
+     */
+    static Callable getPropFunctionAndThis(PropertyCache cache, Object obj, String property,
+                                           Context cx, Scriptable scope){
+        if(cache != null && obj != null && obj.getClass() == NativeObject.class){
+            NativeObject so = (NativeObject)obj;
+            Slot slot = cache.find(so, property, false);
+            if(slot != null){
+                Object value = slot.getValue(so);
+                if(value instanceof Callable){
+                    ScriptRuntime.storeScriptable(cx, so);
+                    return (Callable)value;
+                }
+            }
+        }
+        return ScriptRuntime.getPropFunctionAndThis(obj, property, cx, scope);
+    }
+
+    /**
+     * Return the Slot holding the property for the given receiver, consulting the cached
+     * entries first and recording a new entry on a miss. Returns null if the property
+     * could not be located through a cacheable path, in which case the caller must do
+     * a full lookup.
+     * @param forWrite only accept own data slots of the receiver
+     */
+    private Slot find(NativeObject obj, String property, boolean forWrite){
+        // Only look at an existing shape here, so that megamorphic sites do not
+        // make every object they touch allocate one
+        Object shape = obj.getShape(false);
+        Entry[] es = entries;
+        if(es != null && shape != null){
+            for(Entry e : es){
+                if(e.shape != shape){
+                    continue;
+                }
+                if(e.holder == null){
+                    if(statisticsEnabled) hitCount.increment();
+                    return e.slot(obj);
+                }
+                if(obj.getPrototype() == e.holder && e.holder.getShape(false) == e.holderShape
+                && !obj.hasPrototypeMap()){
+                    if(statisticsEnabled) hitCount.increment();
+                    return e.slot(e.holder);
+                }
+            }
+        }
+        if(statisticsEnabled) missCount.increment();
+        if(es != null && es.length == MAX_ENTRIES){
+            // Megamorphic site, keep what we have and stop learning
+            return null;
+        }
+        if(shape == null){
+            shape = obj.getShape(true);
+            if(shape == null){
+                return null;
+            }
+        }
+
+        Slot slot = obj.queryOwnSlot(property);
+        if(slot != null){
+            if(forWrite && slot instanceof GetterSlot){
+                return null;
+            }
+            add(es, new Entry(shape, slot, indexOf(shape, property), null, null));
+            return slot;
+        }
+        if(forWrite || obj.hasPrototypeMap()){
+            return null;
+        }
+        Scriptable proto = obj.getPrototype();
+        if(proto == null || proto.getClass() != NativeObject.class){
+            return null;
+        }
+        NativeObject holder = (NativeObject)proto;
+        Object holderShape = holder.getShape(true);
+        if(holderShape == null){
+            return null;
+        }
+        slot = holder.queryOwnSlot(property);
+        if(slot != null){
+            add(es, new Entry(shape, slot, indexOf(holderShape, property), holder, holderShape));
+        }
+        return slot;
+    }
+
+    private static int indexOf(Object shape, String property){
+        if(shape instanceof ShapedSlotMap.Shape){
+            return ((ShapedSlotMap.Shape)shape).indexOf(property);
+        }
+        return -1;
+    }
+
+    private void add(Entry[] es, Entry e){
+        if(es == null){
+            entries = new Entry[]{e};
+            return;
+        }
+        Entry[] grown = new Entry[es.length + 1];
+        System.arraycopy(es, 0, grown, 0, es.length);
+        grown[es.length] = e;
+        entries = grown;
+    }
+}
@@ -333,8 +333,25 @@ public class ScriptRuntime{
     }
 
     public static Number wrapNumber(double x){
-        if(Double.isNaN(x)){
-            return ScriptRuntime.NaNobj;
+        return wrapDouble(x);
+    }
+
+    /**
+     * Box the number, returning a shared instance for NaN and for integers in the
+     * range of the small number cache.
+     * <p>
+     * The cache covers -128 up to the value of the <code>rhino.double.cache</code>
+     * system property, 1024 by default and at most 65536.
+     */
+    public static Double wrapDouble(double x){
+        int i = (int)x;
+        if(i == x){
+            // -0.0 must keep its own box
+            if(i >= -SMALL_DOUBLE_OFFSET && i < smallDoubles.length - SMALL_DOUBLE_OFFSET && (i != 0 || 1 / x > 0)){
+                return smallDoubles[i + SMALL_DOUBLE_OFFSET];
+            }
+        }else if(x != x){
+            return NaNobj;
         }
         return x;
     }
@@ -419,6 +436,25 @@ public class ScriptRuntime{
 
     public static final Double NaNobj = NaN;
 
+    private static final int SMALL_DOUBLE_OFFSET = 128;
+    // largest accepted rhino.double.cache, each box costs about 24 bytes
+    private static final int SMALL_DOUBLE_MAX = 1 << 16;
+    // boxes of -128 until the configured limit
+    private static final Double[] smallDoubles;
+
+    static{
+        int limit;
+        try{
+            limit = Integer.parseInt(System.getProperty("rhino.double.cache", "1024"));
+        }catch(NumberFormatException | SecurityException e){
+            limit = 1024;
+        }
+        smallDoubles = new Double[Math.min(Math.max(limit, 0), SMALL_DOUBLE_MAX) + SMALL_DOUBLE_OFFSET];
+        for(int i = 0; i < smallDoubles.length; i++){
+            smallDoubles[i] = (double)(i - SMALL_DOUBLE_OFFSET);
+        }
+    }
+
     static double stringPrefixToNumber(String s, int start, int radix){
         return stringToNumber(s, start, s.length() - 1, radix, true);
     }
@@ -889,6 +925,10 @@ public class ScriptRuntime{
         if(base != 10){
             return DToA.JS_dtobasestr(base, d);
         }
+        int i = (int)d;
+        if(i == d){
+            return Integer.toString(i);
+        }
         // V8 FastDtoa can't convert all numbers, so try it first but
         // fall back to old DToA in case it fails
         String result = FastDtoa.numberToString(d);
@@ -2698,15 +2738,15 @@ public class ScriptRuntime{
             }
             return wrapNumber(toNumber(val1) + toNumber(val2));
         }
-        return new ConsString(toCharSequence(val1), toCharSequence(val2));
+        return ConsString.concat(toCharSequence(val1), toCharSequence(val2));
     }
 
     public static CharSequence add(CharSequence val1, Object val2){
-        return new ConsString(val1, toCharSequence(val2));
+        return ConsString.concat(val1, toCharSequence(val2));
     }
 
     public static CharSequence add(Object val1, CharSequence val2){
-        return new ConsString(toCharSequence(val1), val2);
+        return ConsString.concat(toCharSequence(val1), val2);
     }
 
     /**
@@ -4096,7 +4136,7 @@ public class ScriptRuntime{
         return value;
     }
 
-    private static void storeScriptable(Context cx, Scriptable value){
+    static void storeScriptable(Context cx, Scriptable value){
         // The previously stored scratchScriptable should be consumed
         if(cx.scratchScriptable != null)
             throw new IllegalStateException();
@@ -319,10 +319,10 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 
     private SlotMapContainer createSlotMap(int initialSize){
         Context cx = Context.getCurrentContext();
-        if((cx != null) && cx.hasFeature(Context.FEATURE_THREAD_SAFE_OBJECTS)){
+        if((cx != null) && (cx.sharedObjects || cx.hasFeature(Context.FEATURE_THREAD_SAFE_OBJECTS))){
             return new ThreadSafeSlotMapContainer(initialSize);
         }
-        return new SlotMapContainer(initialSize);
+        return new SlotMapContainer(initialSize, (cx != null) && cx.hasFeature(Context.FEATURE_SHAPED_OBJECTS));
     }
 
     public ScriptableObject(){
@@ -2125,9 +2125,24 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
      */
     public void sealObject(){
         if(!isSealed){
+            // Initializers define properties, which can not be done while holding
+            // the read lock of a thread-safe map, so collect them first
+            List<Slot> lazySlots = null;
             final long stamp = slotMap.readLock();
             try{
                 for(Slot slot : slotMap){
+                    if(slot.value instanceof LazilyLoadedCtor){
+                        if(lazySlots == null){
+                            lazySlots = new ArrayList<>();
+                        }
+                        lazySlots.add(slot);
+                    }
+                }
+            }finally{
+                slotMap.unlockRead(stamp);
+            }
+            if(lazySlots != null){
+                for(Slot slot : lazySlots){
                     Object value = slot.value;
                     if(value instanceof LazilyLoadedCtor){
                         LazilyLoadedCtor initializer = (LazilyLoadedCtor)value;
@@ -2138,10 +2153,9 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
                         }
                     }
                 }
-                isSealed = true;
-            }finally{
-                slotMap.unlockRead(stamp);
             }
+            isSealed = true;
+            slotMap.seal();
         }
     }
 
@@ -2155,6 +2169,31 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
         return isSealed;
     }
 
+    /**
+     * Return the layout identity of this object's own slots, or null if the
+     * current slot map does not track one.
+     * @see PropertyCache
+     */
+    final Object getShape(boolean create){
+        return slotMap.getShape(create);
+    }
+
+    /**
+     * Return the slot at the given position of an object with a shared shape.
+     * @see SlotMapContainer#slotAt(int)
+     */
+    final Slot slotAt(int index){
+        return slotMap.slotAt(index);
+    }
+
+    /**
+     * Return the own slot for the named property without consulting any
+     * subclass hooks, or null if there is none.
+     */
+    final Slot queryOwnSlot(String name){
+        return slotMap.query(name, 0);
+    }
+
     private void checkNotSealed(Object key, int index){
         if(!isSealed())
             return;
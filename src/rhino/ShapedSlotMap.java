@@ -0,0 +1,349 @@
+package rhino;
+
+import rhino.ScriptableObject.*;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * This class implements the SlotMap interface using shared layout descriptors ("shapes"),
+ * in the same way that hidden classes work in other JavaScript engines.
+ * <p>
+ * A Shape records the keys of an object in insertion order and is shared between all objects
+ * whose properties were added in the same order. Shapes form a tree: adding a key to an object
+ * follows (or creates) a transition from its current shape to a child shape. The object itself
+ * only keeps a reference to its shape and a compact array of Slots indexed by position, so there
+ * is no per-object hash table and no linked list. Since the shape of an object completely
+ * determines where each property lives, {@link PropertyCache} can turn a property access into
+ * an array load once it has seen the shape.
+ * <p>
+ * This map is meant for small objects. SlotMapContainer replaces it by an EmbeddedSlotMap once
+ * an object grows past {@link #MAX_SIZE} properties.
+ */
+public class ShapedSlotMap
+implements SlotMap{
+
+    /**
+     * Objects with more than this many properties are better served by a hash table
+     * of their own, and do not share anything with other objects anyway.
+     */
+    static final int MAX_SIZE = 32;
+
+    // initial slot array size for the first property
+    private static final int INITIAL_SLOT_SIZE = 4;
+
+    private Shape shape = Shape.EMPTY;
+    private Slot[] slots;
+
+    /**
+     * Layout descriptor shared by all objects with the same keys in the same order.
+     * Shapes are immutable apart from their transition table, so they may be shared
+     * between threads. Transitions only hold their target shapes weakly, so the tree
+     * only keeps the shapes, and the keys, of objects that are still alive.
+     */
+    static final class Shape{
+        static final Shape EMPTY = new Shape(null, null);
+
+        // Shapes with more children than this stop recording new transitions.
+        // The resulting shapes are private to the object that created them,
+        // which keeps objects used as dictionaries from growing the tree forever.
+        private static final int MAX_TRANSITIONS = 32;
+
+        // size from which a hash index is built instead of scanning the keys
+        private static final int LINEAR_SEARCH_SIZE = 8;
+
+        final Shape parent;
+        final int size;
+        private final Object[] keys;
+        private final int[] hashes;
+        // open addressing table of index + 1, only for large shapes
+        private final int[] table;
+
+        private volatile WeakReference<Shape>[] transitions;
+
+        private Shape(Shape parent, Object key){
+            this.parent = parent;
+            if(parent == null){
+                size = 0;
+                keys = new Object[0];
+                hashes = new int[0];
+            }else{
+                size = parent.size + 1;
+                keys = Arrays.copyOf(parent.keys, size);
+                hashes = Arrays.copyOf(parent.hashes, size);
+                keys[size - 1] = key;
+                hashes[size - 1] = key.hashCode();
+            }
+            table = size > LINEAR_SEARCH_SIZE ? buildTable() : null;
+        }
+
+        private int[] buildTable(){
+            int length = Integer.highestOneBit(size * 2 - 1) << 1;
+            int[] t = new int[length];
+            for(int i = 0; i < size; i++){
+                int pos = hashes[i] & (length - 1);
+                while(t[pos] != 0){
+                    pos = (pos + 1) & (length - 1);
+                }
+                t[pos] = i + 1;
+            }
+            return t;
+        }
+
+        /**
+         * Return the slot index of the key in objects of this shape, or -1.
+         */
+        int indexOf(Object key){
+            if(table == null){
+                // Property names coming from scripts are interned, so try identity first
+                for(int i = 0; i < size; i++){
+                    if(keys[i] == key){
+                        return i;
+                    }
+                }
+            }
+            int hash = key.hashCode();
+            if(table == null){
+                for(int i = 0; i < size; i++){
+                    if(hashes[i] == hash){
+                        Object k = keys[i];
+                        if(k == key || k.equals(key)){
+                            return i;
+                        }
+                    }
+                }
+                return -1;
+            }
+            int mask = table.length - 1;
+            for(int pos = hash & mask; ; pos = (pos + 1) & mask){
+                int entry = table[pos];
+                if(entry == 0){
+                    return -1;
+                }
+                int i = entry - 1;
+                if(hashes[i] == hash){
+                    Object k = keys[i];
+                    if(k == key || k.equals(key)){
+                        return i;
+                    }
+                }
+            }
+        }
+
+        Object keyAt(int index){
+            return keys[index];
+        }
+
+        private boolean endsWith(Object key){
+            Object k = keys[size - 1];
+            return k == key || k.equals(key);
+        }
+
+        /**
+         * Return the shared shape for objects of this shape with the key appended.
+         */
+        Shape transition(Object key){
+            WeakReference<Shape>[] ts = transitions;
+            if(ts != null){
+                for(WeakReference<Shape> t : ts){
+                    Shape shape = t.get();
+                    if(shape != null && shape.endsWith(key)){
+                        return shape;
+                    }
+                }
+            }
+            synchronized(this){
+                ts = transitions;
+                int count = 0;
+                @SuppressWarnings("unchecked")
+                WeakReference<Shape>[] grown = (WeakReference<Shape>[])new WeakReference<?>[(ts == null ? 0 : ts.length) + 1];
+                if(ts != null){
+                    // another thread may have added it meanwhile, drop the collected shapes on the way
+                    for(WeakReference<Shape> t : ts){
+                        Shape shape = t.get();
+                        if(shape != null){
+                            if(shape.endsWith(key)){
+                                return shape;
+                            }
+                            grown[count++] = t;
+                        }
+                    }
+                }
+                Shape child = new Shape(this, key);
+                if(count < MAX_TRANSITIONS){
+                    grown[count] = new WeakReference<>(child);
+                    transitions = Arrays.copyOf(grown, count + 1);
+                }else if(count < ts.length){
+                    transitions = Arrays.copyOf(grown, count);
+                }
+                return child;
+            }
+        }
+    }
+
+    private static final class Iter
+    implements Iterator<Slot>{
+        private final Slot[] slots;
+        private final int size;
+        private int next;
+
+        Iter(Slot[] slots, int size){
+            this.slots = slots;
+            this.size = size;
+        }
+
+        @Override
+        public boolean hasNext(){
+            return next < size;
+        }
+
+        @Override
+        public Slot next(){
+            if(next >= size){
+                throw new NoSuchElementException();
+            }
+            return slots[next++];
+        }
+    }
+
+    public ShapedSlotMap(){
+    }
+
+    @Override
+    public int size(){
+        return shape.size;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return shape.size == 0;
+    }
+
+    @Override
+    public Iterator<Slot> iterator(){
+        return new Iter(slots, shape.size);
+    }
+
+    /**
+     * Return the shape of this map. Unlike the shape of an EmbeddedSlotMap it is shared
+     * with all other objects with the same layout, and slots must be fetched by index.
+     * @see #slotAt(int)
+     */
+    Shape getShape(){
+        return shape;
+    }
+
+    Slot slotAt(int index){
+        return slots[index];
+    }
+
+    @Override
+    public Slot query(Object key, int index){
+        int i = shape.indexOf(key != null ? key : Integer.valueOf(index));
+        return i < 0 ? null : slots[i];
+    }
+
+    @Override
+    public Slot get(Object key, int index, SlotAccess accessType){
+        Object k = key != null ? key : Integer.valueOf(index);
+        int i = shape.indexOf(k);
+        Slot slot = i < 0 ? null : slots[i];
+        switch(accessType){
+            case QUERY:
+                return slot;
+            case MODIFY:
+            case MODIFY_CONST:
+                if(slot != null){
+                    return slot;
+                }
+                break;
+            case MODIFY_GETTER_SETTER:
+                if(slot instanceof GetterSlot){
+                    return slot;
+                }
+                break;
+            case CONVERT_ACCESSOR_TO_DATA:
+                if(!(slot instanceof GetterSlot)){
+                    return slot;
+                }
+                break;
+        }
+
+        int indexOrHash = (key != null ? key.hashCode() : index);
+        if(slot != null){
+            // Same checks as in EmbeddedSlotMap. Replacing a slot does not change
+            // the layout, so the shape stays the same.
+            Slot newSlot;
+            if(accessType == SlotAccess.MODIFY_GETTER_SETTER){
+                newSlot = new GetterSlot(key, indexOrHash, slot.getAttributes());
+            }else if(accessType == SlotAccess.CONVERT_ACCESSOR_TO_DATA){
+                newSlot = new Slot(key, indexOrHash, slot.getAttributes());
+            }else{
+                return slot;
+            }
+            newSlot.value = slot.value;
+            slots[i] = newSlot;
+            return newSlot;
+        }
+
+        Slot newSlot = (accessType == SlotAccess.MODIFY_GETTER_SETTER
+        ? new GetterSlot(key, indexOrHash, 0)
+        : new Slot(key, indexOrHash, 0));
+        if(accessType == SlotAccess.MODIFY_CONST){
+            newSlot.setAttributes(ScriptableObject.CONST);
+        }
+        append(k, newSlot);
+        return newSlot;
+    }
+
+    @Override
+    public void addSlot(Slot newSlot){
+        Object k = newSlot.name != null ? newSlot.name : Integer.valueOf(newSlot.indexOrHash);
+        append(k, newSlot);
+    }
+
+    private void append(Object key, Slot newSlot){
+        int size = shape.size;
+        if(slots == null){
+            slots = new Slot[INITIAL_SLOT_SIZE];
+        }else if(size == slots.length){
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size] = newSlot;
+        shape = shape.transition(key);
+    }
+
+    @Override
+    public void remove(Object key, int index){
+        int i = shape.indexOf(key != null ? key : Integer.valueOf(index));
+        if(i < 0){
+            return;
+        }
+        Slot slot = slots[i];
+        // non-configurable
+        if((slot.getAttributes() & ScriptableObject.PERMANENT) != 0){
+            Context cx = Context.getContext();
+            if(cx.isStrictMode()){
+                throw ScriptRuntime.typeError1("msg.delete.property.with.configurable.false", key);
+            }
+            return;
+        }
+
+        // Rebuild the layout without the key. Going through the regular transitions
+        // means that objects that lost the same key still end up sharing a shape.
+        Shape old = shape;
+        Shape rebuilt = Shape.EMPTY;
+        Slot[] newSlots = new Slot[slots.length];
+        int n = 0;
+        for(int j = 0; j < old.size; j++){
+            if(j != i){
+                rebuilt = rebuilt.transition(old.keyAt(j));
+                newSlots[n++] = slots[j];
+            }
+        }
+        // Do not compact the old array in place, iterators still walking it would skip a slot.
+        // Replacing a slot in get is fine, as it does not move the others
+        slots = newSlots;
+        shape = rebuilt;
+    }
+}
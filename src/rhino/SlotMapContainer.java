@@ -21,8 +21,17 @@ implements SlotMap{
     protected SlotMap map;
 
     SlotMapContainer(int initialSize){
+        this(initialSize, false);
+    }
+
+    /**
+     * @param shaped start out with a {@link ShapedSlotMap} if the object is small enough
+     */
+    SlotMapContainer(int initialSize, boolean shaped){
         if(initialSize > LARGE_HASH_SIZE){
             map = new HashSlotMap();
+        }else if(shaped && initialSize < ShapedSlotMap.MAX_SIZE){
+            map = new ShapedSlotMap();
         }else{
             map = new EmbeddedSlotMap();
         }
@@ -71,6 +80,36 @@ implements SlotMap{
         return map.iterator();
     }
 
+    /**
+     * Return the layout identity of the underlying map, or null if the map does not
+     * track one. Used by {@link PropertyCache} to decide whether a cached Slot is still valid.
+     * @see EmbeddedSlotMap#getShape(boolean)
+     * @see ShapedSlotMap#getShape()
+     */
+    Object getShape(boolean create){
+        if(map instanceof ShapedSlotMap){
+            return ((ShapedSlotMap)map).getShape();
+        }
+        if(map instanceof EmbeddedSlotMap){
+            return ((EmbeddedSlotMap)map).getShape(create);
+        }
+        return null;
+    }
+
+    /**
+     * Return the slot at the given position of a shaped map. Only valid while the
+     * map still has the shape the index was taken from.
+     */
+    Slot slotAt(int index){
+        return ((ShapedSlotMap)map).slotAt(index);
+    }
+
+    /**
+     * Called once the owning object is sealed, and so will mostly be read from now on.
+     */
+    void seal(){
+    }
+
     public long readLock(){
         // No locking in the default implementation
         return 0L;
@@ -83,9 +122,18 @@ implements SlotMap{
     /**
      * Before inserting a new item in the map, check and see if we need to expand from the embedded
      * map to a HashMap that is more robust against large numbers of hash collisions.
+     * Shaped maps are first moved to an embedded map once they outgrow their purpose.
      */
     protected void checkMapSize(){
-        if((map instanceof EmbeddedSlotMap) && map.size() >= LARGE_HASH_SIZE){
+        if((map instanceof ShapedSlotMap) && map.size() >= ShapedSlotMap.MAX_SIZE){
+            SlotMap newMap = new EmbeddedSlotMap();
+            for(Slot s : map){
+                s.next = null;
+                s.orderedNext = null;
+                newMap.addSlot(s);
+            }
+            map = newMap;
+        }else if((map instanceof EmbeddedSlotMap) && map.size() >= LARGE_HASH_SIZE){
             SlotMap newMap = new HashSlotMap();
             for(Slot s : map){
                 newMap.addSlot(s);
@@ -7,6 +7,23 @@ public final class Sorting{
 
     private static final Sorting sorting = new Sorting();
 
+    /**
+     * Arrays at least this long are sorted in parallel by {@link #stableSort(Object[], Comparator)},
+     * set with the <code>rhino.sort.parallel</code> system property. Zero disables it.
+     */
+    private static final int parallelThreshold;
+
+    static{
+        // ART only has parallel sorts since Android 7
+        int threshold = "Dalvik".equals(System.getProperty("java.vm.name")) ? 0 : 1 << 16;
+        try{
+            threshold = Integer.parseInt(System.getProperty("rhino.sort.parallel", String.valueOf(threshold)));
+        }catch(NumberFormatException | SecurityException e){
+            // keep the default
+        }
+        parallelThreshold = threshold;
+    }
+
     private Sorting(){
     }
 
@@ -32,6 +49,20 @@ public final class Sorting{
         }
     }
 
+    /**
+     * Sort with a stable merge sort, which keeps the order of equal elements as
+     * required since ES2019. The comparator must be consistent, so this is only
+     * used for comparators that do not call scripts. Large arrays are sorted in
+     * parallel.
+     */
+    public <T> void stableSort(T[] a, Comparator<? super T> cmp){
+        if(parallelThreshold > 0 && a.length >= parallelThreshold){
+            Arrays.parallelSort(a, cmp);
+        }else{
+            Arrays.sort(a, cmp);
+        }
+    }
+
     /*
     Hybrid sorting mechanism similar to Introsort by David Musser. Uses quicksort's
     partitioning mechanism recursively until the resulting array is small or the
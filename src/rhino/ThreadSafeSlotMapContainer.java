@@ -8,19 +8,86 @@ import java.util.concurrent.locks.*;
 /**
  * This class extends the SlotMapContainer so that we have thread-safe access to all
  * the properties of an object.
+ * <p>
+ * Once the object is sealed, reads no longer touch the lock at all. The container keeps a
+ * read-only {@link Snapshot} of the slot table next to the map, which is rebuilt under the
+ * write lock after the rare writes that still change the layout of a sealed object (such as
+ * Object.defineProperty), and read through a volatile field otherwise. This keeps a sealed
+ * scope shared by many threads from turning the lock into a point of contention.
  */
 class ThreadSafeSlotMapContainer
 extends SlotMapContainer{
 
     private final StampedLock lock = new StampedLock();
+    // null until the object is sealed
+    private volatile Snapshot snapshot;
 
+    /**
+     * Immutable open addressing table of the slots of a sealed object. It holds the same
+     * Slot objects as the map but never follows their links, so it can be read while the
+     * map is modified.
+     */
+    private static final class Snapshot{
+        // in insertion order, for iteration
+        final Slot[] slots;
+        private final Slot[] table;
+
+        Snapshot(SlotMap map){
+            int size = map.size();
+            slots = new Slot[size];
+            table = new Slot[Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1];
+            int mask = table.length - 1;
+            int n = 0;
+            for(Slot slot : map){
+                slots[n++] = slot;
+                int pos = slot.indexOrHash & mask;
+                while(table[pos] != null){
+                    pos = (pos + 1) & mask;
+                }
+                table[pos] = slot;
+            }
+        }
+
+        Slot query(Object key, int index){
+            int indexOrHash = (key != null ? key.hashCode() : index);
+            int mask = table.length - 1;
+            for(int pos = indexOrHash & mask; ; pos = (pos + 1) & mask){
+                Slot slot = table[pos];
+                if(slot == null){
+                    return null;
+                }
+                Object skey = slot.name;
+                if(indexOrHash == slot.indexOrHash &&
+                (skey == key || (key != null && key.equals(skey)))){
+                    return slot;
+                }
+            }
+        }
+    }
 
     ThreadSafeSlotMapContainer(int initialSize){
         super(initialSize);
     }
 
+    /**
+     * Switch to lock-free reads. Called once the owner is sealed.
+     */
+    @Override
+    void seal(){
+        final long stamp = lock.writeLock();
+        try{
+            snapshot = new Snapshot(map);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
     @Override
     public int size(){
+        Snapshot sealed = snapshot;
+        if(sealed != null){
+            return sealed.slots.length;
+        }
         long stamp = lock.tryOptimisticRead();
         int s = map.size();
         if(lock.validate(stamp)){
@@ -37,12 +104,20 @@ extends SlotMapContainer{
 
     @Override
     public int dirtySize(){
+        Snapshot sealed = snapshot;
+        if(sealed != null){
+            return sealed.slots.length;
+        }
         assert (lock.isReadLocked());
         return map.size();
     }
 
     @Override
     public boolean isEmpty(){
+        Snapshot sealed = snapshot;
+        if(sealed != null){
+            return sealed.slots.length == 0;
+        }
         long stamp = lock.tryOptimisticRead();
         boolean e = map.isEmpty();
         if(lock.validate(stamp)){
@@ -57,14 +132,32 @@ extends SlotMapContainer{
         }
     }
 
+    @Override
+    Object getShape(boolean create){
+        // Slots of shared objects may be replaced concurrently, so never hand them to a cache
+        return null;
+    }
+
     @Override
     public Slot get(Object key, int index, SlotAccess accessType){
+        if(accessType == SlotAccess.QUERY){
+            Snapshot sealed = snapshot;
+            if(sealed != null){
+                return sealed.query(key, index);
+            }
+        }
         final long stamp = lock.writeLock();
         try{
             if(accessType != SlotAccess.QUERY){
                 checkMapSize();
             }
-            return map.get(key, index, accessType);
+            Slot slot = map.get(key, index, accessType);
+            Snapshot sealed = snapshot;
+            if(sealed != null && sealed.query(key, index) != slot){
+                // the slot was added or replaced
+                snapshot = new Snapshot(map);
+            }
+            return slot;
         }finally{
             lock.unlockWrite(stamp);
         }
@@ -72,6 +165,10 @@ extends SlotMapContainer{
 
     @Override
     public Slot query(Object key, int index){
+        Snapshot sealed = snapshot;
+        if(sealed != null){
+            return sealed.query(key, index);
+        }
         long stamp = lock.tryOptimisticRead();
         Slot s = map.query(key, index);
         if(lock.validate(stamp)){
@@ -92,6 +189,9 @@ extends SlotMapContainer{
         try{
             checkMapSize();
             map.addSlot(newSlot);
+            if(snapshot != null){
+                snapshot = new Snapshot(map);
+            }
         }finally{
             lock.unlockWrite(stamp);
         }
@@ -102,6 +202,9 @@ extends SlotMapContainer{
         final long stamp = lock.writeLock();
         try{
             map.remove(key, index);
+            if(snapshot != null){
+                snapshot = new Snapshot(map);
+            }
         }finally{
             lock.unlockWrite(stamp);
         }
@@ -110,9 +213,14 @@ extends SlotMapContainer{
     /**
      * Take out a read lock on the slot map, if locking is implemented. The caller MUST call
      * this method before using the iterator, and MUST NOT call this method otherwise.
+     * Sealed maps are iterated without locking, and return 0.
      */
     @Override
     public long readLock(){
+        if(snapshot != null){
+            return 0L;
+        }
+        // sealing needs the write lock, so the map can not be sealed while this is held
         return lock.readLock();
     }
 
@@ -122,11 +230,17 @@ extends SlotMapContainer{
      */
     @Override
     public void unlockRead(long stamp){
-        lock.unlockRead(stamp);
+        if(stamp != 0L){
+            lock.unlockRead(stamp);
+        }
     }
 
     @Override
     public Iterator<Slot> iterator(){
+        Snapshot sealed = snapshot;
+        if(sealed != null){
+            return Arrays.asList(sealed.slots).iterator();
+        }
         assert (lock.isReadLocked());
         return map.iterator();
     }
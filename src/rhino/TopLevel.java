@@ -152,6 +152,14 @@ public class TopLevel extends IdScriptableObject{
         return ScriptRuntime.getExistingCtor(cx, scope, typeName);
     }
 
+    /**
+     * Use the builtins cached by another top-level scope, which this scope inherits from.
+     */
+    void copyBuiltins(TopLevel other){
+        ctors = other.ctors;
+        errors = other.errors;
+    }
+
     /**
      * Static helper method to get a native error constructor with the given
      * <code>type</code> from the given <code>scope</code>. If the scope is not
@@ -8,23 +8,42 @@ package rhino.json;
 
 import rhino.*;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 /**
  * This class converts a stream of JSON tokens into a JSON value.
  * <p>
+ * The input is read in chunks, so documents can also be parsed from a
+ * {@link Reader} or a {@link ByteBuffer} without being copied into a string.
+ * With a {@link Handler} the parser reports the structure of the document
+ * instead of building it, which needs memory only for the nesting depth and the
+ * current token.
+ * <p>
  * See ECMA 15.12.
  * @author Raphael Speyer
  * @author Hannes Wallnoefer
  */
 public class JsonParser{
+    private static final int BUFFER_SIZE = 8192;
 
     private final Context cx;
     private final Scriptable scope;
 
-    private int pos;
-    private int length;
+    // allocated on first use, no larger than the input string
+    private char[] buf;
+    // next char to read and end of the chars read into buf
+    private int pos, limit;
+    // position of buf[0] in the input
+    private long offset;
+    // the input, one of them is set while parsing
     private String src;
+    private int srcPos;
+    private Reader reader;
+    private Handler handler;
+    private final StringBuilder token = new StringBuilder();
 
     public JsonParser(Context cx, Scriptable scope){
         this.cx = cx;
@@ -35,72 +54,170 @@ public class JsonParser{
         if(json == null){
             throw new ParseException("Input string may not be null");
         }
-        pos = 0;
-        length = json.length();
+        return parse(json, null, null);
+    }
+
+    /** Parse a JSON value read from the reader, which is not closed. */
+    public synchronized Object parseValue(Reader json) throws ParseException{
+        return parse(null, json, null);
+    }
+
+    /** Parse a JSON value from the UTF-8 bytes remaining in the buffer, without moving its position. */
+    public synchronized Object parseValue(ByteBuffer json) throws ParseException{
+        return parse(null, new InputStreamReader(new ByteBufferInputStream(json), StandardCharsets.UTF_8), null);
+    }
+
+    /** Report the structure of the JSON text to the handler instead of building values. */
+    public synchronized void parse(String json, Handler handler) throws ParseException{
+        if(json == null){
+            throw new ParseException("Input string may not be null");
+        }
+        parse(json, null, handler);
+    }
+
+    /** Report the structure of the JSON text read from the reader to the handler instead of building values. */
+    public synchronized void parse(Reader json, Handler handler) throws ParseException{
+        parse(null, json, handler);
+    }
+
+    /** Report the structure of the JSON text in the UTF-8 bytes remaining in the buffer to the handler. */
+    public synchronized void parse(ByteBuffer json, Handler handler) throws ParseException{
+        parse(null, new InputStreamReader(new ByteBufferInputStream(json), StandardCharsets.UTF_8), handler);
+    }
+
+    private Object parse(String json, Reader input, Handler handler) throws ParseException{
         src = json;
-        Object value = readValue();
-        consumeWhitespace();
-        if(pos < length){
-            throw new ParseException("Expected end of stream at char " + pos);
+        srcPos = 0;
+        reader = input;
+        this.handler = handler;
+        pos = limit = 0;
+        offset = 0;
+        int size = json != null ? Math.min(BUFFER_SIZE, json.length()) : BUFFER_SIZE;
+        if(buf == null || buf.length < size){
+            buf = new char[size];
         }
-        return value;
+        try{
+            Object value = readValue();
+            consumeWhitespace();
+            if(peek() != -1){
+                throw new ParseException("Expected end of stream at char " + position());
+            }
+            return value;
+        }finally{
+            src = null;
+            reader = null;
+            this.handler = null;
+        }
+    }
+
+    /** Read the next chunk of input into the buffer, return false at the end of the input. */
+    private boolean fill() throws ParseException{
+        offset += limit;
+        pos = limit = 0;
+        if(src != null){
+            int n = Math.min(buf.length, src.length() - srcPos);
+            src.getChars(srcPos, srcPos + n, buf, 0);
+            srcPos += n;
+            limit = n;
+        }else if(reader != null){
+            try{
+                int n;
+                while((n = reader.read(buf, 0, buf.length)) == 0){
+                    // keep reading
+                }
+                limit = Math.max(n, 0);
+            }catch(IOException e){
+                throw new ParseException(e);
+            }
+        }
+        return limit > 0;
+    }
+
+    private int peek() throws ParseException{
+        if(pos == limit && !fill()){
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    private int next() throws ParseException{
+        if(pos == limit && !fill()){
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private long position(){
+        return offset + pos;
     }
 
     private Object readValue() throws ParseException{
         consumeWhitespace();
-        while(pos < length){
-            char c = src.charAt(pos++);
-            switch(c){
-                case '{':
-                    return readObject();
-                case '[':
-                    return readArray();
-                case 't':
-                    return readTrue();
-                case 'f':
-                    return readFalse();
-                case '"':
-                    return readString();
-                case 'n':
-                    return readNull();
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                case '0':
-                case '-':
-                    return readNumber(c);
-                default:
-                    throw new ParseException("Unexpected token: " + c);
-            }
+        int c = next();
+        switch(c){
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case 't':
+                return value(readTrue());
+            case 'f':
+                return value(readFalse());
+            case '"':
+                return value(readString());
+            case 'n':
+                return value(readNull());
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+            case '0':
+            case '-':
+                return value(readNumber((char)c));
+            case -1:
+                throw new ParseException("Empty JSON string");
+            default:
+                throw new ParseException("Unexpected token: " + (char)c);
         }
-        throw new ParseException("Empty JSON string");
+    }
+
+    private Object value(Object value){
+        if(handler != null){
+            handler.onValue(value);
+            return null;
+        }
+        return value;
     }
 
     private Object readObject() throws ParseException{
         consumeWhitespace();
-        Scriptable object = cx.newObject(scope);
+        Scriptable object = null;
+        if(handler != null){
+            handler.onObjectStart();
+        }else{
+            object = cx.newObject(scope);
+        }
         // handle empty object literal case early
-        if(pos < length && src.charAt(pos) == '}'){
+        if(peek() == '}'){
             pos += 1;
-            return object;
+            return endObject(object);
         }
         String id;
         Object value;
         boolean needsComma = false;
-        while(pos < length){
-            char c = src.charAt(pos++);
+        int c;
+        while((c = next()) != -1){
             switch(c){
                 case '}':
                     if(!needsComma){
                         throw new ParseException("Unexpected comma in object literal");
                     }
-                    return object;
+                    return endObject(object);
                 case ',':
                     if(!needsComma){
                         throw new ParseException("Unexpected comma in object literal");
@@ -113,13 +230,18 @@ public class JsonParser{
                     }
                     id = readString();
                     consume(':');
-                    value = readValue();
-
-                    long index = ScriptRuntime.indexFromString(id);
-                    if(index < 0){
-                        object.put(id, object, value);
+                    if(handler != null){
+                        handler.onKey(id);
+                        readValue();
                     }else{
-                        object.put((int)index, object, value);
+                        value = readValue();
+
+                        long index = ScriptRuntime.indexFromString(id);
+                        if(index < 0){
+                            object.put(id, object, value);
+                        }else{
+                            object.put((int)index, object, value);
+                        }
                     }
 
                     needsComma = true;
@@ -132,24 +254,34 @@ public class JsonParser{
         throw new ParseException("Unterminated object literal");
     }
 
+    private Object endObject(Scriptable object){
+        if(handler != null){
+            handler.onObjectEnd();
+        }
+        return object;
+    }
+
     private Object readArray() throws ParseException{
         consumeWhitespace();
+        if(handler != null){
+            handler.onArrayStart();
+        }
         // handle empty array literal case early
-        if(pos < length && src.charAt(pos) == ']'){
+        if(peek() == ']'){
             pos += 1;
-            return cx.newArray(scope, 0);
+            return endArray(null);
         }
-        List<Object> list = new ArrayList<>();
+        List<Object> list = handler == null ? new ArrayList<>() : null;
         boolean needsComma = false;
-        while(pos < length){
-            char c = src.charAt(pos);
+        int c;
+        while((c = peek()) != -1){
             switch(c){
                 case ']':
                     if(!needsComma){
                         throw new ParseException("Unexpected comma in array literal");
                     }
                     pos += 1;
-                    return cx.newArray(scope, list.toArray());
+                    return endArray(list);
                 case ',':
                     if(!needsComma){
                         throw new ParseException("Unexpected comma in array literal");
@@ -161,7 +293,10 @@ public class JsonParser{
                     if(needsComma){
                         throw new ParseException("Missing comma in array literal");
                     }
-                    list.add(readValue());
+                    Object value = readValue();
+                    if(list != null){
+                        list.add(value);
+                    }
                     needsComma = true;
             }
             consumeWhitespace();
@@ -169,92 +304,115 @@ public class JsonParser{
         throw new ParseException("Unterminated array literal");
     }
 
-    private String readString() throws ParseException{
-        /*
-         * Optimization: if the source contains no escaped characters, create the
-         * string directly from the source text.
-         */
-        int stringStart = pos;
-        while(pos < length){
-            char c = src.charAt(pos++);
-            if(c <= '\u001F'){
-                throw new ParseException("String contains control character");
-            }else if(c == '\\'){
-                break;
-            }else if(c == '"'){
-                return src.substring(stringStart, pos - 1);
-            }
+    private Object endArray(List<Object> list){
+        if(handler != null){
+            handler.onArrayEnd();
+            return null;
         }
+        return list == null ? cx.newArray(scope, 0) : cx.newArray(scope, list.toArray());
+    }
 
+    private String readString() throws ParseException{
         /*
-         * Slow case: string contains escaped characters.  Copy a maximal sequence
-         * of unescaped characters into a temporary buffer, then an escaped
-         * character, and repeat until the entire string is consumed.
+         * Optimization: if the string contains no escaped characters and does not
+         * cross a chunk of input, create it directly from the buffer.
          */
-        StringBuilder b = new StringBuilder();
-        while(pos < length){
-            assert src.charAt(pos - 1) == '\\';
-            b.append(src, stringStart, pos - 1);
-            if(pos >= length){
-                throw new ParseException("Unterminated string");
-            }
-            char c = src.charAt(pos++);
-            switch(c){
-                case '"':
-                    b.append('"');
-                    break;
-                case '\\':
-                    b.append('\\');
-                    break;
-                case '/':
-                    b.append('/');
-                    break;
-                case 'b':
-                    b.append('\b');
-                    break;
-                case 'f':
-                    b.append('\f');
-                    break;
-                case 'n':
-                    b.append('\n');
-                    break;
-                case 'r':
-                    b.append('\r');
-                    break;
-                case 't':
-                    b.append('\t');
-                    break;
-                case 'u':
-                    if(length - pos < 5){
-                        throw new ParseException("Invalid character code: \\u" + src.substring(pos));
-                    }
-                    int code = fromHex(src.charAt(pos + 0)) << 12
-                    | fromHex(src.charAt(pos + 1)) << 8
-                    | fromHex(src.charAt(pos + 2)) << 4
-                    | fromHex(src.charAt(pos + 3));
-                    if(code < 0){
-                        throw new ParseException("Invalid character code: " + src.substring(pos, pos + 4));
-                    }
-                    pos += 4;
-                    b.append((char)code);
-                    break;
-                default:
-                    throw new ParseException("Unexpected character in string: '\\" + c + "'");
-            }
-            stringStart = pos;
-            while(pos < length){
-                c = src.charAt(pos++);
+        StringBuilder b = null;
+        int stringStart = pos;
+        while(true){
+            while(pos < limit){
+                char c = buf[pos++];
                 if(c <= '\u001F'){
                     throw new ParseException("String contains control character");
-                }else if(c == '\\'){
-                    break;
                 }else if(c == '"'){
-                    b.append(src, stringStart, pos - 1);
+                    if(b == null){
+                        return new String(buf, stringStart, pos - 1 - stringStart);
+                    }
+                    b.append(buf, stringStart, pos - 1 - stringStart);
                     return b.toString();
+                }else if(c == '\\'){
+                    /*
+                     * Slow case: string contains escaped characters.  Copy the
+                     * unescaped characters before it into a temporary buffer,
+                     * then the escaped character, and repeat until the entire
+                     * string is consumed.
+                     */
+                    if(b == null){
+                        b = token;
+                        b.setLength(0);
+                    }
+                    b.append(buf, stringStart, pos - 1 - stringStart);
+                    readEscape(b);
+                    stringStart = pos;
                 }
             }
+            if(b == null){
+                b = token;
+                b.setLength(0);
+            }
+            b.append(buf, stringStart, pos - stringStart);
+            if(!fill()){
+                throw new ParseException("Unterminated string literal");
+            }
+            stringStart = pos;
+        }
+    }
+
+    private void readEscape(StringBuilder b) throws ParseException{
+        int c = next();
+        switch(c){
+            case '"':
+                b.append('"');
+                break;
+            case '\\':
+                b.append('\\');
+                break;
+            case '/':
+                b.append('/');
+                break;
+            case 'b':
+                b.append('\b');
+                break;
+            case 'f':
+                b.append('\f');
+                break;
+            case 'n':
+                b.append('\n');
+                break;
+            case 'r':
+                b.append('\r');
+                break;
+            case 't':
+                b.append('\t');
+                break;
+            case 'u':
+                char[] hex = new char[4];
+                boolean valid = true;
+                int code = 0;
+                for(int i = 0; i < 4; i++){
+                    int h = next();
+                    if(h == -1){
+                        throw new ParseException("Invalid character code: \\u" + new String(hex, 0, i));
+                    }
+                    hex[i] = (char)h;
+                    int digit = fromHex((char)h);
+                    valid &= digit >= 0;
+                    code = code << 4 | digit;
+                }
+                if(peek() == -1){
+                    // like a missing digit, the escape can't end the input
+                    throw new ParseException("Invalid character code: \\u" + new String(hex));
+                }
+                if(!valid){
+                    throw new ParseException("Invalid character code: " + new String(hex));
+                }
+                b.append((char)code);
+                break;
+            case -1:
+                throw new ParseException("Unterminated string literal");
+            default:
+                throw new ParseException("Unexpected character in string: '\\" + (char)c + "'");
         }
-        throw new ParseException("Unterminated string literal");
     }
 
     private int fromHex(char c){
@@ -266,45 +424,59 @@ public class JsonParser{
 
     private Number readNumber(char c) throws ParseException{
         assert c == '-' || (c >= '0' && c <= '9');
-        final int numberStart = pos - 1;
+        StringBuilder num = token;
+        num.setLength(0);
+        num.append(c);
         if(c == '-'){
-            c = nextOrNumberError(numberStart);
+            c = nextOrNumberError(num);
             if(!(c >= '0' && c <= '9')){
-                throw numberError(numberStart, pos);
+                throw numberError(num);
             }
         }
         if(c != '0'){
-            readDigits();
+            readDigits(num);
         }
+        boolean integral = true;
         // read optional fraction part
-        if(pos < length){
-            c = src.charAt(pos);
-            if(c == '.'){
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if(!(c >= '0' && c <= '9')){
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        if(peek() == '.'){
+            integral = false;
+            pos += 1;
+            num.append('.');
+            c = nextOrNumberError(num);
+            if(!(c >= '0' && c <= '9')){
+                throw numberError(num);
             }
+            readDigits(num);
         }
         // read optional exponent part
-        if(pos < length){
-            c = src.charAt(pos);
-            if(c == 'e' || c == 'E'){
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if(c == '-' || c == '+'){
-                    c = nextOrNumberError(numberStart);
-                }
-                if(!(c >= '0' && c <= '9')){
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        c = (char)peek();
+        if(c == 'e' || c == 'E'){
+            integral = false;
+            pos += 1;
+            num.append(c);
+            c = nextOrNumberError(num);
+            if(c == '-' || c == '+'){
+                c = nextOrNumberError(num);
             }
+            if(!(c >= '0' && c <= '9')){
+                throw numberError(num);
+            }
+            readDigits(num);
         }
-        String num = src.substring(numberStart, pos);
-        final double dval = Double.parseDouble(num);
+        if(integral && num.length() < 10){
+            // fits an int, -0 is left to parseDouble
+            boolean negative = num.charAt(0) == '-';
+            int ival = 0;
+            for(int i = negative ? 1 : 0; i < num.length(); i++){
+                ival = ival * 10 + num.charAt(i) - '0';
+            }
+            if(!negative){
+                return ival;
+            }else if(ival != 0){
+                return -ival;
+            }
+        }
+        final double dval = Double.parseDouble(num.toString());
         final int ival = (int)dval;
         if(ival == dval){
             return ival;
@@ -312,63 +484,53 @@ public class JsonParser{
         return dval;
     }
 
-    private ParseException numberError(int start, int end){
-        return new ParseException("Unsupported number format: " + src.substring(start, end));
+    private ParseException numberError(StringBuilder num){
+        return new ParseException("Unsupported number format: " + num);
     }
 
-    private char nextOrNumberError(int numberStart) throws ParseException{
-        if(pos >= length){
-            throw numberError(numberStart, length);
+    private char nextOrNumberError(StringBuilder num) throws ParseException{
+        int c = next();
+        if(c == -1){
+            throw numberError(num);
         }
-        return src.charAt(pos++);
+        num.append((char)c);
+        return (char)c;
     }
 
-    private void readDigits(){
-        for(; pos < length; ++pos){
-            char c = src.charAt(pos);
-            if(!(c >= '0' && c <= '9')){
-                break;
+    private void readDigits(StringBuilder num) throws ParseException{
+        int c;
+        while((c = peek()) >= '0' && c <= '9'){
+            num.append((char)c);
+            pos += 1;
+        }
+    }
+
+    private void expect(String rest, char first) throws ParseException{
+        for(int i = 0; i < rest.length(); i++){
+            if(next() != rest.charAt(i)){
+                throw new ParseException("Unexpected token: " + first);
             }
         }
     }
 
     private Boolean readTrue() throws ParseException{
-        if(length - pos < 3
-        || src.charAt(pos) != 'r'
-        || src.charAt(pos + 1) != 'u'
-        || src.charAt(pos + 2) != 'e'){
-            throw new ParseException("Unexpected token: t");
-        }
-        pos += 3;
+        expect("rue", 't');
         return Boolean.TRUE;
     }
 
     private Boolean readFalse() throws ParseException{
-        if(length - pos < 4
-        || src.charAt(pos) != 'a'
-        || src.charAt(pos + 1) != 'l'
-        || src.charAt(pos + 2) != 's'
-        || src.charAt(pos + 3) != 'e'){
-            throw new ParseException("Unexpected token: f");
-        }
-        pos += 4;
+        expect("alse", 'f');
         return Boolean.FALSE;
     }
 
     private Object readNull() throws ParseException{
-        if(length - pos < 3
-        || src.charAt(pos) != 'u'
-        || src.charAt(pos + 1) != 'l'
-        || src.charAt(pos + 2) != 'l'){
-            throw new ParseException("Unexpected token: n");
-        }
-        pos += 3;
+        expect("ull", 'n');
         return null;
     }
 
-    private void consumeWhitespace(){
-        while(pos < length){
-            char c = src.charAt(pos);
+    private void consumeWhitespace() throws ParseException{
+        while(true){
+            int c = peek();
             switch(c){
                 case ' ':
                 case '\t':
@@ -384,14 +546,33 @@ public class JsonParser{
 
     private void consume(char token) throws ParseException{
         consumeWhitespace();
-        if(pos >= length){
+        int c = next();
+        if(c == -1){
             throw new ParseException("Expected " + token + " but reached end of stream");
         }
-        char c = src.charAt(pos++);
         if(c == token){
             return;
         }
-        throw new ParseException("Expected " + token + " found " + c);
+        throw new ParseException("Expected " + token + " found " + (char)c);
+    }
+
+    /**
+     * Receives the structure of a JSON document in order. Members of objects are
+     * reported as a key followed by their value, primitive values as strings,
+     * numbers, booleans or null.
+     */
+    public interface Handler{
+        void onObjectStart();
+
+        void onObjectEnd();
+
+        void onArrayStart();
+
+        void onArrayEnd();
+
+        void onKey(String key);
+
+        void onValue(Object value);
     }
 
     public static class ParseException extends Exception{
@@ -405,4 +586,26 @@ public class JsonParser{
         }
     }
 
+    private static class ByteBufferInputStream extends InputStream{
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer){
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read(){
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len){
+            if(!buffer.hasRemaining()){
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
 }
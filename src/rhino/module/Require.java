@@ -1,11 +1,13 @@
 package rhino.module;
 
 import rhino.*;
+import rhino.ast.*;
 
 import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implements the require() function as defined by
@@ -24,6 +26,10 @@ import java.util.concurrent.*;
  * In order to make the require() function available to your JavaScript
  * program, you need to invoke either {@link #install(Scriptable)} or
  * {@link #requireMain(Context, String)}.
+ * <h1>Preloading</h1>
+ * Modules are executed one at a time, and by default each is compiled when it
+ * is first required. {@link #preload(Context, Iterable)} compiles a program's
+ * modules in parallel up front, so that requiring them only executes them.
  * @author Attila Szegedi
  * @version $Id: Require.java,v 1.4 2011/04/07 20:26:11 hannes%helma.at Exp $
  */
@@ -149,6 +155,50 @@ public class Require extends BaseFunction{
         return mainExports;
     }
 
+    /**
+     * Compiles modules and the modules they require on the common
+     * {@link ForkJoinPool}, see {@link #preload(Context, Iterable, boolean, ForkJoinPool)}.
+     */
+    public void preload(Context cx, Iterable<String> moduleIds){
+        preload(cx, moduleIds, true, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compiles modules in parallel, without executing them. The compiled
+     * scripts are cached by the module script provider, so that a later
+     * require() of the modules only has to execute them. Each worker thread
+     * compiles with a Context of the factory of <code>cx</code>, using the
+     * optimization level and language version of <code>cx</code>.
+     * @param cx the current context
+     * @param moduleIds the IDs of the modules to compile
+     * @param scanDependencies if true, also compile the modules that the
+     * compiled modules require with a string literal, as in
+     * <code>require('./util')</code>. Such dependencies that are not found are
+     * skipped, since they may be required conditionally.
+     * @param pool the pool to compile on
+     * @throws JavaScriptException if one of <code>moduleIds</code> is not found
+     * @throws EvaluatorException if a module fails to compile
+     */
+    public void preload(Context cx, Iterable<String> moduleIds,
+                        boolean scanDependencies, ForkJoinPool pool){
+        Preload preload = new Preload(cx, scanDependencies);
+        List<Preload.Task> tasks = new ArrayList<>();
+        for(String id : moduleIds){
+            if(preload.seen.add(id)){
+                tasks.add(preload.new Task(id, null, null, true));
+            }
+        }
+        pool.invoke(new RecursiveAction(){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute(){
+                invokeAll(tasks);
+            }
+        });
+        preload.rethrow(cx);
+    }
+
     /**
      * Binds this instance of require() into the specified scope under the
      * property name "require".
@@ -354,6 +404,148 @@ public class Require extends BaseFunction{
         }
     }
 
+    /**
+     * Returns the IDs passed to require() as string literals in a module.
+     * The provider does not keep the AST it compiled the module from, so this
+     * parses the decompiled module a second time. It runs on the worker that
+     * compiled the module, and only when dependencies are to be scanned.
+     */
+    private static Set<String> scanRequires(Context cx, ModuleScript moduleScript){
+        Set<String> ids = new LinkedHashSet<>();
+        String source;
+        AstRoot root;
+        try{
+            source = cx.decompileScript(moduleScript.getScript(), 0);
+            CompilerEnvirons env = new CompilerEnvirons();
+            env.initFromContext(cx);
+            root = new Parser(env).parse(source, moduleScript.getUri().toString(), 1);
+        }catch(RuntimeException e){
+            // no source to scan, the dependencies are compiled on demand
+            return ids;
+        }
+        root.visit(node -> {
+            if(node instanceof FunctionCall){
+                FunctionCall call = (FunctionCall)node;
+                List<AstNode> args = call.getArguments();
+                if(call.getTarget() instanceof Name
+                && "require".equals(((Name)call.getTarget()).getIdentifier())
+                && args.size() == 1 && args.get(0) instanceof StringLiteral){
+                    ids.add(((StringLiteral)args.get(0)).getValue());
+                }
+            }
+            return true;
+        });
+        return ids;
+    }
+
+    /** State shared by the tasks of one {@link #preload} call. */
+    private final class Preload{
+        final Context caller;
+        final ContextFactory factory;
+        final int optimizationLevel;
+        final int languageVersion;
+        final boolean scanDependencies;
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        // first failure of a task, an exception or the ID of a missing module. Only
+        // reported by rethrow, as script errors must be created on the calling thread
+        final AtomicReference<Object> failure = new AtomicReference<>();
+
+        Preload(Context cx, boolean scanDependencies){
+            this.caller = cx;
+            this.factory = cx.getFactory();
+            this.optimizationLevel = cx.getOptimizationLevel();
+            this.languageVersion = cx.getLanguageVersion();
+            this.scanDependencies = scanDependencies;
+        }
+
+        void rethrow(Context cx){
+            Object f = failure.get();
+            if(f instanceof String){
+                throw ScriptRuntime.throwError(cx, nativeScope,
+                "Module \"" + f + "\" not found.");
+            }else if(f instanceof RuntimeException){
+                throw (RuntimeException)f;
+            }else if(f != null){
+                throw Context.throwAsScriptRuntimeEx((Exception)f);
+            }
+        }
+
+        final class Task extends RecursiveAction{
+            private static final long serialVersionUID = 1L;
+
+            private final String id;
+            private final URI uri;
+            private final URI base;
+            private final boolean required;
+
+            Task(String id, URI uri, URI base, boolean required){
+                this.id = id;
+                this.uri = uri;
+                this.base = base;
+                this.required = required;
+            }
+
+            @Override
+            protected void compute(){
+                if(failure.get() != null){
+                    return;
+                }
+                List<Task> dependencies = new ArrayList<>();
+                Context cx = factory.enterContext();
+                try{
+                    if(cx != caller){
+                        cx.setOptimizationLevel(optimizationLevel);
+                        cx.setLanguageVersion(languageVersion);
+                    }
+                    ModuleScript moduleScript =
+                    moduleScriptProvider.getModuleScript(cx, id, uri, base, paths);
+                    if(moduleScript == null){
+                        if(required){
+                            failure.compareAndSet(null, id);
+                        }
+                        return;
+                    }
+                    if(scanDependencies){
+                        for(String dependency : scanRequires(cx, moduleScript)){
+                            Task task = resolve(dependency, moduleScript);
+                            if(task != null && seen.add(task.id)){
+                                dependencies.add(task);
+                            }
+                        }
+                    }
+                }catch(Exception e){
+                    failure.compareAndSet(null, e);
+                    return;
+                }finally{
+                    Context.exit();
+                }
+                invokeAll(dependencies);
+            }
+
+            /** Resolves an ID required by a module the way {@link Require#call} does. */
+            private Task resolve(String id, ModuleScript from){
+                if(!id.startsWith("./") && !id.startsWith("../")){
+                    return new Task(id, null, null, false);
+                }
+                URI current = from.getUri();
+                URI base = from.getBase();
+                URI uri = current.resolve(id);
+                if(base == null){
+                    id = uri.toString();
+                }else{
+                    id = base.relativize(current).resolve(id).toString();
+                    if(id.charAt(0) == '.'){
+                        if(sandboxed){
+                            return null;
+                        }
+                        id = uri.toString();
+                    }
+                }
+                return new Task(id, uri, base, false);
+            }
+        }
+    }
+
     @Override
     public String getFunctionName(){
         return "require";
@@ -0,0 +1,230 @@
+package rhino.module.provider;
+
+import rhino.*;
+import rhino.ast.*;
+import rhino.module.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A module script provider that serves precompiled modules from a single bundle.
+ * <p>
+ * A bundle is written once with {@link #write(Context, ModuleSourceProvider, Iterable, OutputStream)},
+ * which compiles each module for the interpreter and stores it as an {@link InterpreterSnapshot}
+ * along with its URI and base URI. The bundle starts with an index of module ids, so opening it
+ * only reads the index and loading a module only decodes its snapshot from memory: there is no
+ * per-module file access, source parsing or compilation. Bundles opened from a file are memory
+ * mapped.
+ * <p>
+ * Modules are looked up by id, and by URI for modules required by absolute URI. Relative
+ * requires from a bundled module resolve against the URI it was bundled with, so they find the
+ * other modules of the bundle. Modules that are not in the bundle are not found, combine this
+ * provider with others through {@link MultiModuleScriptProvider} to fall back to loading sources.
+ * <p>
+ * Bundled modules run in the interpreter whatever the optimization level of the Context.
+ * Like snapshots, bundles are executable code and must only be loaded from trusted sources.
+ */
+public class BundleModuleScriptProvider implements ModuleScriptProvider{
+    private static final int MAGIC = 0x52484d42;
+    // bump whenever the layout below changes
+    private static final int FORMAT_VERSION = 1;
+
+    private final ByteBuffer data;
+    private final Object securityDomain;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Entry> entriesByUri = new HashMap<>();
+    private final ConcurrentHashMap<String, ModuleScript> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Open a bundle file written by {@link #write(Context, ModuleSourceProvider, Iterable, OutputStream)}.
+     * @param file the bundle
+     * @param securityDomain the security domain of the module scripts, or null
+     * @throws IOException if the file can not be read or is not a bundle written by this version of Rhino
+     */
+    public BundleModuleScriptProvider(File file, Object securityDomain) throws IOException{
+        this(map(file), securityDomain);
+    }
+
+    /**
+     * Open a bundle held in memory, for example one read from a resource.
+     * @param bundle the bundle, from its position to its limit
+     * @param securityDomain the security domain of the module scripts, or null
+     * @throws IOException if the buffer does not hold a bundle written by this version of Rhino
+     */
+    public BundleModuleScriptProvider(ByteBuffer bundle, Object securityDomain) throws IOException{
+        ByteBuffer buffer = bundle.slice();
+        this.securityDomain = securityDomain;
+        DataInputStream in = new DataInputStream(new BufferInputStream(buffer));
+        if(in.readInt() != MAGIC){
+            throw new IOException("Not a module bundle");
+        }
+        if(in.readInt() != FORMAT_VERSION){
+            throw new IOException("Module bundle was written by an incompatible version");
+        }
+        int count = in.readInt();
+        for(int i = 0; i < count; i++){
+            String id = in.readUTF();
+            String uri = in.readUTF();
+            String base = in.readUTF();
+            Entry entry = new Entry(uri, base.isEmpty() ? null : base, in.readInt(), in.readInt());
+            entries.put(id, entry);
+            entriesByUri.put(uriKey(uri), entry);
+        }
+        // the index is read unbuffered, so the snapshots start at the current position
+        data = buffer.slice();
+    }
+
+    private static ByteBuffer map(File file) throws IOException{
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Return the key of a module URI. Require resolves modules required by absolute
+     * or relative path to URIs without the extension, while sources have it.
+     */
+    private static String uriKey(String uri){
+        return uri.endsWith(".js") ? uri.substring(0, uri.length() - 3) : uri;
+    }
+
+    /** Return the ids of the modules in the bundle. */
+    public Set<String> getModuleIds(){
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    @Override
+    public ModuleScript getModuleScript(Context cx, String moduleId, URI moduleUri,
+                                        URI baseUri, Scriptable paths) throws Exception{
+        ModuleScript script = loaded.get(moduleId);
+        if(script != null){
+            return script;
+        }
+        Entry entry = entries.get(moduleId);
+        if(entry == null && moduleUri != null){
+            entry = entriesByUri.get(uriKey(moduleUri.toString()));
+        }
+        if(entry == null){
+            return null;
+        }
+        ByteBuffer snapshot = data.duplicate();
+        snapshot.position(entry.offset);
+        snapshot.limit(entry.offset + entry.length);
+        script = new ModuleScript(InterpreterSnapshot.read(cx, new BufferInputStream(snapshot), securityDomain),
+        new URI(entry.uri), entry.base == null ? null : new URI(entry.base));
+        ModuleScript other = loaded.putIfAbsent(moduleId, script);
+        return other != null ? other : script;
+    }
+
+    /**
+     * Compile modules and write them to a bundle.
+     * @param cx the Context to compile the modules with, its optimization level is ignored
+     * and left unchanged
+     * @param sources the provider of the source of the modules
+     * @param moduleIds the ids of the modules to bundle
+     * @param out the stream to write the bundle to, it is not closed
+     * @throws IOException if a module is not found or can not be read, or writing fails
+     */
+    public static void write(Context cx, ModuleSourceProvider sources, Iterable<String> moduleIds,
+                             OutputStream out) throws IOException{
+        List<String> ids = new ArrayList<>();
+        List<ModuleSource> modules = new ArrayList<>();
+        ByteArrayOutputStream snapshots = new ByteArrayOutputStream();
+        List<int[]> ranges = new ArrayList<>();
+        // snapshots can only be written for the interpreter
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+        env.setOptimizationLevel(-1);
+        for(String id : moduleIds){
+            ModuleSource source;
+            try{
+                source = sources.loadSource(id, null, null);
+            }catch(URISyntaxException e){
+                throw new IOException(e);
+            }
+            if(source == null){
+                throw new FileNotFoundException("Module \"" + id + "\" not found");
+            }
+            String text;
+            try(Reader reader = source.getReader()){
+                text = Kit.readReader(reader);
+            }
+            AstRoot ast = new Parser(env).parse(text, source.getUri().toString(), 1);
+            ScriptNode tree = new IRFactory(env).transformTree(ast);
+            Interpreter interpreter = new Interpreter();
+            Script script = interpreter.createScriptObject(
+            interpreter.compile(env, tree, tree.getEncodedSource(), false), null);
+            int offset = snapshots.size();
+            InterpreterSnapshot.write(script, snapshots);
+            ids.add(id);
+            modules.add(source);
+            ranges.add(new int[]{offset, snapshots.size() - offset});
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(ids.size());
+        for(int i = 0; i < ids.size(); i++){
+            ModuleSource source = modules.get(i);
+            data.writeUTF(ids.get(i));
+            data.writeUTF(source.getUri().toString());
+            data.writeUTF(source.getBase() == null ? "" : source.getBase().toString());
+            data.writeInt(ranges.get(i)[0]);
+            data.writeInt(ranges.get(i)[1]);
+        }
+        snapshots.writeTo(data);
+        data.flush();
+    }
+
+    private static final class Entry{
+        final String uri;
+        final String base;
+        final int offset;
+        final int length;
+
+        Entry(String uri, String base, int offset, int length){
+            this.uri = uri;
+            this.base = base;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /** Reads a buffer from its position, advancing it. */
+    private static final class BufferInputStream extends InputStream{
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(){
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len){
+            if(len == 0){
+                return 0;
+            }
+            if(!buffer.hasRemaining()){
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available(){
+            return buffer.remaining();
+        }
+    }
+}
@@ -77,12 +77,15 @@ public abstract class CachingModuleScriptProviderBase implements ModuleScriptPro
                     }
                 }
                 final URI sourceUri = moduleSource.getUri();
+                final String source = Kit.readReader(reader);
+                final long start = System.nanoTime();
                 final ModuleScript moduleScript = new ModuleScript(
-                cx.compileReader(reader, sourceUri.toString(), 1,
+                cx.compileString(source, sourceUri.toString(), 1,
                 moduleSource.getSecurityDomain()),
                 sourceUri, moduleSource.getBase());
                 putLoadedModule(moduleId, moduleScript,
-                moduleSource.getValidator());
+                moduleSource.getValidator(), source.length(),
+                System.nanoTime() - start);
                 return moduleScript;
             }
         }
@@ -98,6 +101,21 @@ public abstract class CachingModuleScriptProviderBase implements ModuleScriptPro
     protected abstract void putLoadedModule(String moduleId,
                                             ModuleScript moduleScript, Object validator);
 
+    /**
+     * Store a freshly compiled module script along with what it cost to load.
+     * The default implementation ignores the cost and calls
+     * {@link #putLoadedModule(String, ModuleScript, Object)}.
+     * @param moduleId the ID of the module
+     * @param moduleScript the module script
+     * @param validator the validator for the module's source text entity
+     * @param sourceLength the length of the module's source text in chars
+     * @param compileNanos the time spent compiling the module, in nanoseconds
+     */
+    protected void putLoadedModule(String moduleId, ModuleScript moduleScript,
+                                   Object validator, int sourceLength, long compileNanos){
+        putLoadedModule(moduleId, moduleScript, validator);
+    }
+
     /**
      * Retrieves an already loaded moduleScript stored using
      * {@link #putLoadedModule(String, ModuleScript, Object)}.
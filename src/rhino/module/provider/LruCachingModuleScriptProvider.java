@@ -0,0 +1,175 @@
+package rhino.module.provider;
+
+import rhino.*;
+import rhino.module.*;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A module script provider that uses a module source provider to load modules
+ * and caches at most a given number of loaded modules, or of source chars,
+ * evicting the least recently used modules first. An evicted module is compiled
+ * again when it is next required. Unlike {@link SoftCachingModuleScriptProvider}
+ * the size of the cache does not depend on the garbage collector, and it keeps
+ * counters that help to size it. Instances of this class are thread safe.
+ */
+public class LruCachingModuleScriptProvider extends CachingModuleScriptProviderBase{
+    private final LinkedHashMap<String, Entry> modules = new LinkedHashMap<>(16, .75f, true);
+    private final LongAdder foundCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private int maxEntries;
+    private long maxWeight;
+    private long weight;
+
+    /**
+     * Creates a new module provider with the specified module source provider.
+     * @param moduleSourceProvider provider for modules' source code
+     * @param maxEntries the maximum number of modules kept
+     * @param maxWeight the maximum total length in chars of the source of the
+     * modules kept, or {@link Long#MAX_VALUE} for no limit
+     */
+    public LruCachingModuleScriptProvider(ModuleSourceProvider moduleSourceProvider,
+                                          int maxEntries, long maxWeight){
+        super(moduleSourceProvider);
+        if(maxEntries < 0 || maxWeight < 0) throw new IllegalArgumentException("Cannot set a limit to less than 0");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public ModuleScript getModuleScript(Context cx, String moduleId,
+                                        URI uri, URI base, Scriptable paths) throws Exception{
+        ModuleScript script = super.getModuleScript(cx, moduleId, uri, base, paths);
+        if(script != null){
+            foundCount.increment();
+        }
+        return script;
+    }
+
+    @Override
+    protected CachedModuleScript getLoadedModule(String moduleId){
+        synchronized(modules){
+            Entry entry = modules.get(moduleId);
+            return entry == null ? null : entry.module;
+        }
+    }
+
+    @Override
+    protected void putLoadedModule(String moduleId, ModuleScript moduleScript,
+                                   Object validator){
+        put(moduleId, new Entry(new CachedModuleScript(moduleScript, validator), 0));
+    }
+
+    @Override
+    protected void putLoadedModule(String moduleId, ModuleScript moduleScript,
+                                   Object validator, int sourceLength, long compileNanos){
+        missCount.increment();
+        this.compileNanos.add(compileNanos);
+        put(moduleId, new Entry(new CachedModuleScript(moduleScript, validator), sourceLength));
+    }
+
+    private void put(String moduleId, Entry entry){
+        synchronized(modules){
+            Entry old = modules.put(moduleId, entry);
+            if(old != null){
+                weight -= old.weight;
+            }
+            weight += entry.weight;
+            trim();
+        }
+    }
+
+    private void trim(){
+        Iterator<Entry> it = modules.values().iterator();
+        while(it.hasNext() && (modules.size() > maxEntries || weight > maxWeight)){
+            weight -= it.next().weight;
+            it.remove();
+            evictionCount.increment();
+        }
+    }
+
+    public int getMaxEntries(){
+        synchronized(modules){
+            return maxEntries;
+        }
+    }
+
+    public long getMaxWeight(){
+        synchronized(modules){
+            return maxWeight;
+        }
+    }
+
+    /**
+     * Set the maximum number of modules and source chars kept, evicting the
+     * least recently used modules if there are more.
+     */
+    public void setLimits(int maxEntries, long maxWeight){
+        if(maxEntries < 0 || maxWeight < 0) throw new IllegalArgumentException("Cannot set a limit to less than 0");
+        synchronized(modules){
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+            trim();
+        }
+    }
+
+    /** Return the number of modules currently kept. */
+    public int size(){
+        synchronized(modules){
+            return modules.size();
+        }
+    }
+
+    /** Return the total length in chars of the source of the modules currently kept. */
+    public long getWeight(){
+        synchronized(modules){
+            return weight;
+        }
+    }
+
+    /** Return the number of module scripts that were served without compiling them. */
+    public long getHitCount(){
+        return Math.max(0, foundCount.sum() - missCount.sum());
+    }
+
+    /** Return the number of module scripts that had to be compiled. */
+    public long getMissCount(){
+        return missCount.sum();
+    }
+
+    /** Return the number of module scripts dropped to stay within the limits. */
+    public long getEvictionCount(){
+        return evictionCount.sum();
+    }
+
+    /** Return the total time spent compiling module scripts, in nanoseconds. */
+    public long getCompileTime(){
+        return compileNanos.sum();
+    }
+
+    /** Remove all modules and reset the counters. */
+    public void clear(){
+        synchronized(modules){
+            modules.clear();
+            weight = 0;
+        }
+        foundCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+        compileNanos.reset();
+    }
+
+    private static final class Entry{
+        final CachedModuleScript module;
+        final int weight;
+
+        Entry(CachedModuleScript module, int weight){
+            this.module = module;
+            this.weight = weight;
+        }
+    }
+}
@@ -91,8 +91,8 @@ class Block{
         }
 
         for(int i = paramCount; i != varCount; i++){
-            if(varTypes[i] == Optimizer.NumberType){
-                fn.setIsNumberVar(i);
+            if(varTypes[i] != Optimizer.NoType && varTypes[i] != Optimizer.AnyType){
+                fn.setVarType(i, varTypes[i]);
             }
         }
 
@@ -318,7 +318,7 @@ class Block{
 
     private static boolean assignType(int[] varTypes, int index, int type){
         int prev = varTypes[index];
-        return prev != (varTypes[index] |= type);
+        return prev != (varTypes[index] = Optimizer.unionType(prev, type));
     }
 
     private void markAnyTypeVariables(int[] varTypes){
@@ -433,30 +433,55 @@ class Block{
         the type of an expression is relatively unknown. Cases we can be sure
         about are -
             Literals,
-            Arithmetic operations - always return a Number
+            Arithmetic operations - always return a Number,
+            Bitwise operations - always return an int32 Number,
+            Comparisons - always return a Boolean
     */
     private static int findExpressionType(OptFunctionNode fn, Node n,
                                           int[] varTypes){
         switch(n.getType()){
-            case Token.NUMBER:
+            case Token.NUMBER:{
+                double d = n.getDouble();
+                // -0 is not an int32
+                return d == (int)d && (d != 0 || 1 / d > 0)
+                ? Optimizer.Int32Type : Optimizer.NumberType;
+            }
 
-            case Token.INC:
-            case Token.DEC:
-            case Token.MUL:
-            case Token.DIV:
-            case Token.MOD:
             case Token.BITOR:
             case Token.BITXOR:
             case Token.BITAND:
             case Token.BITNOT:
             case Token.LSH:
             case Token.RSH:
+                return Optimizer.Int32Type;
+
+            case Token.INC:
+            case Token.DEC:
+            case Token.MUL:
+            case Token.DIV:
+            case Token.MOD:
             case Token.URSH:
             case Token.SUB:
             case Token.POS:
             case Token.NEG:
+                // may leave the int32 range
                 return Optimizer.NumberType;
 
+            case Token.FALSE:
+            case Token.TRUE:
+            case Token.EQ:
+            case Token.NE:
+            case Token.LT:
+            case Token.LE:
+            case Token.GT:
+            case Token.GE:
+            case Token.SHEQ:
+            case Token.SHNE:
+            case Token.NOT:
+            case Token.INSTANCEOF:
+            case Token.IN:
+                return Optimizer.BooleanType;
+
             case Token.CALL:
             case Token.NEW:
             case Token.REF_CALL:
@@ -471,19 +496,6 @@ class Block{
             case Token.TYPEOF:
             case Token.TYPEOFNAME:
 
-            case Token.FALSE:
-            case Token.TRUE:
-            case Token.EQ:
-            case Token.NE:
-            case Token.LT:
-            case Token.LE:
-            case Token.GT:
-            case Token.GE:
-            case Token.SHEQ:
-            case Token.SHNE:
-            case Token.NOT:
-            case Token.INSTANCEOF:
-            case Token.IN:
             case Token.DEL_REF:
             case Token.DELPROP:
 
@@ -494,24 +506,32 @@ class Block{
             case Token.NAME:
             case Token.THIS:
                 // NYI: undefined type
-                // NYI: boolean type
                 // NYI: string type
                 return Optimizer.AnyType;
 
             case Token.GETVAR:
-                return varTypes[fn.getVarIndex(n)];// XXX: actually, we know it's not
-// number, but no type yet for that
+                return varTypes[fn.getVarIndex(n)];
 
-            case Token.ADD:
+            case Token.ADD:{
+                // if the lhs & rhs are known to be numbers, we can be sure that's
+                // the result, otherwise it could be a string. The sum of int32
+                // values or booleans is not an int32.
+                Node child = n.getFirstChild();
+                int lType = findExpressionType(fn, child, varTypes);
+                int rType = findExpressionType(fn, child.getNext(), varTypes);
+                int type = lType | rType;
+                if(type == Optimizer.NoType){
+                    return Optimizer.NoType;
+                }
+                return (type & ~Optimizer.NumberType) == 0 ? Optimizer.NumberType : Optimizer.AnyType;
+            }
 
             case Token.AND:
             case Token.OR:{
-                // if the lhs & rhs are known to be numbers, we can be sure that's
-                // the result, otherwise it could be a string.
                 Node child = n.getFirstChild();
                 int lType = findExpressionType(fn, child, varTypes);
                 int rType = findExpressionType(fn, child.getNext(), varTypes);
-                return lType | rType;    // we're not distinguishing strings yet
+                return Optimizer.unionType(lType, rType);
             }
 
             case Token.HOOK:{
@@ -519,7 +539,7 @@ class Block{
                 Node ifFalse = ifTrue.getNext();
                 int ifTrueType = findExpressionType(fn, ifTrue, varTypes);
                 int ifFalseType = findExpressionType(fn, ifFalse, varTypes);
-                return ifTrueType | ifFalseType;
+                return Optimizer.unionType(ifTrueType, ifFalseType);
             }
 
             case Token.COMMA:
@@ -2923,6 +2923,18 @@ class BodyCodegen{
                 visitIfJumpEqOp(node, child, trueLabel, falseLabel);
                 break;
 
+            case Token.GETVAR:
+                if(isBooleanVar(node)){
+                    // the variable holds either Boolean.TRUE or Boolean.FALSE
+                    visitGetVar(node);
+                    cfw.add(ByteCode.GETSTATIC, "java/lang/Boolean",
+                    "TRUE", "Ljava/lang/Boolean;");
+                    cfw.add(ByteCode.IF_ACMPEQ, trueLabel);
+                    cfw.add(ByteCode.GOTO, falseLabel);
+                    break;
+                }
+                // fallthrough
+
             default:
                 // Generate generic code for non-optimized jump
                 generateExpression(node, parent);
@@ -4515,12 +4527,12 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
 
     private void visitBitOp(Node node, int type, Node child){
         int childNumberFlag = node.getIntProp(Node.ISNUMBER_PROP, -1);
-        generateExpression(child, node);
 
         // special-case URSH; work with the target arg as a long, so
         // that we can return a 32-bit unsigned value, and call
         // toUint32 instead of toInt32.
         if(type == Token.URSH){
+            generateExpression(child, node);
             addScriptRuntimeInvoke("toUint32", "(Ljava/lang/Object;)J");
             generateExpression(child.getNext(), node);
             addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
@@ -4533,14 +4545,23 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             addDoubleWrap();
             return;
         }
+        generateIntBitOp(node, type, child);
+        cfw.add(ByteCode.I2D);
         if(childNumberFlag == -1){
+            addDoubleWrap();
+        }
+    }
+
+    /** Generate a bitwise operation other than URSH, leaving the int result on the stack. */
+    private void generateIntBitOp(Node node, int type, Node child){
+        if(node.getIntProp(Node.ISNUMBER_PROP, -1) == -1){
+            generateExpression(child, node);
             addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
             generateExpression(child.getNext(), node);
             addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
         }else{
-            addScriptRuntimeInvoke("toInt32", "(D)I");
-            generateExpression(child.getNext(), node);
-            addScriptRuntimeInvoke("toInt32", "(D)I");
+            generateInt32Operand(child, node);
+            generateInt32Operand(child.getNext(), node);
         }
         switch(type){
             case Token.BITOR:
@@ -4561,9 +4582,70 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             default:
                 throw Codegen.badTree();
         }
-        cfw.add(ByteCode.I2D);
-        if(childNumberFlag == -1){
-            addDoubleWrap();
+    }
+
+    private boolean isBooleanVar(Node node){
+        if(!hasVarsInRegs){
+            return false;
+        }
+        int varIndex = fnCurrent.getVarIndex(node);
+        return !varIsDirectCallParameter(varIndex) && fnCurrent.isBooleanVar(varIndex);
+    }
+
+    /**
+     * Tell whether the expression is generated as a double that the type flow
+     * analysis proved to be an int32, so {@link #generateInt32(Node, Node)} can
+     * produce it as an int without calling toInt32.
+     */
+    private boolean isInt32(Node node){
+        if(node.getIntProp(Node.ISNUMBER_PROP, -1) == -1){
+            return false;
+        }
+        switch(node.getType()){
+            case Token.BITOR:
+            case Token.BITXOR:
+            case Token.BITAND:
+            case Token.LSH:
+            case Token.RSH:
+                return true;
+            case Token.NUMBER:{
+                double d = node.getDouble();
+                return d == (int)d && (d != 0 || 1 / d > 0);
+            }
+            case Token.GETVAR:{
+                if(!hasVarsInRegs){
+                    return false;
+                }
+                int varIndex = fnCurrent.getVarIndex(node);
+                return !varIsDirectCallParameter(varIndex) && fnCurrent.isInt32Var(varIndex);
+            }
+        }
+        return false;
+    }
+
+    /** Generate an int for an expression accepted by {@link #isInt32(Node)}. */
+    private void generateInt32(Node node, Node parent){
+        switch(node.getType()){
+            case Token.NUMBER:
+                cfw.addPush((int)node.getDouble());
+                break;
+            case Token.GETVAR:
+                visitGetVar(node);
+                // exact, the variable only holds int32 values
+                cfw.add(ByteCode.D2I);
+                break;
+            default:
+                generateIntBitOp(node, node.getType(), node.getFirstChild());
+        }
+    }
+
+    /** Generate an operand of a numeric bitwise operation converted to an int. */
+    private void generateInt32Operand(Node node, Node parent){
+        if(isInt32(node)){
+            generateInt32(node, parent);
+        }else{
+            generateExpression(node, parent);
+            addScriptRuntimeInvoke("toInt32", "(D)I");
         }
     }
 
@@ -4629,10 +4711,32 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             cfw.add(ByteCode.GOTO, falseGOTO);
             return;
         }
-        int childNumberFlag = node.getIntProp(Node.ISNUMBER_PROP, -1);
+        int childNumberFlag = node.getIntProp(Node.NUMBER_OPERANDS_PROP, -1);
         int left_dcp_register = nodeIsDirectCallParameter(child);
         int right_dcp_register = nodeIsDirectCallParameter(rChild);
-        if(childNumberFlag != -1){
+        if(childNumberFlag == Node.BOTH && isInt32(child) && isInt32(rChild)){
+            generateInt32(child, node);
+            generateInt32(rChild, node);
+            int op;
+            switch(type){
+                case Token.LE:
+                    op = ByteCode.IF_ICMPLE;
+                    break;
+                case Token.GE:
+                    op = ByteCode.IF_ICMPGE;
+                    break;
+                case Token.LT:
+                    op = ByteCode.IF_ICMPLT;
+                    break;
+                case Token.GT:
+                    op = ByteCode.IF_ICMPGT;
+                    break;
+                default:
+                    throw Codegen.badTree();
+            }
+            cfw.add(op, trueGOTO);
+            cfw.add(ByteCode.GOTO, falseGOTO);
+        }else if(childNumberFlag != -1){
             // Force numeric context on both parameters and optimize
             // direct call case as Optimizer currently does not handle it
 
@@ -4721,8 +4825,23 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         int type = node.getType();
         Node rChild = child.getNext();
 
-        // Optimize if one of operands is null
-        if(child.getType() == Token.NULL || rChild.getType() == Token.NULL){
+        boolean isEq = type == Token.EQ || type == Token.SHEQ;
+        if(node.getIntProp(Node.NUMBER_OPERANDS_PROP, -1) != -1){
+            // both operands are numbers
+            if(isInt32(child) && isInt32(rChild)){
+                generateInt32(child, node);
+                generateInt32(rChild, node);
+                cfw.add(isEq ? ByteCode.IF_ICMPEQ : ByteCode.IF_ICMPNE, trueGOTO);
+            }else{
+                generateExpression(child, node);
+                generateExpression(rChild, node);
+                // NaN compares as -1, which is not equal
+                cfw.add(ByteCode.DCMPL);
+                cfw.add(isEq ? ByteCode.IFEQ : ByteCode.IFNE, trueGOTO);
+            }
+            cfw.add(ByteCode.GOTO, falseGOTO);
+        }else if(child.getType() == Token.NULL || rChild.getType() == Token.NULL){
+            // Optimize if one of operands is null
             // eq is symmetric in this case
             if(child.getType() == Token.NULL){
                 child = rChild;
@@ -3,6 +3,8 @@ package rhino.optimizer;
 import rhino.*;
 import rhino.ast.*;
 
+import java.util.*;
+
 public final class OptFunctionNode{
     OptFunctionNode(FunctionNode fnode){
         this.fnode = fnode;
@@ -50,22 +52,38 @@ public final class OptFunctionNode{
     }
 
     public boolean isNumberVar(int varIndex){
+        int type = getVarType(varIndex);
+        return type == Optimizer.NumberType || type == Optimizer.Int32Type;
+    }
+
+    /** Tell whether the variable is a number var that only holds int32 values. */
+    public boolean isInt32Var(int varIndex){
+        return getVarType(varIndex) == Optimizer.Int32Type;
+    }
+
+    /** Tell whether the variable only holds Boolean.TRUE or Boolean.FALSE. */
+    public boolean isBooleanVar(int varIndex){
+        return getVarType(varIndex) == Optimizer.BooleanType;
+    }
+
+    private int getVarType(int varIndex){
         varIndex -= fnode.getParamCount();
-        if(varIndex >= 0 && numberVarFlags != null){
-            return numberVarFlags[varIndex];
+        if(varIndex >= 0 && varTypes != null){
+            return varTypes[varIndex];
         }
-        return false;
+        return Optimizer.AnyType;
     }
 
-    void setIsNumberVar(int varIndex){
+    void setVarType(int varIndex, int type){
         varIndex -= fnode.getParamCount();
         // Can only be used with non-parameters
         if(varIndex < 0) Kit.codeBug();
-        if(numberVarFlags == null){
+        if(varTypes == null){
             int size = fnode.getParamAndVarCount() - fnode.getParamCount();
-            numberVarFlags = new boolean[size];
+            varTypes = new int[size];
+            Arrays.fill(varTypes, Optimizer.AnyType);
         }
-        numberVarFlags[varIndex] = true;
+        varTypes[varIndex] = type;
     }
 
     public int getVarIndex(Node n){
@@ -90,7 +108,8 @@ public final class OptFunctionNode{
 
     public final FunctionNode fnode;
 
-    private boolean[] numberVarFlags;
+    // types found by the flow analysis, see Optimizer
+    private int[] varTypes;
     private int directTargetIndex = -1;
     private boolean itsParameterNumberContext;
     boolean itsContainsCalls0;
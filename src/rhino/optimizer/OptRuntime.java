@@ -3,9 +3,9 @@ package rhino.optimizer;
 import rhino.*;
 
 public final class OptRuntime extends ScriptRuntime{
-    public static final Double zeroObj = 0.0;
-    public static final Double oneObj = 1.0;
-    public static final Double minusOneObj = -1.0;
+    public static final Double zeroObj = wrapDouble(0.0);
+    public static final Double oneObj = wrapDouble(1.0);
+    public static final Double minusOneObj = wrapDouble(-1.0);
 
     /**
      * Implement ....() call shrinking optimizer code.
@@ -76,7 +76,7 @@ public final class OptRuntime extends ScriptRuntime{
             val1 = ((Scriptable)val1).getDefaultValue(null);
         if(!(val1 instanceof CharSequence))
             return wrapDouble(toNumber(val1) + val2);
-        return new ConsString((CharSequence)val1, toString(val2));
+        return ConsString.concat((CharSequence)val1, toString(val2));
     }
 
     public static Object add(double val1, Object val2){
@@ -84,7 +84,7 @@ public final class OptRuntime extends ScriptRuntime{
             val2 = ((Scriptable)val2).getDefaultValue(null);
         if(!(val2 instanceof CharSequence))
             return wrapDouble(toNumber(val2) + val1);
-        return new ConsString(toString(val1), (CharSequence)val2);
+        return ConsString.concat(toString(val1), (CharSequence)val2);
     }
 
     public static Object elemIncrDecr(Object obj, double index,
@@ -126,19 +126,7 @@ public final class OptRuntime extends ScriptRuntime{
     }
 
     public static Double wrapDouble(double num){
-        if(num == 0.0){
-            if(1 / num > 0){
-                // +0.0
-                return zeroObj;
-            }
-        }else if(num == 1.0){
-            return oneObj;
-        }else if(num == -1.0){
-            return minusOneObj;
-        }else if(Double.isNaN(num)){
-            return NaNobj;
-        }
-        return num;
+        return ScriptRuntime.wrapDouble(num);
     }
 
     static String encodeIntArray(int[] array){
@@ -6,10 +6,20 @@ import rhino.ast.*;
 class Optimizer{
 
     static final int NoType = 0;
-    static final int NumberType = 1;
-    static final int AnyType = 3;
+    static final int Int32Type = 1;
+    static final int NumberType = 3;
+    static final int BooleanType = 4;
+    static final int AnyType = 7;
 
-    // It is assumed that (NumberType | AnyType) == AnyType
+    // It is assumed that (Int32Type | NumberType) == NumberType
+    // and (NumberType | AnyType) == (BooleanType | AnyType) == AnyType
+
+    /** Return the type of a value that has either type. */
+    static int unionType(int type1, int type2){
+        int type = type1 | type2;
+        // a number or a boolean can only be any type
+        return type == (Int32Type | BooleanType) || type == (NumberType | BooleanType) ? AnyType : type;
+    }
 
     void optimize(ScriptNode scriptOrFn){
         //  run on one function at a time for now
@@ -92,16 +102,18 @@ class Optimizer{
     }
 
     private boolean convertParameter(Node n){
-        if(inDirectCallFunction && n.getType() == Token.GETVAR){
-            int varIndex = theFunction.getVarIndex(n);
-            if(theFunction.isParameter(varIndex)){
-                n.removeProp(Node.ISNUMBER_PROP);
-                return true;
-            }
+        if(isDirectCallParameter(n)){
+            n.removeProp(Node.ISNUMBER_PROP);
+            return true;
         }
         return false;
     }
 
+    private boolean isDirectCallParameter(Node n){
+        return inDirectCallFunction && n.getType() == Token.GETVAR
+        && theFunction.isParameter(theFunction.getVarIndex(n));
+    }
+
     private int rewriteForNumberVariables(Node n, int desired){
         switch(n.getType()){
             case Token.EXPR_VOID:{
@@ -198,22 +210,22 @@ class Optimizer{
                     if(convertParameter(rChild)){
                         return NoType;
                     }else if(rType == NumberType){
-                        n.putIntProp(Node.ISNUMBER_PROP, Node.RIGHT);
+                        n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.RIGHT);
                     }
                 }else if(convertParameter(rChild)){
                     if(lType == NumberType){
-                        n.putIntProp(Node.ISNUMBER_PROP, Node.LEFT);
+                        n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.LEFT);
                     }
                 }else{
                     if(lType == NumberType){
                         if(rType == NumberType){
-                            n.putIntProp(Node.ISNUMBER_PROP, Node.BOTH);
+                            n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.BOTH);
                         }else{
-                            n.putIntProp(Node.ISNUMBER_PROP, Node.LEFT);
+                            n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.LEFT);
                         }
                     }else{
                         if(rType == NumberType){
-                            n.putIntProp(Node.ISNUMBER_PROP, Node.RIGHT);
+                            n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.RIGHT);
                         }
                     }
                 }
@@ -221,6 +233,31 @@ class Optimizer{
                 return NoType;
             }
 
+            case Token.EQ:
+            case Token.NE:
+            case Token.SHEQ:
+            case Token.SHNE:{
+                Node lChild = n.getFirstChild();
+                Node rChild = lChild.getNext();
+                int lType = rewriteForNumberVariables(lChild, NumberType);
+                int rType = rewriteForNumberVariables(rChild, NumberType);
+                if(lType == NumberType && rType == NumberType
+                && !isDirectCallParameter(lChild) && !isDirectCallParameter(rChild)){
+                    // compared as doubles, or ints when both are int32
+                    n.putIntProp(Node.NUMBER_OPERANDS_PROP, Node.BOTH);
+                    return NoType;
+                }
+                if(lType == NumberType && !convertParameter(lChild)){
+                    n.removeChild(lChild);
+                    n.addChildToFront(new Node(Token.TO_OBJECT, lChild));
+                }
+                if(rType == NumberType && !convertParameter(rChild)){
+                    n.removeChild(rChild);
+                    n.addChildToBack(new Node(Token.TO_OBJECT, rChild));
+                }
+                return NoType;
+            }
+
             case Token.ADD:{
                 Node lChild = n.getFirstChild();
                 Node rChild = lChild.getNext();
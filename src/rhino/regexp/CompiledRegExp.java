@@ -0,0 +1,735 @@
+package rhino.regexp;
+
+import rhino.*;
+import rhino.classfile.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import static rhino.regexp.NativeRegExp.*;
+
+/**
+ * Matcher generated from the program of a regular expression.
+ * <p>
+ * The program is translated to JVM methods in continuation passing style. The
+ * method for a program position matches the ops from there to the end of the
+ * pattern and returns the end of the match or -1, so alternatives and captures
+ * backtrack by returning to their caller. Quantifiers are only compiled for atoms
+ * of a single character, which are matched in a loop. Patterns with other
+ * quantified terms or with lookahead are left to the interpreter.
+ * <p>
+ * Generated classes are shared by the threads that run a pattern, each match uses
+ * a new instance for its state. This class is public only so that generated classes
+ * in other class loaders can extend it, it is not meant to be used outside of Rhino.
+ * @see Context#setRegExpCompileThreshold(int)
+ */
+public abstract class CompiledRegExp{
+    private static final String SUPER_CLASS = "rhino/regexp/CompiledRegExp";
+    private static final String METHOD_TYPE = "(I)I";
+    private static final AtomicInteger serial = new AtomicInteger();
+    // cleared when the platform can not define classes
+    private static volatile boolean supported = true;
+
+    // locals of the generated methods
+    private static final int CP = 1, START = 2, SAVED = 2, RESULT = 4, CHAR = 5;
+
+    RECharSet[] classList;
+    boolean fold;
+
+    protected String input;
+    protected int end;
+    protected long[] parens;
+    protected boolean multiline;
+
+    protected CompiledRegExp(){
+    }
+
+    /** Return a new instance of the generated class, to hold the state of one match. */
+    protected abstract CompiledRegExp create();
+
+    /** Match the pattern at the index, return the end of the match or -1. */
+    protected abstract int match(int cp);
+
+    protected final boolean isBol(int cp){
+        return cp == 0 || (multiline && isLineTerm(input.charAt(cp - 1)));
+    }
+
+    protected final boolean isEol(int cp){
+        return cp == end || (multiline && isLineTerm(input.charAt(cp)));
+    }
+
+    protected final boolean isWordBoundary(int cp){
+        return (cp == 0 || !isWord(input.charAt(cp - 1))) ^ !(cp < end && isWord(input.charAt(cp)));
+    }
+
+    protected final boolean inClass(int index, char c){
+        RECharSet charSet = classList[index];
+        return (charSet.length == 0 || c >= charSet.length
+        || (charSet.bits[c >> 3] & (1 << (c & 0x7))) == 0) ^ charSet.sense;
+    }
+
+    /** Match a string case-insensitively at the index. */
+    protected final boolean flatIMatch(int cp, String flat){
+        int length = flat.length();
+        if(cp + length > end){
+            return false;
+        }
+        for(int i = 0; i < length; i++){
+            char c1 = flat.charAt(i), c2 = input.charAt(cp + i);
+            if(c1 != c2 && upcase(c1) != upcase(c2)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Match the text of a capture at the index, return the index after it or -1. */
+    protected final int backref(int index, int cp){
+        if(parens == null || index >= parens.length){
+            return -1;
+        }
+        int start = (int)parens[index];
+        if(start == -1){
+            return cp;
+        }
+        int length = (int)(parens[index] >>> 32);
+        if(cp + length > end){
+            return -1;
+        }
+        if(fold){
+            for(int i = 0; i < length; i++){
+                char c1 = input.charAt(start + i), c2 = input.charAt(cp + i);
+                if(c1 != c2 && upcase(c1) != upcase(c2)){
+                    return -1;
+                }
+            }
+        }else if(!input.regionMatches(start, input, cp, length)){
+            return -1;
+        }
+        return cp + length;
+    }
+
+    protected static boolean isDigitChar(char c){
+        return isDigit(c);
+    }
+
+    protected static boolean isWordChar(char c){
+        return isWord(c);
+    }
+
+    protected static boolean isSpaceChar(char c){
+        return isREWhiteSpace(c);
+    }
+
+    protected static boolean isLineTermChar(char c){
+        return isLineTerm(c);
+    }
+
+    protected static char upcaseChar(char c){
+        return upcase(c);
+    }
+
+    /**
+     * Compile the program of the regular expression, return null if it uses
+     * constructs that are left to the interpreter or the platform can not define
+     * classes. Classes are defined in a loader from {@link SecurityController#createLoader},
+     * like the classes of the optimizer.
+     */
+    static CompiledRegExp compile(RECompiled re){
+        if(!supported || !canCompile(re.program)){
+            return null;
+        }
+        String className = "rhino.gen.RegExp" + serial.incrementAndGet();
+        try{
+            byte[] code = new Generator(re, className).generate();
+            // generated classes only refer to Rhino classes
+            GeneratedClassLoader loader = SecurityController.createLoader(CompiledRegExp.class.getClassLoader(), null);
+            Class<?> cl = loader.defineClass(className, code);
+            loader.linkClass(cl);
+            CompiledRegExp matcher = (CompiledRegExp)cl.getConstructor().newInstance();
+            if(re.classList != null){
+                REGlobalData gData = new REGlobalData();
+                gData.regexp = re;
+                for(RECharSet charSet : re.classList){
+                    processCharSet(gData, charSet);
+                }
+            }
+            matcher.classList = re.classList;
+            matcher.fold = (re.flags & JSREG_FOLD) != 0;
+            return matcher;
+        }catch(UnsupportedOperationException | SecurityException e){
+            // the platform does not support defining classes
+            supported = false;
+            return null;
+        }catch(ReflectiveOperationException | LinkageError | IllegalArgumentException | ClassFileWriter.ClassFileFormatException e){
+            // too large for a class file, keep interpreting the pattern
+            return null;
+        }
+    }
+
+    /** Start a match of the pattern in the input, using a new instance for the state. */
+    CompiledRegExp start(String input, int end, long[] parens, boolean multiline){
+        CompiledRegExp m = create();
+        m.classList = classList;
+        m.fold = fold;
+        m.input = input;
+        m.end = end;
+        m.parens = parens;
+        m.multiline = multiline;
+        return m;
+    }
+
+    /** Tell whether every op of the program can be compiled. */
+    private static boolean canCompile(byte[] program){
+        int pc = 0;
+        while(true){
+            byte op = program[pc++];
+            switch(op){
+                case REOP_END:
+                    return true;
+                case REOP_ASSERT:
+                case REOP_ASSERT_NOT:
+                case REOP_ASSERTTEST:
+                case REOP_ASSERTNOTTEST:
+                    return false;
+                case REOP_STAR:
+                case REOP_PLUS:
+                case REOP_OPT:
+                case REOP_QUANT:
+                case REOP_MINIMALSTAR:
+                case REOP_MINIMALPLUS:
+                case REOP_MINIMALOPT:
+                case REOP_MINIMALQUANT:{
+                    int child = childPc(program, op, pc);
+                    int childOp = program[child];
+                    if(!isSingleChar(childOp) || program[child + 1 + operandLength(childOp)] != REOP_ENDCHILD){
+                        return false;
+                    }
+                    pc = child + 1 + operandLength(childOp) + 1;
+                }
+                break;
+                default:
+                    pc += operandLength(op);
+            }
+        }
+    }
+
+    /** Return the position of the child of the quantifier at pc, which follows its op. */
+    private static int childPc(byte[] program, int op, int pc){
+        return pc + operandLength(op);
+    }
+
+    private static int operandLength(int op){
+        switch(op){
+            case REOP_BACKREF:
+            case REOP_UCFLAT1:
+            case REOP_UCFLAT1i:
+            case REOP_CLASS:
+            case REOP_NCLASS:
+            case REOP_ALT:
+            case REOP_JUMP:
+            case REOP_LPAREN:
+            case REOP_RPAREN:
+            case REOP_ASSERT:
+            case REOP_ASSERT_NOT:
+                return INDEX_LEN;
+            case REOP_FLAT:
+            case REOP_FLATi:
+                return 2 * INDEX_LEN;
+            case REOP_FLAT1:
+            case REOP_FLAT1i:
+                return 1;
+            case REOP_ALTPREREQ:
+            case REOP_ALTPREREQi:
+            case REOP_ALTPREREQ2:
+                return 3 * INDEX_LEN;
+            case REOP_STAR:
+            case REOP_PLUS:
+            case REOP_OPT:
+            case REOP_MINIMALSTAR:
+            case REOP_MINIMALPLUS:
+            case REOP_MINIMALOPT:
+                return 3 * INDEX_LEN;
+            case REOP_QUANT:
+            case REOP_MINIMALQUANT:
+                return 5 * INDEX_LEN;
+            default:
+                return 0;
+        }
+    }
+
+    /** Tell whether the op matches exactly one character. */
+    private static boolean isSingleChar(int op){
+        switch(op){
+            case REOP_DOT:
+            case REOP_DIGIT:
+            case REOP_NONDIGIT:
+            case REOP_ALNUM:
+            case REOP_NONALNUM:
+            case REOP_SPACE:
+            case REOP_NONSPACE:
+            case REOP_FLAT1:
+            case REOP_FLAT1i:
+            case REOP_UCFLAT1:
+            case REOP_UCFLAT1i:
+            case REOP_CLASS:
+            case REOP_NCLASS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final class Generator{
+        private final RECompiled re;
+        private final byte[] program;
+        private final String className;
+        private final ClassFileWriter cfw;
+        // program positions that need a method, and those generated
+        private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+        private final HashSet<Integer> methods = new HashSet<>();
+        // label returning -1 from the current method, acquired when first used
+        private int fail;
+
+        Generator(RECompiled re, String className){
+            this.re = re;
+            this.program = re.program;
+            this.className = className;
+            cfw = new ClassFileWriter(className, SUPER_CLASS, "<regexp>");
+        }
+
+        byte[] generate(){
+            cfw.setFlags((short)(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL));
+
+            cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+            cfw.addALoad(0);
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS, "<init>", "()V");
+            cfw.add(ByteCode.RETURN);
+            cfw.stopMethod((short)1);
+
+            cfw.startMethod("create", "()L" + SUPER_CLASS + ";", ClassFileWriter.ACC_PROTECTED);
+            cfw.add(ByteCode.NEW, className);
+            cfw.add(ByteCode.DUP);
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, className, "<init>", "()V");
+            cfw.add(ByteCode.ARETURN);
+            cfw.stopMethod((short)1);
+
+            cfw.startMethod("match", METHOD_TYPE, ClassFileWriter.ACC_PROTECTED);
+            cfw.addALoad(0);
+            cfw.addILoad(CP);
+            addCall(0);
+            cfw.add(ByteCode.IRETURN);
+            cfw.stopMethod((short)2);
+
+            while(!pending.isEmpty()){
+                generateMethod(pending.poll());
+            }
+            return cfw.toByteArray();
+        }
+
+        /** Call the method matching from the program position with this and cp on the stack. */
+        private void addCall(int pc){
+            if(methods.add(pc)){
+                pending.add(pc);
+            }
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, className, "m" + pc, METHOD_TYPE);
+        }
+
+        /** Return the result of matching from the program position at cp. */
+        private void addTailCall(int pc){
+            if(program[pc] == REOP_END){
+                cfw.addILoad(CP);
+            }else{
+                cfw.addALoad(0);
+                cfw.addILoad(CP);
+                addCall(pc);
+            }
+            cfw.add(ByteCode.IRETURN);
+        }
+
+        private void generateMethod(int pc){
+            cfw.startMethod("m" + pc, METHOD_TYPE, ClassFileWriter.ACC_PRIVATE);
+            fail = -1;
+            generateOps(pc);
+            if(fail != -1){
+                // unreachable code would need a stack map frame
+                cfw.markLabel(fail, (short)0);
+                cfw.add(ByteCode.ICONST_M1);
+                cfw.add(ByteCode.IRETURN);
+            }
+            cfw.stopMethod((short)(CHAR + 1));
+        }
+
+        private int fail(){
+            if(fail == -1){
+                fail = cfw.acquireLabel();
+            }
+            return fail;
+        }
+
+        /** Generate the ops from pc up to the first one that continues in another method. */
+        private void generateOps(int pc){
+            while(true){
+                byte op = program[pc++];
+                if(isSingleChar(op)){
+                    addLoadChar(fail());
+                    addCharTest(op, pc, fail());
+                    addIncrement(CP, 1);
+                    pc += operandLength(op);
+                    continue;
+                }
+                switch(op){
+                    case REOP_END:
+                        cfw.addILoad(CP);
+                        cfw.add(ByteCode.IRETURN);
+                        return;
+                    case REOP_EMPTY:
+                        break;
+                    case REOP_BOL:
+                    case REOP_EOL:
+                    case REOP_WBDRY:
+                    case REOP_WNONBDRY:
+                        cfw.addALoad(0);
+                        cfw.addILoad(CP);
+                        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS,
+                        op == REOP_BOL ? "isBol" : op == REOP_EOL ? "isEol" : "isWordBoundary", "(I)Z");
+                        cfw.add(op == REOP_WNONBDRY ? ByteCode.IFNE : ByteCode.IFEQ, fail());
+                        break;
+                    case REOP_FLAT:
+                    case REOP_FLATi:{
+                        int offset = getIndex(program, pc);
+                        int length = getIndex(program, pc + INDEX_LEN);
+                        pc += 2 * INDEX_LEN;
+                        String flat = new String(re.source, offset, length);
+                        if(op == REOP_FLAT){
+                            cfw.addALoad(0);
+                            cfw.add(ByteCode.GETFIELD, SUPER_CLASS, "input", "Ljava/lang/String;");
+                            cfw.addILoad(CP);
+                            cfw.addPush(flat);
+                            cfw.addPush(0);
+                            cfw.addPush(length);
+                            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/String", "regionMatches", "(ILjava/lang/String;II)Z");
+                        }else{
+                            cfw.addALoad(0);
+                            cfw.addILoad(CP);
+                            cfw.addPush(flat);
+                            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS, "flatIMatch", "(ILjava/lang/String;)Z");
+                        }
+                        cfw.add(ByteCode.IFEQ, fail());
+                        addIncrement(CP, length);
+                    }
+                    break;
+                    case REOP_BACKREF:
+                        cfw.addALoad(0);
+                        cfw.addPush(getIndex(program, pc));
+                        cfw.addILoad(CP);
+                        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS, "backref", "(II)I");
+                        cfw.add(ByteCode.DUP);
+                        cfw.addIStore(CP);
+                        cfw.add(ByteCode.IFLT, fail());
+                        pc += INDEX_LEN;
+                        break;
+                    case REOP_ALTPREREQ:
+                    case REOP_ALTPREREQi:
+                    case REOP_ALTPREREQ2:
+                        addPrerequisite(op, pc);
+                        generateAlternatives(pc + 2 * INDEX_LEN);
+                        return;
+                    case REOP_ALT:
+                        generateAlternatives(pc);
+                        return;
+                    case REOP_JUMP:
+                        addTailCall(pc + getIndex(program, pc));
+                        return;
+                    case REOP_LPAREN:
+                    case REOP_RPAREN:
+                        generateParen(op, getIndex(program, pc), pc + INDEX_LEN);
+                        return;
+                    case REOP_STAR:
+                    case REOP_PLUS:
+                    case REOP_OPT:
+                    case REOP_QUANT:
+                    case REOP_MINIMALSTAR:
+                    case REOP_MINIMALPLUS:
+                    case REOP_MINIMALOPT:
+                    case REOP_MINIMALQUANT:
+                        generateQuantifier(op, pc);
+                        return;
+                    default:
+                        throw Kit.codeBug("unexpected regexp op " + op);
+                }
+            }
+        }
+
+        /** Load the character at cp into CHAR, or go to the label at the end of the input. */
+        private void addLoadChar(int miss){
+            cfw.addILoad(CP);
+            cfw.addALoad(0);
+            cfw.add(ByteCode.GETFIELD, SUPER_CLASS, "end", "I");
+            cfw.add(ByteCode.IF_ICMPGE, miss);
+            cfw.addALoad(0);
+            cfw.add(ByteCode.GETFIELD, SUPER_CLASS, "input", "Ljava/lang/String;");
+            cfw.addILoad(CP);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C");
+            cfw.addIStore(CHAR);
+        }
+
+        /** Go to the label if the single character op with operands at pc does not match CHAR. */
+        private void addCharTest(int op, int pc, int miss){
+            switch(op){
+                case REOP_DOT:
+                    addCharPredicate("isLineTermChar", ByteCode.IFNE, miss);
+                    break;
+                case REOP_DIGIT:
+                case REOP_NONDIGIT:
+                    addCharPredicate("isDigitChar", op == REOP_DIGIT ? ByteCode.IFEQ : ByteCode.IFNE, miss);
+                    break;
+                case REOP_ALNUM:
+                case REOP_NONALNUM:
+                    addCharPredicate("isWordChar", op == REOP_ALNUM ? ByteCode.IFEQ : ByteCode.IFNE, miss);
+                    break;
+                case REOP_SPACE:
+                case REOP_NONSPACE:
+                    addCharPredicate("isSpaceChar", op == REOP_SPACE ? ByteCode.IFEQ : ByteCode.IFNE, miss);
+                    break;
+                case REOP_FLAT1:
+                case REOP_UCFLAT1:
+                    cfw.addILoad(CHAR);
+                    cfw.addPush(op == REOP_FLAT1 ? program[pc] & 0xFF : getIndex(program, pc));
+                    cfw.add(ByteCode.IF_ICMPNE, miss);
+                    break;
+                case REOP_FLAT1i:
+                case REOP_UCFLAT1i:{
+                    char c = (char)(op == REOP_FLAT1i ? program[pc] & 0xFF : getIndex(program, pc));
+                    int matched = cfw.acquireLabel();
+                    cfw.addILoad(CHAR);
+                    cfw.addPush(c);
+                    cfw.add(ByteCode.IF_ICMPEQ, matched);
+                    cfw.addILoad(CHAR);
+                    cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS, "upcaseChar", "(C)C");
+                    cfw.addPush(upcase(c));
+                    cfw.add(ByteCode.IF_ICMPNE, miss);
+                    cfw.markLabel(matched);
+                }
+                break;
+                case REOP_CLASS:
+                case REOP_NCLASS:
+                    cfw.addALoad(0);
+                    cfw.addPush(getIndex(program, pc));
+                    cfw.addILoad(CHAR);
+                    cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS, "inClass", "(IC)Z");
+                    cfw.add(ByteCode.IFEQ, miss);
+                    break;
+                default:
+                    throw Kit.codeBug();
+            }
+        }
+
+        private void addCharPredicate(String name, int jump, int miss){
+            cfw.addILoad(CHAR);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS, name, "(C)Z");
+            cfw.add(jump, miss);
+        }
+
+        /** Fail unless the character at cp can start one of the alternatives. */
+        private void addPrerequisite(int op, int pc){
+            int miss = fail();
+            char c1 = (char)getIndex(program, pc), c2 = (char)getIndex(program, pc + INDEX_LEN);
+            int matched = cfw.acquireLabel();
+            addLoadChar(miss);
+            if(op == REOP_ALTPREREQi){
+                cfw.addILoad(CHAR);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS, "upcaseChar", "(C)C");
+                cfw.addIStore(CHAR);
+            }
+            cfw.addILoad(CHAR);
+            cfw.addPush(c1);
+            cfw.add(ByteCode.IF_ICMPEQ, matched);
+            if(op == REOP_ALTPREREQ2){
+                cfw.addALoad(0);
+                cfw.addPush(c2);
+                cfw.addILoad(CHAR);
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS, "inClass", "(IC)Z");
+                cfw.add(ByteCode.IFEQ, miss);
+            }else{
+                cfw.addILoad(CHAR);
+                cfw.addPush(c2);
+                cfw.add(ByteCode.IF_ICMPNE, miss);
+            }
+            cfw.markLabel(matched);
+        }
+
+        /** Try the alternative after the offset at pc, then the one the offset points to. */
+        private void generateAlternatives(int pc){
+            int next = cfw.acquireLabel();
+            cfw.addALoad(0);
+            cfw.addILoad(CP);
+            addCall(pc + INDEX_LEN);
+            cfw.add(ByteCode.DUP);
+            cfw.add(ByteCode.IFLT, next);
+            cfw.add(ByteCode.IRETURN);
+            cfw.markLabel(next, (short)1);
+            cfw.add(ByteCode.POP);
+            addTailCall(pc + getIndex(program, pc));
+        }
+
+        /** Set the start or the end of the capture, and restore it if the rest fails. */
+        private void generateParen(int op, int index, int next){
+            int matched = cfw.acquireLabel();
+            addLoadParens(index);
+            cfw.add(ByteCode.LALOAD);
+            cfw.addLStore(SAVED);
+
+            addLoadParens(index);
+            cfw.addILoad(CP);
+            cfw.add(ByteCode.I2L);
+            if(op == REOP_RPAREN){
+                // (start, cp - start)
+                cfw.addLLoad(SAVED);
+                cfw.add(ByteCode.L2I);
+                cfw.add(ByteCode.I2L);
+                cfw.add(ByteCode.DUP2_X2);
+                cfw.add(ByteCode.LSUB);
+                cfw.addPush(32);
+                cfw.add(ByteCode.LSHL);
+                cfw.add(ByteCode.LOR);
+            }
+            cfw.add(ByteCode.LASTORE);
+
+            cfw.addALoad(0);
+            cfw.addILoad(CP);
+            addCall(next);
+            cfw.add(ByteCode.DUP);
+            cfw.addIStore(RESULT);
+            cfw.add(ByteCode.IFGE, matched);
+            addLoadParens(index);
+            cfw.addLLoad(SAVED);
+            cfw.add(ByteCode.LASTORE);
+            cfw.markLabel(matched);
+            cfw.addILoad(RESULT);
+            cfw.add(ByteCode.IRETURN);
+        }
+
+        private void addLoadParens(int index){
+            cfw.addALoad(0);
+            cfw.add(ByteCode.GETFIELD, SUPER_CLASS, "parens", "[J");
+            cfw.addPush(index);
+        }
+
+        /** Match the single character child of the quantifier in a loop and try the rest after each count. */
+        private void generateQuantifier(int op, int pc){
+            int min, max;
+            switch(op){
+                case REOP_STAR:
+                case REOP_MINIMALSTAR:
+                    min = 0;
+                    max = -1;
+                    break;
+                case REOP_PLUS:
+                case REOP_MINIMALPLUS:
+                    min = 1;
+                    max = -1;
+                    break;
+                case REOP_OPT:
+                case REOP_MINIMALOPT:
+                    min = 0;
+                    max = 1;
+                    break;
+                default:
+                    min = getIndex(program, pc);
+                    max = getIndex(program, pc + INDEX_LEN) - 1;
+            }
+            int child = childPc(program, op, pc);
+            int childOp = program[child];
+            int next = child + 1 + operandLength(childOp) + 1;
+            boolean greedy = op == REOP_STAR || op == REOP_PLUS || op == REOP_OPT || op == REOP_QUANT;
+
+            cfw.addILoad(CP);
+            cfw.addIStore(START);
+            if(greedy){
+                int loop = cfw.acquireLabel(), done = cfw.acquireLabel(), retry = cfw.acquireLabel(), back = cfw.acquireLabel();
+                cfw.markLabel(loop);
+                if(max >= 0){
+                    addCount();
+                    cfw.addPush(max);
+                    cfw.add(ByteCode.IF_ICMPGE, done);
+                }
+                addLoadChar(done);
+                addCharTest(childOp, child + 1, done);
+                addIncrement(CP, 1);
+                cfw.add(ByteCode.GOTO, loop);
+                cfw.markLabel(done);
+                if(min > 0){
+                    addCount();
+                    cfw.addPush(min);
+                    cfw.add(ByteCode.IF_ICMPLT, fail());
+                }
+                cfw.markLabel(back);
+                if(program[next] == REOP_END){
+                    cfw.addILoad(CP);
+                    cfw.add(ByteCode.IRETURN);
+                    return;
+                }
+                cfw.addALoad(0);
+                cfw.addILoad(CP);
+                addCall(next);
+                cfw.add(ByteCode.DUP);
+                cfw.addIStore(RESULT);
+                cfw.add(ByteCode.IFLT, retry);
+                cfw.addILoad(RESULT);
+                cfw.add(ByteCode.IRETURN);
+                cfw.markLabel(retry);
+                addCount();
+                cfw.addPush(min);
+                cfw.add(ByteCode.IF_ICMPLE, fail());
+                addIncrement(CP, -1);
+                cfw.add(ByteCode.GOTO, back);
+            }else{
+                int required = cfw.acquireLabel(), attempt = cfw.acquireLabel(), more = cfw.acquireLabel();
+                if(min > 0){
+                    cfw.markLabel(required);
+                    addCount();
+                    cfw.addPush(min);
+                    cfw.add(ByteCode.IF_ICMPGE, attempt);
+                    addLoadChar(fail());
+                    addCharTest(childOp, child + 1, fail());
+                    addIncrement(CP, 1);
+                    cfw.add(ByteCode.GOTO, required);
+                }
+                cfw.markLabel(attempt);
+                cfw.addALoad(0);
+                cfw.addILoad(CP);
+                addCall(next);
+                cfw.add(ByteCode.DUP);
+                cfw.addIStore(RESULT);
+                cfw.add(ByteCode.IFLT, more);
+                cfw.addILoad(RESULT);
+                cfw.add(ByteCode.IRETURN);
+                cfw.markLabel(more);
+                if(max >= 0){
+                    addCount();
+                    cfw.addPush(max);
+                    cfw.add(ByteCode.IF_ICMPGE, fail());
+                }
+                addLoadChar(fail());
+                addCharTest(childOp, child + 1, fail());
+                addIncrement(CP, 1);
+                cfw.add(ByteCode.GOTO, attempt);
+            }
+        }
+
+        /** Push the number of characters matched by the quantifier. */
+        private void addCount(){
+            cfw.addILoad(CP);
+            cfw.addILoad(START);
+            cfw.add(ByteCode.ISUB);
+        }
+
+        private void addIncrement(int local, int delta){
+            cfw.addILoad(local);
+            cfw.addPush(delta);
+            cfw.add(ByteCode.IADD);
+            cfw.addIStore(local);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package rhino.regexp;
+
+import rhino.*;
+
+import java.util.*;
+
+import static rhino.regexp.NativeRegExp.*;
+
+/**
+ * Matcher that runs the program of a regular expression as a nondeterministic
+ * automaton, in time linear in the length of the input.
+ * <p>
+ * The program is translated to a list of instructions which are simulated in lock
+ * step over the input, keeping at most one thread per instruction (a Pike VM).
+ * Threads are kept in the order a backtracking matcher would try them, so the
+ * leftmost match and its captures are the ones the interpreter finds. Quantified
+ * terms are unrolled up to their minimum and bounded counts, and an iteration that
+ * matches the empty string fails as in the interpreter.
+ * <p>
+ * Patterns with back references or lookahead can not be matched this way and are
+ * left to the interpreter.
+ * @see Context#setLinearRegExpMatching(boolean)
+ */
+final class LinearRegExp{
+    // limit on the number of instructions, which also bounds the recursion of add()
+    private static final int MAX_LENGTH = 10000;
+
+    // instructions
+    private static final byte CHAR = 0;   /* match one character, args = REOP and its operand */
+    private static final byte MATCH = 1;  /* end of the pattern */
+    private static final byte JUMP = 2;   /* continue at args */
+    private static final byte SPLIT = 3;  /* continue at args, then at args2 */
+    private static final byte SAVE = 4;   /* store the index in slot args */
+    private static final byte RESET = 5;  /* clear the captures args to args2 */
+    private static final byte ASSERT = 6; /* zero width REOP args */
+    private static final byte ENTER = 7;  /* start of an iteration of optional loop args */
+    private static final byte LEAVE = 8;  /* end of it, fails if nothing was matched since ENTER */
+
+    private final byte[] ops;
+    private final int[] args;
+    private final int[] args2;
+    private final int loopCount;
+    private final int parenCount;
+    private final RECharSet[] classList;
+    private final int anchorCh;
+    private final boolean fold;
+    private final boolean multiline;
+
+    private LinearRegExp(Builder b, RECompiled re){
+        ops = Arrays.copyOf(b.ops, b.length);
+        args = Arrays.copyOf(b.args, b.length);
+        args2 = Arrays.copyOf(b.args2, b.length);
+        loopCount = b.loopCount;
+        parenCount = re.parenCount;
+        classList = re.classList;
+        anchorCh = re.anchorCh;
+        fold = (re.flags & JSREG_FOLD) != 0;
+        multiline = (re.flags & JSREG_MULTILINE) != 0;
+    }
+
+    /**
+     * Translate the program of the regular expression, return null if it has back
+     * references or lookahead or is too large.
+     */
+    static LinearRegExp compile(RECompiled re){
+        Builder b = new Builder(re);
+        if(!b.emit(0, re.program.length)){
+            return null;
+        }
+        b.add(MATCH, 0, 0);
+        if(re.classList != null){
+            REGlobalData gData = new REGlobalData();
+            gData.regexp = re;
+            for(RECharSet charSet : re.classList){
+                processCharSet(gData, charSet);
+            }
+        }
+        return new LinearRegExp(b, re);
+    }
+
+    /**
+     * Find the first match at or after start, store its end in gData.cp, the number of
+     * characters skipped before it in gData.skipped and the captures in gData.parens.
+     */
+    boolean match(REGlobalData gData, String input, int start, int end, boolean multiline){
+        Run run = new Run(input, end, multiline || this.multiline);
+        int[] matched = run.find(start);
+        gData.multiline = run.multiline;
+        gData.parens = parenCount == 0 ? null : new long[parenCount];
+        if(matched == null){
+            return false;
+        }
+        gData.cp = matched[0];
+        gData.skipped = matched[1] - start;
+        for(int i = 0; i < parenCount; i++){
+            int s = matched[2 + 2 * i], e = matched[3 + 2 * i];
+            gData.parens[i] = s < 0 || e < 0 ? -1L : s | ((long)(e - s) << 32);
+        }
+        return true;
+    }
+
+    private static final class Builder{
+        final RECompiled re;
+        final byte[] program;
+        byte[] ops = new byte[32];
+        int[] args = new int[32];
+        int[] args2 = new int[32];
+        int length;
+        int loopCount;
+
+        Builder(RECompiled re){
+            this.re = re;
+            this.program = re.program;
+        }
+
+        int add(byte op, int arg, int arg2){
+            if(length == ops.length){
+                ops = Arrays.copyOf(ops, length * 2);
+                args = Arrays.copyOf(args, length * 2);
+                args2 = Arrays.copyOf(args2, length * 2);
+            }
+            ops[length] = op;
+            args[length] = arg;
+            args2[length] = arg2;
+            return length++;
+        }
+
+        /** Translate the ops from pc up to stop, return false if they are not supported. */
+        boolean emit(int pc, int stop){
+            while(pc < stop){
+                if(length > MAX_LENGTH){
+                    return false;
+                }
+                byte op = program[pc++];
+                switch(op){
+                    case REOP_END:
+                        return true;
+                    case REOP_EMPTY:
+                        break;
+                    case REOP_BOL:
+                    case REOP_EOL:
+                    case REOP_WBDRY:
+                    case REOP_WNONBDRY:
+                        add(ASSERT, op, 0);
+                        break;
+                    case REOP_DOT:
+                    case REOP_DIGIT:
+                    case REOP_NONDIGIT:
+                    case REOP_ALNUM:
+                    case REOP_NONALNUM:
+                    case REOP_SPACE:
+                    case REOP_NONSPACE:
+                        add(CHAR, op, 0);
+                        break;
+                    case REOP_FLAT1:
+                    case REOP_FLAT1i:
+                        add(CHAR, op, program[pc++] & 0xFF);
+                        break;
+                    case REOP_UCFLAT1:
+                    case REOP_UCFLAT1i:
+                        add(CHAR, op == REOP_UCFLAT1 ? REOP_FLAT1 : REOP_FLAT1i, getIndex(program, pc));
+                        pc += INDEX_LEN;
+                        break;
+                    case REOP_CLASS:
+                    case REOP_NCLASS:
+                        add(CHAR, REOP_CLASS, getIndex(program, pc));
+                        pc += INDEX_LEN;
+                        break;
+                    case REOP_FLAT:
+                    case REOP_FLATi:{
+                        int offset = getIndex(program, pc);
+                        int count = getIndex(program, pc + INDEX_LEN);
+                        pc += 2 * INDEX_LEN;
+                        for(int i = 0; i < count; i++){
+                            add(CHAR, op == REOP_FLAT ? REOP_FLAT1 : REOP_FLAT1i, re.source[offset + i]);
+                        }
+                    }
+                    break;
+                    case REOP_LPAREN:
+                    case REOP_RPAREN:
+                        add(SAVE, 2 + 2 * getIndex(program, pc) + (op == REOP_RPAREN ? 1 : 0), 0);
+                        pc += INDEX_LEN;
+                        break;
+                    case REOP_ALTPREREQ:
+                    case REOP_ALTPREREQi:
+                    case REOP_ALTPREREQ2:
+                        // only a shortcut for the interpreter
+                        pc += 2 * INDEX_LEN;
+                        // fall through
+                    case REOP_ALT:{
+                        // ALT <second> first JUMP <next> second JUMP <next>
+                        int second = pc + getIndex(program, pc);
+                        int firstJump = second - 1 - INDEX_LEN;
+                        int next = firstJump + 1 + getIndex(program, firstJump + 1);
+                        int split = add(SPLIT, length + 1, 0);
+                        if(!emit(pc + INDEX_LEN, firstJump)) return false;
+                        int jump = add(JUMP, 0, 0);
+                        args2[split] = length;
+                        if(!emit(second, next - 1 - INDEX_LEN)) return false;
+                        args[jump] = length;
+                        pc = next;
+                    }
+                    break;
+                    case REOP_STAR:
+                    case REOP_PLUS:
+                    case REOP_OPT:
+                    case REOP_QUANT:
+                    case REOP_MINIMALSTAR:
+                    case REOP_MINIMALPLUS:
+                    case REOP_MINIMALOPT:
+                    case REOP_MINIMALQUANT:
+                        pc = emitQuantifier(op, pc);
+                        if(pc < 0) return false;
+                        break;
+                    default:
+                        // back references and lookahead
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        /** Unroll the quantifier with operands at pc, return the pc after it or -1. */
+        private int emitQuantifier(byte op, int pc){
+            int min, max;
+            switch(op){
+                case REOP_STAR:
+                case REOP_MINIMALSTAR:
+                    min = 0;
+                    max = -1;
+                    break;
+                case REOP_PLUS:
+                case REOP_MINIMALPLUS:
+                    min = 1;
+                    max = -1;
+                    break;
+                case REOP_OPT:
+                case REOP_MINIMALOPT:
+                    min = 0;
+                    max = 1;
+                    break;
+                default:
+                    min = getIndex(program, pc);
+                    max = getIndex(program, pc + INDEX_LEN) - 1;
+                    pc += 2 * INDEX_LEN;
+            }
+            boolean greedy = op == REOP_STAR || op == REOP_PLUS || op == REOP_OPT || op == REOP_QUANT;
+            int parenCount = getIndex(program, pc);
+            int parenIndex = getIndex(program, pc + INDEX_LEN);
+            pc += 2 * INDEX_LEN;
+            int next = pc + getIndex(program, pc);
+            int child = pc + INDEX_LEN, childEnd = next - 1;
+            if(max == 0){
+                return next;
+            }
+            // a single character can not match the empty string
+            boolean mayBeEmpty = operandLength(program[child]) < 0
+            || childEnd != child + 1 + operandLength(program[child]);
+            for(int i = 0; i < min; i++){
+                if(!emitIteration(parenCount, parenIndex, child, childEnd, -1)) return -1;
+            }
+            if(max == -1){
+                int loop = add(SPLIT, 0, 0);
+                int body = length;
+                if(!emitIteration(parenCount, parenIndex, child, childEnd, mayBeEmpty ? loopCount++ : -1)) return -1;
+                add(JUMP, loop, 0);
+                setSplit(loop, body, greedy);
+            }else{
+                int[] splits = new int[max - min];
+                for(int i = 0; i < splits.length; i++){
+                    splits[i] = add(SPLIT, 0, 0);
+                    if(!emitIteration(parenCount, parenIndex, child, childEnd, mayBeEmpty ? loopCount++ : -1)) return -1;
+                }
+                for(int split : splits){
+                    setSplit(split, split + 1, greedy);
+                }
+            }
+            return next;
+        }
+
+        private boolean emitIteration(int parenCount, int parenIndex, int child, int childEnd, int loop){
+            if(length > MAX_LENGTH){
+                return false;
+            }
+            if(loop >= 0){
+                add(ENTER, loop, 0);
+            }
+            if(parenCount != 0){
+                add(RESET, 2 + 2 * parenIndex, 2 + 2 * (parenIndex + parenCount));
+            }
+            if(!emit(child, childEnd)) return false;
+            if(loop >= 0){
+                add(LEAVE, loop, 0);
+            }
+            return true;
+        }
+
+        /** Point the split at the body and at the current end, in the order of preference. */
+        private void setSplit(int split, int body, boolean greedy){
+            args[split] = greedy ? body : length;
+            args2[split] = greedy ? length : body;
+        }
+
+        /** Return the length of the operands of an op matching one character, or -1 for other ops. */
+        private static int operandLength(byte op){
+            switch(op){
+                case REOP_DOT:
+                case REOP_DIGIT:
+                case REOP_NONDIGIT:
+                case REOP_ALNUM:
+                case REOP_NONALNUM:
+                case REOP_SPACE:
+                case REOP_NONSPACE:
+                    return 0;
+                case REOP_FLAT1:
+                case REOP_FLAT1i:
+                    return 1;
+                case REOP_UCFLAT1:
+                case REOP_UCFLAT1i:
+                case REOP_CLASS:
+                case REOP_NCLASS:
+                    return INDEX_LEN;
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    /** State of one search: two lists of threads, the current and the next one. */
+    private final class Run{
+        final String input;
+        final int end;
+        final boolean multiline;
+        // per instruction, the generation of the list it was last added to
+        final int[] marks = new int[ops.length];
+        // per optional loop, how often it was entered on the path being added
+        final int[] entered = new int[loopCount];
+        int generation;
+        // the set of loops entered on the path being added, 0 for none. Inside such
+        // loops an instruction can be reached again by the next iteration, which must
+        // not be cut off, so those are marked per set and instruction.
+        int enteredSet;
+        final HashMap<Long, Integer> sets = new HashMap<>();
+        final HashSet<Long> visited = new HashSet<>();
+        int visitedGeneration;
+        int[] pcs = new int[ops.length], nextPcs = new int[ops.length];
+        int[][] caps = new int[ops.length][], nextCaps = new int[ops.length][];
+        int size, nextSize;
+
+        Run(String input, int end, boolean multiline){
+            this.input = input;
+            this.end = end;
+            this.multiline = multiline;
+        }
+
+        /** Return {end, start, capture slots...} of the first match, or null. */
+        int[] find(int start){
+            int[] matched = null;
+            int slots = 2 + 2 * parenCount;
+            for(int cp = start; ; cp++){
+                if(matched == null){
+                    if(size == 0){
+                        if(anchorCh >= 0){
+                            cp = skipToAnchor(cp);
+                            if(cp < 0) return null;
+                        }
+                        generation++;
+                    }
+                    int[] seed = new int[slots];
+                    Arrays.fill(seed, -1);
+                    seed[1] = cp;
+                    // started last, so preferred least
+                    add(false, 0, cp, seed);
+                }
+                if(size == 0){
+                    if(matched != null || cp >= end) return matched;
+                    continue;
+                }
+                generation++;
+                char c = cp < end ? input.charAt(cp) : 0;
+                for(int i = 0; i < size; i++){
+                    int pc = pcs[i];
+                    if(ops[pc] == MATCH){
+                        matched = caps[i].clone();
+                        matched[0] = cp;
+                        // threads after this one are preferred less
+                        break;
+                    }
+                    if(cp < end && test(args[pc], args2[pc], c)){
+                        add(true, pc + 1, cp + 1, caps[i]);
+                    }
+                }
+                int[] p = pcs;
+                pcs = nextPcs;
+                nextPcs = p;
+                int[][] t = caps;
+                caps = nextCaps;
+                nextCaps = t;
+                Arrays.fill(nextCaps, 0, size, null);
+                size = nextSize;
+                nextSize = 0;
+                if(cp >= end){
+                    return matched;
+                }
+            }
+        }
+
+        private int skipToAnchor(int cp){
+            for(; cp < end; cp++){
+                char c = input.charAt(cp);
+                if(c == anchorCh || (fold && upcase(c) == upcase((char)anchorCh))){
+                    return cp;
+                }
+            }
+            return -1;
+        }
+
+        /** Follow the instructions that match no characters from pc, adding the threads that wait for one. */
+        private void add(boolean next, int pc, int cp, int[] c){
+            byte op = ops[pc];
+            if(op == LEAVE && entered[args[pc]] > 0){
+                // the iteration matched the empty string, without marking so that others may pass
+                return;
+            }
+            if(enteredSet == 0 || op == CHAR || op == MATCH){
+                if(marks[pc] == generation){
+                    // a preferred thread got here first
+                    return;
+                }
+                marks[pc] = generation;
+            }else{
+                if(visitedGeneration != generation){
+                    visited.clear();
+                    visitedGeneration = generation;
+                }
+                if(!visited.add(((long)enteredSet << 32) | pc)){
+                    return;
+                }
+            }
+            switch(op){
+                case JUMP:
+                    add(next, args[pc], cp, c);
+                    break;
+                case SPLIT:
+                    add(next, args[pc], cp, c);
+                    add(next, args2[pc], cp, c);
+                    break;
+                case SAVE:
+                    c = c.clone();
+                    c[args[pc]] = cp;
+                    add(next, pc + 1, cp, c);
+                    break;
+                case RESET:
+                    c = c.clone();
+                    Arrays.fill(c, args[pc], args2[pc], -1);
+                    add(next, pc + 1, cp, c);
+                    break;
+                case ASSERT:
+                    if(assertion(args[pc], cp)){
+                        add(next, pc + 1, cp, c);
+                    }
+                    break;
+                case ENTER:{
+                    int set = enteredSet;
+                    // loops are entered from the outside in, so each set has one key
+                    Long key = ((long)set << 32) | args[pc];
+                    Integer id = sets.get(key);
+                    if(id == null){
+                        id = sets.size() + 1;
+                        sets.put(key, id);
+                    }
+                    enteredSet = id;
+                    entered[args[pc]]++;
+                    add(next, pc + 1, cp, c);
+                    entered[args[pc]]--;
+                    enteredSet = set;
+                }
+                break;
+                case LEAVE:
+                    add(next, pc + 1, cp, c);
+                    break;
+                default:
+                    if(next){
+                        nextPcs[nextSize] = pc;
+                        nextCaps[nextSize++] = c;
+                    }else{
+                        pcs[size] = pc;
+                        caps[size++] = c;
+                    }
+            }
+        }
+
+        private boolean assertion(int op, int cp){
+            switch(op){
+                case REOP_BOL:
+                    return cp == 0 || (multiline && isLineTerm(input.charAt(cp - 1)));
+                case REOP_EOL:
+                    return cp == end || (multiline && isLineTerm(input.charAt(cp)));
+                default:
+                    boolean boundary = (cp == 0 || !isWord(input.charAt(cp - 1)))
+                    ^ !(cp < end && isWord(input.charAt(cp)));
+                    return boundary == (op == REOP_WBDRY);
+            }
+        }
+    }
+
+    private boolean test(int op, int operand, char c){
+        switch(op){
+            case REOP_DOT:
+                return !isLineTerm(c);
+            case REOP_DIGIT:
+                return isDigit(c);
+            case REOP_NONDIGIT:
+                return !isDigit(c);
+            case REOP_ALNUM:
+                return isWord(c);
+            case REOP_NONALNUM:
+                return !isWord(c);
+            case REOP_SPACE:
+                return isREWhiteSpace(c);
+            case REOP_NONSPACE:
+                return !isREWhiteSpace(c);
+            case REOP_FLAT1:
+                return c == operand;
+            case REOP_FLAT1i:
+                return c == operand || upcase(c) == upcase((char)operand);
+            default:{
+                RECharSet charSet = classList[operand];
+                return (charSet.length == 0 || c >= charSet.length
+                || (charSet.bits[c >> 3] & (1 << (c & 0x7))) == 0) ^ charSet.sense;
+            }
+        }
+    }
+}
@@ -30,60 +30,60 @@ public class NativeRegExp extends IdScriptableObject implements Function{
 
     private static final boolean debug = false;
 
-    private static final byte REOP_SIMPLE_START = 1;  /* start of 'simple opcodes' */
-    private static final byte REOP_EMPTY = 1;  /* match rest of input against rest of r.e. */
-    private static final byte REOP_BOL = 2;  /* beginning of input (or line if multiline) */
-    private static final byte REOP_EOL = 3;  /* end of input (or line if multiline) */
-    private static final byte REOP_WBDRY = 4;  /* match "" at word boundary */
-    private static final byte REOP_WNONBDRY = 5;  /* match "" at word non-boundary */
-    private static final byte REOP_DOT = 6;  /* stands for any character */
-    private static final byte REOP_DIGIT = 7;  /* match a digit char: [0-9] */
-    private static final byte REOP_NONDIGIT = 8;  /* match a non-digit char: [^0-9] */
-    private static final byte REOP_ALNUM = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
-    private static final byte REOP_NONALNUM = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
-    private static final byte REOP_SPACE = 11; /* match a whitespace char */
-    private static final byte REOP_NONSPACE = 12; /* match a non-whitespace char */
-    private static final byte REOP_BACKREF = 13; /* back-reference (e.g., \1) to a parenthetical */
-    private static final byte REOP_FLAT = 14; /* match a flat string */
-    private static final byte REOP_FLAT1 = 15; /* match a single char */
-    private static final byte REOP_FLATi = 16; /* case-independent REOP_FLAT */
-    private static final byte REOP_FLAT1i = 17; /* case-independent REOP_FLAT1 */
-    private static final byte REOP_UCFLAT1 = 18; /* single Unicode char */
-    private static final byte REOP_UCFLAT1i = 19; /* case-independent REOP_UCFLAT1 */
+    static final byte REOP_SIMPLE_START = 1;  /* start of 'simple opcodes' */
+    static final byte REOP_EMPTY = 1;  /* match rest of input against rest of r.e. */
+    static final byte REOP_BOL = 2;  /* beginning of input (or line if multiline) */
+    static final byte REOP_EOL = 3;  /* end of input (or line if multiline) */
+    static final byte REOP_WBDRY = 4;  /* match "" at word boundary */
+    static final byte REOP_WNONBDRY = 5;  /* match "" at word non-boundary */
+    static final byte REOP_DOT = 6;  /* stands for any character */
+    static final byte REOP_DIGIT = 7;  /* match a digit char: [0-9] */
+    static final byte REOP_NONDIGIT = 8;  /* match a non-digit char: [^0-9] */
+    static final byte REOP_ALNUM = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
+    static final byte REOP_NONALNUM = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
+    static final byte REOP_SPACE = 11; /* match a whitespace char */
+    static final byte REOP_NONSPACE = 12; /* match a non-whitespace char */
+    static final byte REOP_BACKREF = 13; /* back-reference (e.g., \1) to a parenthetical */
+    static final byte REOP_FLAT = 14; /* match a flat string */
+    static final byte REOP_FLAT1 = 15; /* match a single char */
+    static final byte REOP_FLATi = 16; /* case-independent REOP_FLAT */
+    static final byte REOP_FLAT1i = 17; /* case-independent REOP_FLAT1 */
+    static final byte REOP_UCFLAT1 = 18; /* single Unicode char */
+    static final byte REOP_UCFLAT1i = 19; /* case-independent REOP_UCFLAT1 */
     //    private static final byte REOP_UCFLAT        = 20; /* flat Unicode string; len immediate counts chars */
 //    private static final byte REOP_UCFLATi       = 21; /* case-independent REOP_UCFLAT */
-    private static final byte REOP_CLASS = 22; /* character class with index */
-    private static final byte REOP_NCLASS = 23; /* negated character class with index */
-    private static final byte REOP_SIMPLE_END = 23; /* end of 'simple opcodes' */
-    private static final byte REOP_QUANT = 25; /* quantified atom: atom{1,2} */
-    private static final byte REOP_STAR = 26; /* zero or more occurrences of kid */
-    private static final byte REOP_PLUS = 27; /* one or more occurrences of kid */
-    private static final byte REOP_OPT = 28; /* optional subexpression in kid */
-    private static final byte REOP_LPAREN = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
-    private static final byte REOP_RPAREN = 30; /* right paren bytecode */
-    private static final byte REOP_ALT = 31; /* alternative subexpressions in kid and next */
-    private static final byte REOP_JUMP = 32; /* for deoptimized closure loops */
+    static final byte REOP_CLASS = 22; /* character class with index */
+    static final byte REOP_NCLASS = 23; /* negated character class with index */
+    static final byte REOP_SIMPLE_END = 23; /* end of 'simple opcodes' */
+    static final byte REOP_QUANT = 25; /* quantified atom: atom{1,2} */
+    static final byte REOP_STAR = 26; /* zero or more occurrences of kid */
+    static final byte REOP_PLUS = 27; /* one or more occurrences of kid */
+    static final byte REOP_OPT = 28; /* optional subexpression in kid */
+    static final byte REOP_LPAREN = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
+    static final byte REOP_RPAREN = 30; /* right paren bytecode */
+    static final byte REOP_ALT = 31; /* alternative subexpressions in kid and next */
+    static final byte REOP_JUMP = 32; /* for deoptimized closure loops */
     //    private static final byte REOP_DOTSTAR       = 33; /* optimize .* to use a single opcode */
 //    private static final byte REOP_ANCHOR        = 34; /* like .* but skips left context to unanchored r.e. */
 //    private static final byte REOP_EOLONLY       = 35; /* $ not preceded by any pattern */
 //    private static final byte REOP_BACKREFi      = 37; /* case-independent REOP_BACKREF */
 //    private static final byte REOP_LPARENNON     = 40; /* non-capturing version of REOP_LPAREN */
-    private static final byte REOP_ASSERT = 41; /* zero width positive lookahead assertion */
-    private static final byte REOP_ASSERT_NOT = 42; /* zero width negative lookahead assertion */
-    private static final byte REOP_ASSERTTEST = 43; /* sentinel at end of assertion child */
-    private static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
-    private static final byte REOP_MINIMALSTAR = 45; /* non-greedy version of * */
-    private static final byte REOP_MINIMALPLUS = 46; /* non-greedy version of + */
-    private static final byte REOP_MINIMALOPT = 47; /* non-greedy version of ? */
-    private static final byte REOP_MINIMALQUANT = 48; /* non-greedy version of {} */
-    private static final byte REOP_ENDCHILD = 49; /* sentinel at end of quantifier child */
-    private static final byte REOP_REPEAT = 51; /* directs execution of greedy quantifier */
-    private static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
-    private static final byte REOP_ALTPREREQ = 53; /* prerequisite for ALT, either of two chars */
-    private static final byte REOP_ALTPREREQi = 54; /* case-independent REOP_ALTPREREQ */
-    private static final byte REOP_ALTPREREQ2 = 55; /* prerequisite for ALT, a char or a class */
+    static final byte REOP_ASSERT = 41; /* zero width positive lookahead assertion */
+    static final byte REOP_ASSERT_NOT = 42; /* zero width negative lookahead assertion */
+    static final byte REOP_ASSERTTEST = 43; /* sentinel at end of assertion child */
+    static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
+    static final byte REOP_MINIMALSTAR = 45; /* non-greedy version of * */
+    static final byte REOP_MINIMALPLUS = 46; /* non-greedy version of + */
+    static final byte REOP_MINIMALOPT = 47; /* non-greedy version of ? */
+    static final byte REOP_MINIMALQUANT = 48; /* non-greedy version of {} */
+    static final byte REOP_ENDCHILD = 49; /* sentinel at end of quantifier child */
+    static final byte REOP_REPEAT = 51; /* directs execution of greedy quantifier */
+    static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
+    static final byte REOP_ALTPREREQ = 53; /* prerequisite for ALT, either of two chars */
+    static final byte REOP_ALTPREREQi = 54; /* case-independent REOP_ALTPREREQ */
+    static final byte REOP_ALTPREREQ2 = 55; /* prerequisite for ALT, a char or a class */
     //    private static final byte REOP_ENDALT        = 56; /* end of final alternate */
-    private static final byte REOP_END = 57;
+    static final byte REOP_END = 57;
 
     private static final int ANCHOR_BOL = -2;
 
@@ -167,7 +167,7 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         String global = args.length > 1 && args[1] != Undefined.instance
         ? ScriptRuntime.toString(args[1])
         : null;
-        this.re = compileRE(cx, s, global, false);
+        this.re = RegExpImpl.compileRE(cx, s, global, false);
         this.lastIndex = 0d;
         return this;
     }
@@ -360,7 +360,7 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         return '0' <= c && c <= '9';
     }
 
-    private static boolean isWord(char c){
+    static boolean isWord(char c){
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || isDigit(c) || c == '_';
     }
 
@@ -368,11 +368,11 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
     }
 
-    private static boolean isLineTerm(char c){
+    static boolean isLineTerm(char c){
         return ScriptRuntime.isJSLineTerminator(c);
     }
 
-    private static boolean isREWhiteSpace(int c){
+    static boolean isREWhiteSpace(int c){
         return ScriptRuntime.isJSWhitespaceOrLineTerminator(c);
     }
 
@@ -387,7 +387,7 @@ public class NativeRegExp extends IdScriptableObject implements Function{
      *    code point value is less than decimal 128, then return ch.
      * 6. Return cu.
      */
-    private static char upcase(char ch){
+    static char upcase(char ch){
         if(ch < 128){
             if('a' <= ch && ch <= 'z'){
                 return (char)(ch + ('A' - 'a'));
@@ -1161,11 +1161,11 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         return pc + 2;
     }
 
-    private static int getIndex(byte[] array, int pc){
+    static int getIndex(byte[] array, int pc){
         return ((array[pc] & 0xFF) << 8) | (array[pc + 1] & 0xFF);
     }
 
-    private static final int INDEX_LEN = 2;
+    static final int INDEX_LEN = 2;
 
     private static int
     emitREBytecode(CompilerState state, RECompiled re, int pc, RENode t){
@@ -1456,7 +1456,7 @@ public class NativeRegExp extends IdScriptableObject implements Function{
     }
 
     /* Compile the source of the class into a RECharSet */
-    private static void
+    static void
     processCharSet(REGlobalData gData, RECharSet charSet){
         synchronized(charSet){
             if(!charSet.converted){
@@ -2020,29 +2020,25 @@ public class NativeRegExp extends IdScriptableObject implements Function{
                     case REOP_MINIMALOPT:
                     case REOP_MINIMALQUANT:{
                         int min, max;
-                        boolean greedy = false;
+                        boolean greedy = op == REOP_STAR || op == REOP_PLUS
+                        || op == REOP_OPT || op == REOP_QUANT;
                         switch(op){
                             case REOP_STAR:
-                            case REOP_QUANT:
-                            case REOP_OPT:
-                            case REOP_PLUS:
-                                greedy = true;
-                                // fallthrough
                             case REOP_MINIMALSTAR:
                                 min = 0;
                                 max = -1;
                                 break;
-                            // fallthrough
+                            case REOP_PLUS:
                             case REOP_MINIMALPLUS:
                                 min = 1;
                                 max = -1;
                                 break;
-                            // fallthrough
+                            case REOP_OPT:
                             case REOP_MINIMALOPT:
                                 min = 0;
                                 max = 1;
                                 break;
-                            // fallthrough
+                            case REOP_QUANT:
                             case REOP_MINIMALQUANT:
                                 min = getOffset(program, pc);
                                 pc += INDEX_LEN;
@@ -2053,6 +2049,13 @@ public class NativeRegExp extends IdScriptableObject implements Function{
                             default:
                                 throw Kit.codeBug();
                         }
+                        if(max == 0){
+                            // {0} never runs the child
+                            pc += 2 * INDEX_LEN;  // <parencount> & <parenindex>
+                            pc = pc + getOffset(program, pc);
+                            op = program[pc++];
+                            continue;
+                        }
                         pushProgState(gData, min, max, gData.cp, null,
                         continuationOp, continuationPc);
                         if(greedy){
@@ -2268,6 +2271,10 @@ public class NativeRegExp extends IdScriptableObject implements Function{
 
         gData.multiline = multiline || (re.flags & JSREG_MULTILINE) != 0;
         gData.regexp = re;
+        CompiledRegExp compiled = re.matcher;
+        if(compiled != null){
+            compiled = compiled.start(input, end, gData.parens, gData.multiline);
+        }
 
         int anchorCh = gData.regexp.anchorCh;
         //
@@ -2299,7 +2306,16 @@ public class NativeRegExp extends IdScriptableObject implements Function{
             for(int j = 0; j < re.parenCount; j++){
                 gData.parens[j] = -1L;
             }
-            boolean result = executeREBytecode(gData, input, end);
+            boolean result;
+            if(compiled != null){
+                int matchEnd = compiled.match(i);
+                result = matchEnd >= 0;
+                if(result){
+                    gData.cp = matchEnd;
+                }
+            }else{
+                result = executeREBytecode(gData, input, end);
+            }
 
             gData.backTrackStackTop = null;
             gData.stateStackTop = null;
@@ -2315,12 +2331,25 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         return false;
     }
 
+    private static LinearRegExp linearMatcher(RECompiled re){
+        if(!re.linearChecked){
+            re.linear = LinearRegExp.compile(re);
+            re.linearChecked = true;
+        }
+        return re.linear;
+    }
+
     /*
      * indexp is assumed to be an array of length 1
      */
     Object executeRegExp(Context cx, Scriptable scope, RegExpImpl res,
                          String str, int[] indexp, int matchType){
         REGlobalData gData = new REGlobalData();
+        if(re.execCount >= 0 && cx.getRegExpCompileThreshold() > 0
+        && ++re.execCount >= cx.getRegExpCompileThreshold()){
+            re.execCount = -1;
+            re.matcher = CompiledRegExp.compile(re);
+        }
 
         int start = indexp[0];
         int end = str.length();
@@ -2329,8 +2358,13 @@ public class NativeRegExp extends IdScriptableObject implements Function{
         //
         // Call the recursive matcher to do the real work.
         //
-        boolean matches = matchRegExp(gData, re, str, start, end,
-        res.multiline);
+        boolean matches;
+        LinearRegExp linear = cx.isLinearRegExpMatching() ? linearMatcher(re) : null;
+        if(linear != null){
+            matches = linear.match(gData, str, start, end, res.multiline);
+        }else{
+            matches = matchRegExp(gData, re, str, start, end, res.multiline);
+        }
         if(!matches){
             if(matchType != PREFIX) return null;
             return Undefined.instance;
@@ -2720,20 +2754,6 @@ public class NativeRegExp extends IdScriptableObject implements Function{
 
 }       // class NativeRegExp
 
-class RECompiled{
-    final char[] source;    /* locked source string, sans // */
-    int parenCount;         /* number of parenthesized submatches */
-    int flags;              /* flags  */
-    byte[] program;         /* regular expression bytecode */
-    int classCount;         /* count [...] bitmaps */
-    RECharSet[] classList;  /* list of [...] bitmaps */
-    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
-
-    RECompiled(String str){
-        this.source = str.toCharArray();
-    }
-}
-
 class RENode{
 
     RENode(byte op){
@@ -2795,115 +2815,3 @@ class CompilerState{
     int progLength;   /* estimated bytecode length */
     RENode result;
 }
-
-class REProgState{
-    REProgState(REProgState previous, int min, int max, int index,
-                REBackTrackData backTrack,
-                int continuationOp, int continuationPc){
-        this.previous = previous;
-        this.min = min;
-        this.max = max;
-        this.index = index;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        this.backTrack = backTrack;
-    }
-
-    final REProgState previous; // previous state in stack
-
-    final int min;                      /* current quantifier min */
-    final int max;                      /* current quantifier max */
-    final int index;                    /* progress in text */
-    final int continuationOp;
-    final int continuationPc;
-    final REBackTrackData backTrack; // used by ASSERT_  to recover state
-}
-
-class REBackTrackData{
-
-    REBackTrackData(REGlobalData gData, int op, int pc, int cp,
-                    int continuationOp, int continuationPc){
-        previous = gData.backTrackStackTop;
-        this.op = op;
-        this.pc = pc;
-        this.cp = cp;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        parens = gData.parens;
-        stateStackTop = gData.stateStackTop;
-    }
-
-    final REBackTrackData previous;
-
-    final int op;                             /* operator */
-    final int pc;                             /* bytecode pointer */
-    final int cp;                             /* char buffer index */
-    final int continuationOp;                 /* continuation op */
-    final int continuationPc;                 /* continuation pc */
-    final long[] parens;                      /* parenthesis captures */
-    final REProgState stateStackTop;          /* state of op that backtracked */
-}
-
-class REGlobalData{
-    boolean multiline;
-    RECompiled regexp;              /* the RE in execution */
-    int skipped;                    /* chars skipped anchoring this r.e. */
-
-    int cp;                         /* char buffer index */
-    long[] parens;                  /* parens captures */
-
-    REProgState stateStackTop;       /* stack of state of current ancestors */
-
-    REBackTrackData backTrackStackTop;  /* last matched-so-far position */
-
-
-    /**
-     * Get start of parenthesis capture contents, -1 for empty.
-     */
-    int parensIndex(int i){
-        return (int)(parens[i]);
-    }
-
-    /**
-     * Get length of parenthesis capture contents.
-     */
-    int parensLength(int i){
-        return (int)(parens[i] >>> 32);
-    }
-
-    void setParens(int i, int index, int length){
-        // clone parens array if it is shared with backtrack state
-        if(backTrackStackTop != null && backTrackStackTop.parens == parens){
-            parens = parens.clone();
-        }
-        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
-    }
-
-}
-
-/*
- * This struct holds a bitmap representation of a class from a regexp.
- * There's a list of these referenced by the classList field in the NativeRegExp
- * struct below. The initial state has startIndex set to the offset in the
- * original regexp source of the beginning of the class contents. The first
- * use of the class converts the source representation into a bitmap.
- *
- */
-final class RECharSet{
-    RECharSet(int length, int startIndex, int strlength, boolean sense){
-        this.length = length;
-        this.startIndex = startIndex;
-        this.strlength = strlength;
-        this.sense = sense;
-    }
-
-    final int length;
-    final int startIndex;
-    final int strlength;
-    final boolean sense;
-
-    volatile transient boolean converted;
-    volatile transient byte[] bits;
-}
-
-
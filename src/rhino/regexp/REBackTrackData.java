@@ -0,0 +1,26 @@
+package rhino.regexp;
+
+class REBackTrackData{
+
+    REBackTrackData(REGlobalData gData, int op, int pc, int cp,
+                    int continuationOp, int continuationPc){
+        previous = gData.backTrackStackTop;
+        this.op = op;
+        this.pc = pc;
+        this.cp = cp;
+        this.continuationOp = continuationOp;
+        this.continuationPc = continuationPc;
+        parens = gData.parens;
+        stateStackTop = gData.stateStackTop;
+    }
+
+    final REBackTrackData previous;
+
+    final int op;                             /* operator */
+    final int pc;                             /* bytecode pointer */
+    final int cp;                             /* char buffer index */
+    final int continuationOp;                 /* continuation op */
+    final int continuationPc;                 /* continuation pc */
+    final long[] parens;                      /* parenthesis captures */
+    final REProgState stateStackTop;          /* state of op that backtracked */
+}
@@ -0,0 +1,26 @@
+package rhino.regexp;
+
+/*
+ * This struct holds a bitmap representation of a class from a regexp.
+ * There's a list of these referenced by the classList field in the RECompiled
+ * struct. The initial state has startIndex set to the offset in the
+ * original regexp source of the beginning of the class contents. The first
+ * use of the class converts the source representation into a bitmap.
+ *
+ */
+final class RECharSet{
+    RECharSet(int length, int startIndex, int strlength, boolean sense){
+        this.length = length;
+        this.startIndex = startIndex;
+        this.strlength = strlength;
+        this.sense = sense;
+    }
+
+    final int length;
+    final int startIndex;
+    final int strlength;
+    final boolean sense;
+
+    volatile transient boolean converted;
+    volatile transient byte[] bits;
+}
@@ -0,0 +1,19 @@
+package rhino.regexp;
+
+class RECompiled{
+    final char[] source;    /* locked source string, sans // */
+    int parenCount;         /* number of parenthesized submatches */
+    int flags;              /* flags  */
+    byte[] program;         /* regular expression bytecode */
+    int classCount;         /* count [...] bitmaps */
+    RECharSet[] classList;  /* list of [...] bitmaps */
+    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
+    volatile CompiledRegExp matcher; /* generated matcher, see Context#setRegExpCompileThreshold */
+    int execCount;          /* executions so far, -1 once compiled or given up */
+    LinearRegExp linear;    /* automaton matcher, see Context#setLinearRegExpMatching */
+    volatile boolean linearChecked; /* whether linear was created or is not supported */
+
+    RECompiled(String str){
+        this.source = str.toCharArray();
+    }
+}
@@ -0,0 +1,24 @@
+package rhino.regexp;
+
+class REProgState{
+    REProgState(REProgState previous, int min, int max, int index,
+                REBackTrackData backTrack,
+                int continuationOp, int continuationPc){
+        this.previous = previous;
+        this.min = min;
+        this.max = max;
+        this.index = index;
+        this.continuationOp = continuationOp;
+        this.continuationPc = continuationPc;
+        this.backTrack = backTrack;
+    }
+
+    final REProgState previous; // previous state in stack
+
+    final int min;                      /* current quantifier min */
+    final int max;                      /* current quantifier max */
+    final int index;                    /* progress in text */
+    final int continuationOp;
+    final int continuationPc;
+    final REBackTrackData backTrack; // used by ASSERT_  to recover state
+}
@@ -0,0 +1,153 @@
+package rhino.regexp;
+
+import rhino.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Bounded LRU cache of compiled regular expressions.
+ * <p>
+ * There is one cache per class loader, see {@link ContextFactory#getRegExpCache()}.
+ * It is shared by all scopes, Contexts and threads, so a pattern compiled by one script
+ * does not have to be parsed again when another script, or the same script in another
+ * sandbox, creates a regexp with the same source and flags. Compiled regexps are
+ * immutable apart from their execution counters and generated matchers, so they are
+ * only shared between Contexts with the same
+ * {@link Context#setRegExpCompileThreshold(int) regexp compile threshold}.
+ * <p>
+ * Patterns compiled while {@link Context#FEATURE_STRICT_MODE} is on bypass the cache,
+ * since compiling them may report warnings.
+ */
+public final class RegExpCache{
+    /** Default number of compiled regexps kept. */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final LinkedHashMap<Key, RECompiled> map = new LinkedHashMap<Key, RECompiled>(64, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, RECompiled> eldest){
+            if(size() > capacity){
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    RegExpCache(){
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Set the maximum number of compiled regexps kept, evicting the least recently
+     * used ones if there are more. 0 disables the cache.
+     */
+    public void setCapacity(int capacity){
+        if(capacity < 0) throw new IllegalArgumentException("Cannot set capacity to less than 0");
+        synchronized(map){
+            this.capacity = capacity;
+            Iterator<RECompiled> it = map.values().iterator();
+            for(int n = map.size(); n > capacity; n--){
+                it.next();
+                it.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /** Return the number of compiled regexps currently kept. */
+    public int size(){
+        synchronized(map){
+            return map.size();
+        }
+    }
+
+    /** Return the number of regexps that were found in the cache. */
+    public long getHitCount(){
+        return hitCount.sum();
+    }
+
+    /** Return the number of cacheable regexps that had to be compiled. */
+    public long getMissCount(){
+        return missCount.sum();
+    }
+
+    /** Return the number of compiled regexps dropped to stay within the capacity. */
+    public long getEvictionCount(){
+        return evictionCount.sum();
+    }
+
+    /** Remove all entries and reset the counters. */
+    public void clear(){
+        synchronized(map){
+            map.clear();
+        }
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+    }
+
+    RECompiled compile(Context cx, String source, String flags, boolean flat){
+        if(capacity == 0 || cx.hasFeature(Context.FEATURE_STRICT_MODE)){
+            return NativeRegExp.compileRE(cx, source, flags, flat);
+        }
+        Key key = new Key(source, flags, flat, cx.getLanguageVersion(), cx.getRegExpCompileThreshold());
+        RECompiled re;
+        synchronized(map){
+            re = map.get(key);
+        }
+        if(re != null){
+            hitCount.increment();
+            return re;
+        }
+        missCount.increment();
+        // compile outside the lock, racing threads at worst compile the same pattern twice
+        re = NativeRegExp.compileRE(cx, source, flags, flat);
+        if(re != null){
+            synchronized(map){
+                map.put(key, re);
+            }
+        }
+        return re;
+    }
+
+    private static final class Key{
+        final String source;
+        final String flags;
+        final boolean flat;
+        final int version;
+        final int threshold;
+        final int hash;
+
+        Key(String source, String flags, boolean flat, int version, int threshold){
+            this.source = source;
+            this.flags = flags == null ? "" : flags;
+            this.flat = flat;
+            this.version = version;
+            this.threshold = threshold;
+            this.hash = ((source.hashCode() * 31 + this.flags.hashCode()) * 31 + threshold) * 31 + version * 2 + (flat ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return hash == k.hash && flat == k.flat && version == k.version && threshold == k.threshold
+            && source.equals(k.source) && flags.equals(k.flags);
+        }
+    }
+}
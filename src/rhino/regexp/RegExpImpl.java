@@ -6,6 +6,18 @@ import rhino.*;
  *
  */
 public class RegExpImpl implements RegExpProxy{
+    private static final RegExpCache cache = new RegExpCache();
+
+    /**
+     * Return the cache of compiled regexps shared by all Contexts.
+     */
+    public static RegExpCache getCache(){
+        return cache;
+    }
+
+    static RECompiled compileRE(Context cx, String source, String flags, boolean flat){
+        return cache.compile(cx, source, flags, flat);
+    }
 
     @Override
     public boolean isRegExp(Scriptable obj){
@@ -14,7 +26,7 @@ public class RegExpImpl implements RegExpProxy{
 
     @Override
     public Object compileRegExp(Context cx, String source, String flags){
-        return NativeRegExp.compileRE(cx, source, flags, false);
+        return compileRE(cx, source, flags, false);
     }
 
     @Override
@@ -130,7 +142,7 @@ public class RegExpImpl implements RegExpProxy{
         NativeRegExp re;
         Scriptable topScope = ScriptableObject.getTopLevelScope(scope);
         if(args.length == 0 || args[0] == Undefined.instance){
-            RECompiled compiled = NativeRegExp.compileRE(cx, "", "", false);
+            RECompiled compiled = compileRE(cx, "", "", false);
             re = new NativeRegExp(topScope, compiled);
         }else if(args[0] instanceof NativeRegExp){
             re = (NativeRegExp)args[0];
@@ -143,7 +155,7 @@ public class RegExpImpl implements RegExpProxy{
             }else{
                 opt = null;
             }
-            RECompiled compiled = NativeRegExp.compileRE(cx, src, opt, forceFlat);
+            RECompiled compiled = compileRE(cx, src, opt, forceFlat);
             re = new NativeRegExp(topScope, compiled);
         }
         return re;
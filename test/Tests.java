@@ -1,5 +1,14 @@
 import org.junit.*;
 import rhino.*;
+import rhino.json.*;
+import rhino.module.*;
+import rhino.module.provider.*;
+import rhino.regexp.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -36,6 +45,513 @@ public class Tests{
         eval("var c = new java.lang.Object().getClass(); new JavaAdapter(c, {})");
     }
 
+    @Test
+    public void propertyCache(){
+        cx.setOptimizationLevel(-1);
+
+        eval("function P(){ this.x = 1; } P.prototype.get = function(){ return this.x; };" +
+        "function read(o){ return o.get(); } function write(o, v){ o.x = v; }");
+        eval("var p = new P(); for(var i = 0; i < 10; i++) write(p, i);");
+        assertEquals("9", Context.toString(eval("read(p)")));
+
+        //shadowing a prototype method must not hit the old entry
+        assertEquals("5", Context.toString(eval("p.get = function(){ return 5; }; read(p)")));
+        assertEquals("9", Context.toString(eval("delete p.get; read(p)")));
+
+        //accessors replace the data slot
+        assertEquals("42", Context.toString(eval("Object.defineProperty(p, 'x', {get: function(){ return 42; }}); read(p)")));
+    }
+
+    @Test
+    public void shapedObjects() throws Exception{
+        ContextFactory factory = new ContextFactory(){
+            @Override
+            protected boolean hasFeature(Context cx, int featureIndex){
+                return featureIndex == Context.FEATURE_SHAPED_OBJECTS || super.hasFeature(cx, featureIndex);
+            }
+        };
+        assertEquals("b,a;34;4039", call(factory, c -> {
+            c.setOptimizationLevel(-1);
+            Scriptable s = c.initStandardObjects();
+            return Context.toString(c.evaluateString(s,
+            "function P(a, b){ this.a = a; this.b = b; } var ps = [new P(1, 2), new P(3, 4)];" +
+            "delete ps[0].a; ps[0].a = 5; var big = {}; for(var i = 0; i < 40; i++) big['k' + i] = i;" +
+            "Object.keys(ps[0]) + ';' + ps[1].a + ps[1].b + ';' + Object.keys(big).length + big.k39", "test", 1, null));
+        }));
+    }
+
+    @Test
+    public void compiledScriptCache() throws Exception{
+        java.io.File dir = java.nio.file.Files.createTempDirectory("rhino-cache").toFile();
+        CompiledScriptCache cache = new CompiledScriptCache(dir);
+        ContextFactory factory = new ContextFactory();
+        factory.initCompiledScriptCache(cache);
+
+        String source = "function f(n){ return n < 2 ? n : f(n - 1) + f(n - 2); } f(10)";
+        for(int i = 0; i < 2; i++){
+            assertEquals("55", call(factory, c -> {
+                c.setOptimizationLevel(9);
+                Script script = c.compileString(source, "fib.js", 1, null);
+                return Context.toString(script.exec(c, c.initStandardObjects()));
+            }));
+        }
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getStoreCount());
+
+        //different settings must not share classes
+        call(factory, c -> c.compileString(source, "fib.js", 2, null));
+        assertEquals(2, cache.getStoreCount());
+
+        cache.clear();
+        dir.delete();
+    }
+
+    @Test
+    public void adapterClassCache() throws Exception{
+        File dir = java.nio.file.Files.createTempDirectory("rhino-cache").toFile();
+        String source = "var a = new JavaAdapter(java.util.concurrent.Callable, {call: function(){ return 4; }});" +
+        "a.call() == 4 ? a.getClass() : null";
+        ContextAction<Object> action = c -> {
+            c.setOptimizationLevel(-1);
+            return Context.jsToJava(c.evaluateString(c.initStandardObjects(), source, "adapter", 1, null), Class.class);
+        };
+        for(int run = 0; run < 2; run++){
+            ContextFactory factory = new ContextFactory();
+            factory.initCompiledScriptCache(new CompiledScriptCache(dir));
+            Object adapterClass = call(factory, action);
+            assertNotNull(adapterClass);
+            //a new scope reuses the class
+            assertSame(adapterClass, call(factory, action));
+            assertEquals(1, factory.getAdapterClassCache().getHitCount());
+            //the second factory reads it from disk
+            assertEquals(run, factory.getCompiledScriptCache().getHitCount());
+        }
+        new CompiledScriptCache(dir).clear();
+        dir.delete();
+    }
+
+    @Test
+    public void interpreterSnapshot() throws Exception{
+        cx.setOptimizationLevel(-1);
+        Script script = cx.compileString(
+        "function outer(a){ var re = /a+b/g; return function(x){ return {p: x, 1: a, q: [1,,3], m: 'aab'.match(re)[0]}; }; }" +
+        "JSON.stringify(outer(2)(5)) + outer.toString().length", "snapshot", 1, null);
+
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        InterpreterSnapshot.write(script, out);
+        Script loaded = InterpreterSnapshot.read(cx, new java.io.ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(Context.toString(script.exec(cx, scope)), Context.toString(loaded.exec(cx, scope)));
+    }
+
+    @Test
+    public void memberInvokers(){
+        assertTrue(ClassCache.get(scope).isInvokerOptimizationEnabled());
+        //enough calls for generated invokers to replace reflection
+        assertEquals("20,40,40", Context.toString(eval("var p = new java.awt.Point(0, 0), sb = new java.lang.StringBuilder();" +
+        "for(var i = 0; i < 20; i++){ p.translate(1, 1); p.y = p.y + 1; sb.append('ab'); new java.awt.Point(p); }" +
+        "p.x + ',' + p.y + ',' + sb.length()")));
+
+        assertThrows(EvaluatorException.class, () -> eval("p.x = 'x'"));
+        assertThrows(WrappedException.class, () -> eval("java.lang.Integer.parseInt('x')"));
+        //caller sensitive methods keep resolving against Rhino's loader past the threshold
+        assertEquals(20, ((Number)eval("var n = 0; for(var i = 0; i < 20; i++){ if(java.lang.Class.forName('Tests') != null) n++; } n")).intValue());
+    }
+
+    @Test
+    public void sealedThreadSafeObjects() throws Exception{
+        ContextFactory factory = new ContextFactory(){
+            @Override
+            protected boolean hasFeature(Context cx, int featureIndex){
+                return featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS || super.hasFeature(cx, featureIndex);
+            }
+        };
+        assertEquals("a,b;12;false;2", call(factory, c -> {
+            ScriptableObject shared = c.initStandardObjects(null, true);
+            Scriptable s = c.newObject(shared);
+            s.setPrototype(shared);
+            s.setParentScope(null);
+            ScriptableObject o = (ScriptableObject)c.evaluateString(s, "var o = {a: 1}; o", "test", 1, null);
+            o.sealObject();
+            //changes the layout after sealing
+            return Context.toString(c.evaluateString(s, "Object.defineProperty(o, 'b', {value: 2, enumerable: true});" +
+            "Object.keys(o) + ';' + o.a + o.b + ';' + ('c' in o) + ';' + Math.max(1, 2)", "test", 1, null));
+        }));
+    }
+
+    @Test
+    public void sharedStandardObjects() throws Exception{
+        ContextFactory factory = new ContextFactory();
+        assertEquals("1;undefined;true;sealed;[1,2];4", call(factory, c -> {
+            Scriptable a = c.initSharedStandardObjects(null), b = c.initSharedStandardObjects(null);
+            ImporterTopLevel importer = new ImporterTopLevel();
+            importer.initSharedStandardObjects(c);
+            StringBuilder sb = new StringBuilder();
+            sb.append(Context.toString(c.evaluateString(a, "var x = 1; x", "a", 1, null))).append(';');
+            sb.append(Context.toString(c.evaluateString(b, "typeof x", "b", 1, null))).append(';');
+            sb.append(c.evaluateString(a, "Array", "a", 1, null) == c.evaluateString(b, "Array", "b", 1, null)).append(';');
+            try{
+                c.evaluateString(b, "Array.prototype.foo = 1", "b", 1, null);
+            }catch(EvaluatorException e){
+                sb.append("sealed;");
+            }
+            sb.append(Context.toString(c.evaluateString(b, "var Array = null; JSON.stringify([1, 2])", "b", 1, null))).append(';');
+            sb.append(Context.toString(c.evaluateString(importer, "importPackage(java.util); new ArrayList(4).size() + 4", "i", 1, null)));
+            return sb.toString();
+        }));
+        assertSame(factory.getSharedStandardObjects(), factory.getSharedStandardObjects());
+
+        //each scope has its own Symbol.for registry
+        assertEquals("true;false;a;undefined", call(new ContextFactory(), c -> {
+            c.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable a = c.initSharedStandardObjects(null), b = c.initSharedStandardObjects(null);
+            c.evaluateString(a, "var s = Symbol.for('a')", "a", 1, null);
+            b.put("s", b, a.get("s", a));
+            return Context.toString(c.evaluateString(a, "Symbol.for('a') === s", "a", 1, null)) + ';'
+            + Context.toString(c.evaluateString(b, "Symbol.for('a') === s", "b", 1, null)) + ';'
+            + Context.toString(c.evaluateString(a, "Symbol.keyFor(s)", "a", 1, null)) + ';'
+            + Context.toString(c.evaluateString(b, "Symbol.keyFor(s)", "b", 1, null));
+        }));
+    }
+
+    @Test
+    public void ropeStrings(){
+        //long enough to be rebalanced, searched and sliced without flattening
+        assertEquals("1018;true;true;4000;a9;true", Context.toString(eval("var s = ''; for(var i = 0; i < 2000; i++) s += i % 10 == 9 ? 'a' + 9 : 'b'.concat(i % 10);" +
+        "s.indexOf('a9b0', 1000) + ';' + s.includes('b8a9') + ';' + s.endsWith('b8a9') + ';' + s.length + ';' + s.substring(18, 20) + ';' + s.startsWith('b0', 0)")));
+    }
+
+    @Test
+    public void tieredExecution(){
+        cx.setOptimizationLevel(-1);
+        cx.setTierUpThreshold(50);
+        //compiled frames show up as generated classes in the java stack
+        eval("function compiled(){ var t = java.lang.Thread.currentThread().getStackTrace();" +
+        "for(var i = 0; i < t.length; i++) if(String(t[i].getClassName()).indexOf('rhino.gen.') == 0) return true; return false; }" +
+        "function add(a, b){ return a + b; }" +
+        "var named = function fib(n){ return n < 2 ? n : fib(n - 1) + fib(n - 2); };" +
+        "function P(x){ this.x = x; }");
+        assertEquals("false", Context.toString(eval("compiled()")));
+        assertEquals("true;4950;6765;99", Context.toString(eval("var s = 0;" +
+        "for(var i = 0; i < 100; i++) s = add(s, i) + add.call(null, 1, 2) - 3;" +
+        "for(var i = 0; i < 5; i++) var hot = compiled(); hot + ';' + s + ';' + named(20) + ';' + new P(99).x")));
+        assertEquals("function add(a, b) {", Context.toString(eval("add.toString().trim().split('\\n')[0]")));
+
+        //compiled functions keep reporting the lines of the original source
+        cx.evaluateString(scope, "function thrower(x){\n\n  if(x > 60){\n\n    throw new Error('late');\n  }\n  return x;\n}", "tier.js", 1, null);
+        Function thrower = (Function)scope.get("thrower", scope);
+        for(int i = 0; i < 60; i++) thrower.call(cx, scope, scope, new Object[]{i});
+        try{
+            thrower.call(cx, scope, scope, new Object[]{61});
+            fail();
+        }catch(JavaScriptException e){
+            assertEquals(5, e.lineNumber());
+            assertTrue(e.getScriptStackTrace().contains("tier.js:5"));
+        }
+
+        //the name, prototype and properties of a compiled function are still those of the original
+        assertEquals("true;true;true;100", Context.toString(eval("var r = [true, true, true];" +
+        "function Pt(x){ if(!(this instanceof Pt)) return new Pt(x); this.x = x; }" +
+        "function same(){ return same; } function Q(){ return Q.prototype; } function cnt(){ cnt.count = (cnt.count || 0) + 1; }" +
+        "for(var i = 0; i < 100; i++){ r[0] = r[0] && Pt(i) instanceof Pt; r[1] = r[1] && same() === same; r[2] = r[2] && Q() === Q.prototype; cnt(); }" +
+        "r.concat(cnt.count).join(';')")));
+    }
+
+    @Test
+    public void tieredSnapshot() throws Exception{
+        cx.setOptimizationLevel(-1);
+        cx.setTierUpThreshold(5);
+        Script script = cx.compileString("function inGen(){ var t = java.lang.Thread.currentThread().getStackTrace();" +
+        "for(var i = 0; i < t.length; i++) if(String(t[i].getClassName()).indexOf('rhino.gen.') == 0) return true; return false; }" +
+        "var r = []; for(var i = 0; i < 10; i++) r.push(inGen()); r[0] + ',' + r[9]", "snapshot", 1, null);
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        InterpreterSnapshot.write(script, out);
+        Script loaded = InterpreterSnapshot.read(cx, new java.io.ByteArrayInputStream(out.toByteArray()), null);
+        //restored functions keep their source and still tier up
+        assertEquals("false,true", Context.toString(loaded.exec(cx, scope)));
+    }
+
+    @Test
+    public void optimizerTypes(){
+        cx.setOptimizationLevel(9);
+        //int32 and boolean variables compared without boxing, NaN and overflow must still behave
+        assertEquals("1794106052;1960;6;false,true,true,true,true;true,true,false", Context.toString(eval(
+        "function h(s){ var x = 0; for(var i = 0; i < s.length; i++){ x = (x << 5) - x + s.charCodeAt(i); x = x | 0; } return x; }" +
+        "function cnt(n){ var c = 0; for(var i = 0; i < n; i++){ if((i & 1) == 0) c++; if((i & 3) === 2) c += 10; if(i != 5) c += 100; } return c; }" +
+        "function b(n){ var f = false, k = 0; for(var i = 0; i < n; i++){ f = i > 3; if(f) k++; } return k; }" +
+        "function eq(){ var x = 0 / 0, y = 1.5, z = 2147483647 + 1; return [x == x, x != x, y === 1.5, -0 == 0, (z | 0) < 0]; }" +
+        "function mix(a){ var x = 1; if(a) x = 'a'; return x == 1; }" +
+        "[h('hello world'), cnt(20), b(10), eq(), [mix(false), mix(0), mix(true)]].join(';')")));
+        //comparisons of numbers passed to a direct call are booleans, not doubles
+        assertEquals("false,true,false,true", Context.toString(eval(
+        "function g(v){ return v; } function t(){ var x = 1, y = 1; return [g(x != y), g(x == y), g(x < y), g(x >= y)].join(); } t()")));
+    }
+
+    @Test
+    public void smallNumberCache(){
+        cx.setOptimizationLevel(-1);
+        NativeArray a = (NativeArray)eval("var n = 1, a = [n + 1, 4 / 2, n - 1, -n * 0, 1e6 + n]; a");
+        assertSame(a.get(0), a.get(1));
+        assertSame(ScriptRuntime.wrapNumber(0), a.get(2));
+        assertEquals("-Infinity", Context.toString(eval("1 / a[3]")));
+        assertNotSame(a.get(4), ScriptRuntime.wrapNumber(1e6 + 1));
+    }
+
+    @Test
+    public void numericArrays(){
+        //arrays of numbers move to generic storage on holes and other values
+        assertEquals("1,2.5,3,x;5;-1,1,true;4,;1,2,,4;-Infinity", Context.toString(eval(
+        "var a = [1, 2]; a.push(3); a[1] = 2.5; var b = a.concat(['x']), c = [1, 2, 3];" +
+        "c.length = 5; c[3] = 4; var d = [1, 0]; d[1] = -0;" +
+        "b + ';' + c.length + ';' + [a.indexOf(2), a.indexOf(2.5), [NaN, 1.5].includes(NaN)] + ';' +" +
+        "[4, 1.5].reverse().map(function(v, i){ return i ? v : undefined; }).reverse() + ';' +" +
+        "(delete c[2], c.slice(0, 4)) + ';' + 1 / d[1]")));
+    }
+
+    @Test
+    public void defaultSort(){
+        //sorted by string value, equal strings keep their order
+        assertEquals("-1,-Infinity,Infinity,1,'1',10,2,'a',,;false", Context.toString(eval(
+        "var a = [2, 'a', 10, undefined, 1, -1, '1', -0, 0]; a.length = 10; a.sort();" +
+        "a.map(function(x){ return x === 0 ? 1 / x : typeof x == 'string' ? \"'\" + x + \"'\" : x; }) + ';' + (9 in a)")));
+    }
+
+    @Test
+    public void streamingJson(){
+        assertEquals("{ a: [ 1 x ] b: null }", Context.toString(eval(
+        "var ev = [], push = function(s){ return function(){ ev.push(s); }; };" +
+        "JSON.parseStream(new java.io.StringReader('{\"a\": [1, \"x\"], \"b\": null}'), {onObjectStart: push('{'), onObjectEnd: push('}')," +
+        " onArrayStart: push('['), onArrayEnd: push(']'), onKey: function(k){ ev.push(k + ':'); }, onValue: function(v){ ev.push(String(v)); }});" +
+        " ev.join(' ')")));
+        //strings longer than the read buffer
+        assertEquals("20000,1", Context.toString(eval(
+        "var s = new Array(10001).join('\\\\u00e9\\\\n'); var v = JSON.parseStream(new java.io.StringReader('[\"' + s + '\", 1]')); [v[0].length, v[1]].join()")));
+
+        //truncated escapes report the same errors as before streaming
+        String[] inputs = {"\"ab\\", "\"\\u004", "\"\\u0041", "\"\\u00g1"};
+        String[] errors = {"Unterminated string literal", "Invalid character code: \\u004",
+        "Invalid character code: \\u0041", "Invalid character code: \\u00g1"};
+        for(int i = 0; i < inputs.length; i++){
+            try{
+                new JsonParser(cx, scope).parseValue(inputs[i]);
+                fail(inputs[i]);
+            }catch(JsonParser.ParseException e){
+                assertEquals(errors[i], e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void stringifyToWriter() throws java.io.IOException{
+        Object value = eval("var v = []; for(var i = 0; i < 2000; i++) v.push({i: i, s: 'a\\n\"' + i, n: [i, i / 2]}); v");
+        java.io.StringWriter writer = new java.io.StringWriter();
+        NativeJSON.stringify(cx, scope, value, null, 2, writer);
+        assertEquals(Context.toString(eval("JSON.stringify(v, null, 2)")), writer.toString());
+        assertTrue(writer.toString().length() > 8192);
+    }
+
+    @Test
+    public void compiledRegExp() throws Exception{
+        String script = "var r = []; ['a+b', '(\\\\w+)=(\\\\d{2,3})', '^x|y$', '\\\\bx[a-c]*?d', 'a{0}b', '^a?a{2}b'].forEach(function(p){" +
+        " var re = new RegExp(p, 'g'); for(var i = 0; i < 3; i++) r.push(String('aab k=123 xcabd yb'.match(re))); }); r.join(';')";
+        String expected = "aab,ab;aab,ab;aab,ab;k=123;k=123;k=123;null;null;null;xcabd;xcabd;xcabd;b,b,b;b,b,b;b,b,b;aab;aab;aab";
+        assertEquals(expected, eval(script));
+        cx.setRegExpCompileThreshold(2);
+        try{
+            assertEquals(expected, eval(script));
+        }finally{
+            cx.setRegExpCompileThreshold(0);
+        }
+
+        //matchers are defined through the class loader of the factory
+        int[] loaders = new int[1];
+        ContextFactory factory = new ContextFactory(){
+            @Override
+            protected GeneratedClassLoader createClassLoader(ClassLoader parent){
+                loaders[0]++;
+                return super.createClassLoader(parent);
+            }
+        };
+        assertEquals("true", call(factory, c -> {
+            c.setOptimizationLevel(-1);
+            c.setRegExpCompileThreshold(1);
+            return Context.toString(c.evaluateString(c.initStandardObjects(), "new RegExp('l[o]' + 'ader').test('loader')", "test", 1, null));
+        }));
+        assertEquals(1, loaders[0]);
+    }
+
+    @Test
+    public void regExpCache(){
+        RegExpCache cache = cx.getFactory().getRegExpCache();
+        String script = "var p = 'q(\\\\d+)z' + 'w'; [new RegExp(p, 'g').exec('q12zw')[1], new RegExp(p, 'g').source].join()";
+        long hits = cache.getHitCount();
+        assertEquals("12,q(\\d+)zw", eval(script));
+        assertEquals("12,q(\\d+)zw", cx.evaluateString(new ImporterTopLevel(cx), script, "testfile", 0, null));
+        assertTrue(cache.getHitCount() >= hits + 3);
+        assertTrue(cache.size() > 0);
+        // matchers generated under one compile threshold are not shared with Contexts using another
+        String tiered = "var p = 't(\\\\d)' + 'v'; new RegExp(p).exec('t1v')[1]";
+        long misses = cache.getMissCount();
+        assertEquals("1", eval(tiered));
+        cx.setRegExpCompileThreshold(1);
+        try{
+            assertEquals("1", eval(tiered));
+        }finally{
+            cx.setRegExpCompileThreshold(0);
+        }
+        assertEquals(misses + 2, cache.getMissCount());
+        cache.setCapacity(0);
+        try{
+            assertEquals(0, cache.size());
+            assertEquals("12,q(\\d+)zw", eval(script));
+            assertEquals(0, cache.size());
+        }finally{
+            cache.setCapacity(RegExpCache.DEFAULT_CAPACITY);
+        }
+    }
+
+    @Test
+    public void linearRegExp(){
+        String script = "var s = new Array(40).join('a') + '!'; [/(a+)+$/.test(s), /^(\\w+\\s?)*$/.test(s)," +
+        " /(\\d+)-(\\d+)?|(x)/.exec('a12-b'), /(?:(a)|b)+?c/i.exec('abAc'), /(a)\\1/.test('aa'), 'a,b;c'.split(/[,;]/)].join(';')";
+        cx.setLinearRegExpMatching(true);
+        try{
+            assertEquals("false;false;12-,12,,;abAc,A;true;a,b,c", eval(script));
+        }finally{
+            cx.setLinearRegExpMatching(false);
+        }
+    }
+
+    @Test
+    public void importCache(){
+        ImporterTopLevel importer = new ImporterTopLevel(cx);
+        String script = "var r = []; for(var i = 0; i < 10; i++) r.push(typeof NoSuchClass, typeof File); r.slice(0, 2).join()";
+        cx.evaluateString(importer, "importPackage(java.util, java.lang.reflect)", "i", 1, null);
+        assertEquals("undefined,undefined", cx.evaluateString(importer, script, "i", 1, null));
+        long misses = importer.getImportCacheMissCount(), hits = importer.getImportCacheHitCount();
+        assertEquals("undefined,undefined", cx.evaluateString(importer, script, "i", 1, null));
+        assertEquals(misses, importer.getImportCacheMissCount());
+        assertTrue(importer.getImportCacheHitCount() >= hits + 20);
+        assertEquals(2 * importer.getImportCacheHitCount(), importer.getPackageLookupsAvoided());
+        cx.evaluateString(importer, "importPackage(java.io)", "i", 1, null);
+        assertEquals("undefined,function", cx.evaluateString(importer, script, "i", 1, null));
+    }
+
+    @Test
+    public void moduleBundle() throws Exception{
+        Map<String, String> sources = new HashMap<>();
+        sources.put("main", "var b = require('./lib/b'); exports.x = b.y + require('lib/c').z;");
+        sources.put("lib/b", "exports.y = require('./c').z * 10;");
+        sources.put("lib/c", "exports.z = 4;");
+        URI base = new URI("mem:/mods/");
+        URI[] bases = {base};
+        ModuleSourceProvider provider = new ModuleSourceProvider(){
+            @Override
+            public ModuleSource loadSource(String moduleId, Scriptable paths, Object validator){
+                String source = sources.get(moduleId);
+                return source == null ? null : new ModuleSource(new StringReader(source), null, base.resolve(moduleId + ".js"), bases[0], null);
+            }
+
+            @Override
+            public ModuleSource loadSource(URI uri, URI baseUri, Object validator){
+                return null;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BundleModuleScriptProvider.write(cx, provider, sources.keySet(), out);
+        BundleModuleScriptProvider bundle = new BundleModuleScriptProvider(ByteBuffer.wrap(out.toByteArray()), null);
+        assertEquals(sources.keySet(), bundle.getModuleIds());
+
+        Scriptable global = cx.initStandardObjects();
+        new RequireBuilder().setModuleScriptProvider(bundle).setSandboxed(true).createRequire(cx, global).install(global);
+        assertEquals(44, ((Number)cx.evaluateString(global, "require('main').x", "main", 1, null)).intValue());
+        assertNull(bundle.getModuleScript(cx, "missing", null, null, null));
+
+        //without a base relative requires resolve to URIs without the extension
+        bases[0] = null;
+        cx.setOptimizationLevel(9);
+        out.reset();
+        BundleModuleScriptProvider.write(cx, provider, sources.keySet(), out);
+        assertEquals(9, cx.getOptimizationLevel());
+        bundle = new BundleModuleScriptProvider(ByteBuffer.wrap(out.toByteArray()), null);
+        global = cx.initStandardObjects();
+        new RequireBuilder().setModuleScriptProvider(bundle).setSandboxed(false).createRequire(cx, global).install(global);
+        assertEquals(44, ((Number)cx.evaluateString(global, "require('main').x", "main", 1, null)).intValue());
+    }
+
+    @Test
+    public void modulePreload() throws Exception{
+        File dir = java.nio.file.Files.createTempDirectory("modules").toFile();
+        new File(dir, "lib").mkdir();
+        Map<String, String> sources = new HashMap<>();
+        sources.put("main", "var b = require('./lib/b'); if(false) require('missing'); exports.x = b.y + require('lib/c').z;");
+        sources.put("lib/b", "exports.y = require('./c').z * 10;");
+        sources.put("lib/c", "exports.z = 4;");
+        sources.put("lib/unused", "exports.w = 1;");
+        for(Map.Entry<String, String> e : sources.entrySet()){
+            try(Writer w = new FileWriter(new File(dir, e.getKey() + ".js"))){
+                w.write(e.getValue());
+            }
+        }
+        Set<String> compiled = Collections.synchronizedSet(new HashSet<>());
+        ModuleScriptProvider provider = new StrongCachingModuleScriptProvider(
+        new UrlModuleSourceProvider(Collections.singleton(dir.toURI()), null)){
+            @Override
+            protected void putLoadedModule(String moduleId, ModuleScript moduleScript, Object validator){
+                assertTrue(compiled.add(moduleId));
+                super.putLoadedModule(moduleId, moduleScript, validator);
+            }
+        };
+        Scriptable global = cx.initStandardObjects();
+        Require require = new RequireBuilder().setModuleScriptProvider(provider).setSandboxed(true).createRequire(cx, global);
+        require.install(global);
+        require.preload(cx, Collections.singleton("main"), true, new java.util.concurrent.ForkJoinPool(2));
+        assertEquals(new HashSet<>(Arrays.asList("main", "lib/b", "lib/c")), compiled);
+        assertEquals(44, ((Number)cx.evaluateString(global, "require('main').x", "main", 1, null)).intValue());
+        assertEquals(3, compiled.size());
+        //failures of the workers are reported on the calling thread
+        try{
+            require.preload(cx, Collections.singleton("nowhere"), true, new java.util.concurrent.ForkJoinPool(2));
+            fail();
+        }catch(JavaScriptException e){
+            assertTrue(e.getMessage().contains("Module \"nowhere\" not found."));
+        }
+    }
+
+    @Test
+    public void moduleLruCache() throws Exception{
+        File dir = java.nio.file.Files.createTempDirectory("modules").toFile();
+        for(String id : new String[]{"a", "b", "c"}){
+            try(Writer w = new FileWriter(new File(dir, id + ".js"))){
+                w.write("exports." + id + " = 1;");
+            }
+        }
+        LruCachingModuleScriptProvider provider = new LruCachingModuleScriptProvider(
+        new UrlModuleSourceProvider(Collections.singleton(dir.toURI()), null), 2, Long.MAX_VALUE);
+        for(String id : new String[]{"a", "b", "a", "c", "b"}){
+            assertNotNull(provider.getModuleScript(cx, id, null, null, null));
+        }
+        assertEquals(1, provider.getHitCount());
+        assertEquals(4, provider.getMissCount());
+        assertEquals(2, provider.getEvictionCount());
+        assertEquals(2, provider.size());
+        assertEquals(2 * "exports.a = 1;".length(), provider.getWeight());
+        assertTrue(provider.getCompileTime() > 0);
+
+        provider.setLimits(2, "exports.a = 1;".length());
+        assertEquals(1, provider.size());
+        assertEquals(3, provider.getEvictionCount());
+    }
+
+    /** Runs the action on a new thread, which has no current context. */
+    @SuppressWarnings("unchecked")
+    static <T> T call(ContextFactory factory, ContextAction<T> action) throws InterruptedException{
+        Object[] result = new Object[1];
+        Thread thread = new Thread(() -> result[0] = factory.call(action));
+        thread.start();
+        thread.join();
+        return (T)result[0];
+    }
+
     Object eval(String str){
         Object res = cx.evaluateString(scope, str, "testfile", 0, null);
         System.out.println(res);